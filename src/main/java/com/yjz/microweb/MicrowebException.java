@@ -11,4 +11,9 @@ public class MicrowebException extends RuntimeException
     {
         super(message);
     }
+    
+    public MicrowebException(String message, Throwable t)
+    {
+        super(message, t);
+    }
 }
@@ -0,0 +1,94 @@
+package com.yjz.microweb.cache;
+
+/**
+ * <b>访问频率估计(Count-Min Sketch)</b><br>
+ * 1. 每个long保存16个4位计数器，每个key映射到4个计数器，频率取其中的最小值，上限15；<br>
+ * 2. 累计增加次数达到采样数(计数器数量的10倍)时所有计数器减半，使历史热度逐渐衰减；<br>
+ * 3. 非线程安全，由调用方加锁。
+ */
+final class FrequencySketch
+{
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L};
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private int size;
+
+    /**
+     * @param expectedEntries 预计的缓存元素数量
+     */
+    FrequencySketch(int expectedEntries)
+    {
+        int length = Integer.highestOneBit(Math.max(64, Math.min(expectedEntries, 1 << 24)) - 1) << 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    int frequency(Object key)
+    {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++)
+        {
+            long h = indexHash(hash, i);
+            int index = (int)(h >>> 32) & tableMask;
+            int shift = ((int)h & 15) << 2;
+            frequency = Math.min(frequency, (int)((table[index] >>> shift) & 0xFL));
+        }
+        return frequency;
+    }
+
+    void increment(Object key)
+    {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+        {
+            long h = indexHash(hash, i);
+            int index = (int)(h >>> 32) & tableMask;
+            int shift = ((int)h & 15) << 2;
+            if (((table[index] >>> shift) & 0xFL) != 0xFL)
+            {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if (added && ++size >= sampleSize)
+        {
+            reset();
+        }
+    }
+
+    private void reset()
+    {
+        for (int i = 0; i < table.length; i++)
+        {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private static long indexHash(int hash, int i)
+    {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return h ^ (h >>> 29);
+    }
+
+    private static int spread(int x)
+    {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+}
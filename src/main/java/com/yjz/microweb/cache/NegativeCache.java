@@ -0,0 +1,156 @@
+package com.yjz.microweb.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <b>不存在资源的缓存(轮换Bloom过滤器)</b><br>
+ * 1. 记录确认不存在的资源地址，不占用{@link ResourceCache}的容量，判断为O(1)且无锁；<br>
+ * 2. 由新旧两代Bloom过滤器组成，新一代写满capacity个元素或存在超过ttl后轮换，旧一代被丢弃，
+ * 因此内存固定，元素在ttl到2*ttl之间失效，之后新增的资源最终可见；<br>
+ * 3. 误判率约0.1%，误判会使已有资源被按不存在处理，因此只能作为提示：已知资源以{@link StaticResourceIndex}或文件系统的确认为准，
+ * 只对允许暂时不可见的资源(如启动后新增的文件、可选的压缩版本)跳过查找。
+ */
+public class NegativeCache
+{
+
+    /** 每个元素占用的位数与哈希函数个数，对应约0.1%的误判率 */
+    private static final int BITS_PER_ENTRY = 15;
+
+    private static final int HASHES = 10;
+
+    private final int capacity;
+
+    private final long ttlNanos;
+
+    private volatile Generation current;
+
+    private volatile Generation previous;
+
+    /**
+     * @param capacity 每一代容纳的元素数
+     * @param ttlMillis 每一代的最长存在时间(毫秒)，小于等于0表示只按数量轮换
+     */
+    public NegativeCache(int capacity, long ttlMillis)
+    {
+        this.capacity = Math.max(capacity, 1024);
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1000000L : Long.MAX_VALUE;
+        this.current = new Generation(this.capacity);
+        this.previous = new Generation(this.capacity);
+    }
+
+    /**
+     * 资源可能不存在时返回true；返回false时资源一定未被记录为不存在
+     */
+    public boolean mightContain(String key)
+    {
+        Generation cur = current;
+        if (System.nanoTime() - cur.created > ttlNanos)
+        {
+            rotate(cur);
+            cur = current;
+        }
+        long hash = hash(key);
+        return cur.contains(hash) || previous.contains(hash);
+    }
+
+    /**
+     * 记录资源不存在
+     */
+    public void put(String key)
+    {
+        Generation cur = current;
+        cur.add(hash(key));
+        if (cur.count.incrementAndGet() >= capacity)
+        {
+            rotate(cur);
+        }
+    }
+
+    /**
+     * 清空全部记录，资源发布后调用
+     */
+    public synchronized void clear()
+    {
+        previous = new Generation(capacity);
+        current = new Generation(capacity);
+    }
+
+    private synchronized void rotate(Generation expected)
+    {
+        if (current == expected)
+        {
+            previous = expected;
+            current = new Generation(capacity);
+        }
+    }
+
+    /**
+     * 64位FNV-1a，高低32位作为两个独立哈希组合出HASHES个位置
+     */
+    private static long hash(String key)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = key.length(); i < length; i++)
+        {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // 末尾再混合一次，改善短字符串高位的分布
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Generation
+    {
+        private final AtomicLongArray bits;
+
+        private final long bitCount;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final long created = System.nanoTime();
+
+        Generation(int capacity)
+        {
+            int words = (int)(((long)capacity * BITS_PER_ENTRY + 63) / 64);
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = words * 64L;
+        }
+
+        void add(long hash)
+        {
+            int h1 = (int)hash;
+            int h2 = (int)(hash >>> 32);
+            for (int i = 1; i <= HASHES; i++)
+            {
+                long index = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                int word = (int)(index >>> 6);
+                long mask = 1L << index;
+                long old;
+                while (((old = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, old, old | mask))
+                {
+                    // CAS失败时重试
+                }
+            }
+        }
+
+        boolean contains(long hash)
+        {
+            int h1 = (int)hash;
+            int h2 = (int)(hash >>> 32);
+            for (int i = 1; i <= HASHES; i++)
+            {
+                long index = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                if ((bits.get((int)(index >>> 6)) & (1L << index)) == 0)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -1,5 +1,8 @@
 package com.yjz.microweb.cache;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 /**
  * 静态资源缓存 实现者应该注意过期策略，避免内存被大量占用
  * 
@@ -28,4 +31,55 @@ public interface ResourceCache
      */
     public void putCache(String shortUri, byte[] bytes);
     
+    /**
+     * 以ByteBuf返回缓存数据，调用方写出或释放后即不再持有：<br>
+     * 1.如果未缓存，返回空；如果缓存的是null对象，返回空ByteBuf；<br>
+     * 2.默认包装{@link #getCache(String)}的结果，堆外实现直接返回只读视图，避免复制。
+     */
+    public default ByteBuf getCacheBuffer(String shortUri)
+    {
+        byte[] bytes = getCache(shortUri);
+        return bytes == null ? null : Unpooled.wrappedBuffer(bytes);
+    }
+
+    /**
+     * 缓存数据并记录其最后修改时间，ETag等校验信息在此时计算一次，见{@link #getMeta(String)}；<br>
+     * 默认忽略修改时间，不支持校验信息的实现无需覆盖。
+     *
+     * @param shortUri
+     * @param bytes
+     * @param lastModified 资源最后修改时间(毫秒)，未知时传入缓存时间
+     */
+    public default void putCache(String shortUri, byte[] bytes, long lastModified)
+    {
+        putCache(shortUri, bytes);
+    }
+
+    /**
+     * 返回缓存数据的校验信息，未缓存、缓存的是null对象或实现不支持时返回空
+     */
+    public default ResourceMeta getMeta(String shortUri)
+    {
+        return null;
+    }
+
+    /**
+     * 缓存统计，不支持统计的实现返回空
+     */
+    public default ResourceCacheStats stats()
+    {
+        return null;
+    }
+
+    /**
+     * 同一资源的压缩版本(gzip、br等)作为独立元素缓存，使用此key与原数据区分，各自计算ETag
+     *
+     * @param shortUri
+     * @param encoding Content-Encoding，如gzip
+     */
+    public static String variantKey(String shortUri, String encoding)
+    {
+        return shortUri + '\0' + encoding;
+    }
+
 }
\ No newline at end of file
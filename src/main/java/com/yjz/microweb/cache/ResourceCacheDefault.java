@@ -118,6 +118,10 @@ public class ResourceCacheDefault implements ResourceCache
     
     private static final VisitRecordTask visitTask = new VisitRecordTask();
     
+    /** 统计，占用容量取CUR_CAPACITY */
+    private static final ResourceCacheStats STATS = new ResourceCacheStats("default", () -> CUR_CAPACITY,
+        () -> CACHE_LEVEL2.size() + CACHE_LEVEL1.size());
+    
     private static boolean VISIT_QUEUE_LOCK = false;
     
     private static AtomicInteger VISIT_QUEUE_SIZE = new AtomicInteger(0); // 记录队列容量，避免并发容器获取size的昂贵操作
@@ -146,6 +150,12 @@ public class ResourceCacheDefault implements ResourceCache
         
     }
     
+    @Override
+    public ResourceCacheStats stats()
+    {
+        return STATS;
+    }
+    
     /**
      * <b>判断是否已缓存数据</b><br>
      * 方法未加锁，不保证绝对准确：线程1 putCache 未执行完毕，线程2 containsKey 将得到false。
@@ -181,8 +191,17 @@ public class ResourceCacheDefault implements ResourceCache
         SaveRecord record;
         byte[] bytes;
         
-        return null != (bytes = CACHE_LEVEL2.get(shortUri)) ? bytes
+        bytes = null != (bytes = CACHE_LEVEL2.get(shortUri)) ? bytes
             : (null != (record = CACHE_LEVEL1.get(shortUri)) ? record.value : null);
+        if (null != bytes)
+        {
+            STATS.recordHit();
+        }
+        else
+        {
+            STATS.recordMiss();
+        }
+        return bytes;
         
     }
     
@@ -327,6 +346,7 @@ public class ResourceCacheDefault implements ResourceCache
                         CACHE_LEVEL2.remove(shortUri);
                         LAST_TIME_HOLDER.remove(shortUri);
                         CUR_CAPACITY -= length;
+                        STATS.recordEviction("period", length);
                         it.remove();
                     }
                 }
@@ -378,6 +398,7 @@ public class ResourceCacheDefault implements ResourceCache
                      * CACHE_LEVEL1_LOCK = true; VISIT_QUEUE_LOCK = true;
                      */
                     
+                    STATS.recordEvictions("total", CACHE_LEVEL2.size(), CUR_CAPACITY);
                     CACHE_LEVEL2.clear();
                     VISIT_TIMES_HOLDER.clear();
                     SAVE_TIME_HOLDER.clear();
@@ -439,6 +460,7 @@ public class ResourceCacheDefault implements ResourceCache
                     Entry<String, byte[]> entry = it.next();
                     if (entry.getValue().length == 0)
                     {
+                        STATS.recordEviction("null", 0);
                         it.remove();
                         shortUri = entry.getKey();
                         VISIT_TIMES_HOLDER.remove(shortUri);
@@ -563,10 +585,12 @@ public class ResourceCacheDefault implements ResourceCache
                 // 如果最后访问时间 - 未访问时间 大于 当前时间，则清理该元素
                 if (null == lastTime || (lastTime - notVisitTime) > currTime)
                 {
+                    length = 0;
                     if (null != (bytes = entry.getValue()) && (length = bytes.length) > 0)
                     {
                         CUR_CAPACITY -= length;
                     }
+                    STATS.recordEviction("lru", length);
                     it.remove();
                     VISIT_TIMES_HOLDER.remove(shortUri);
                     LAST_TIME_HOLDER.remove(shortUri);
@@ -606,10 +630,12 @@ public class ResourceCacheDefault implements ResourceCache
                     if (null == times || times < avg)
                     {
                         bytes = entry.getValue();
+                        length = 0;
                         if (null != bytes && (length = bytes.length) > 0)
                         {
                             CUR_CAPACITY -= length;
                         }
+                        STATS.recordEviction("lfu", length);
                         LAST_TIME_HOLDER.remove(shortUri);
                         VISIT_TIMES_HOLDER.remove(shortUri);
                         it.remove();
@@ -640,6 +666,7 @@ public class ResourceCacheDefault implements ResourceCache
                 VISIT_TIMES_HOLDER.remove(shortUri);
                 LAST_TIME_HOLDER.remove(shortUri);
                 CUR_CAPACITY -= length;
+                STATS.recordEviction("fifo", length);
             }
         }
     }
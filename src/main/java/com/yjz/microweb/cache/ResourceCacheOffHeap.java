@@ -0,0 +1,321 @@
+package com.yjz.microweb.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yjz.microweb.MicrowebException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
+
+/**
+ * <b>堆外静态资源缓存</b><br>
+ * 1. 数据保存在固定大小的slab中，slab为堆外内存或临时文件的内存映射，堆上只保留索引(uri -> slab、偏移、长度)；<br>
+ * 2. slab按环形顺序追加写入，写满后复用最早的slab：先移除其中全部元素的索引，再换上新分配的slab(FIFO淘汰)；
+ * 同一uri再次写入时追加新数据并替换索引与校验信息，旧数据所在区域随slab复用回收；<br>
+ * 3. {@link #getCacheBuffer(String)}返回slab上的只读视图并持有slab的引用，视图释放之前旧slab不会被回收，
+ * 写出过程中slab被复用也不影响已返回的数据；<br>
+ * 4. {@link #getCache(String)}为兼容接口，会把数据复制到堆上，应优先使用getCacheBuffer；<br>
+ * 5. 与{@link ResourceCacheDefault}一致：只缓存不超过2M的数据，null按空数据缓存；<br>
+ * 6. 插入时计算ETag等校验信息({@link ResourceMeta})，保存在堆上的索引中；<br>
+ * 7. 淘汰原因统计为slab(复用slab时摘除)，占用字节数为已分配slab的总大小。
+ */
+public class ResourceCacheOffHeap implements ResourceCache
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceCacheOffHeap.class);
+
+    /** 单个缓存元素的最大长度 */
+    private static final int MAX_BYTES_LENGTH = 2097152;
+
+    private static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+
+    private final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+
+    private final Slab[] slabs;
+
+    private final ResourceCacheStats stats = new ResourceCacheStats("offheap-fifo", this::allocatedBytes, this::size);
+
+    private final int slabSize;
+
+    /** 内存映射文件目录，null表示使用堆外内存 */
+    private final File mappedDir;
+
+    /** 以下字段只在this锁内访问 */
+    private int current = -1;
+
+    private int writerIndex;
+
+    /**
+     * @param capacity 总容量(字节)，按slabSize向上取整
+     * @param slabSize 单个slab大小(字节)，不小于2M
+     * @param mappedDir 内存映射文件目录，null表示使用堆外内存
+     */
+    public ResourceCacheOffHeap(long capacity, int slabSize, File mappedDir)
+    {
+        this.slabSize = Math.max(slabSize, MAX_BYTES_LENGTH);
+        this.slabs = new Slab[(int)Math.max(2, (capacity + this.slabSize - 1) / this.slabSize)];
+        this.mappedDir = mappedDir;
+        if (mappedDir != null && !mappedDir.isDirectory() && !mappedDir.mkdirs())
+        {
+            throw new MicrowebException("Unable to create cache directory: " + mappedDir);
+        }
+    }
+
+    public ResourceCacheOffHeap(long capacity)
+    {
+        this(capacity, DEFAULT_SLAB_SIZE, null);
+    }
+
+    @Override
+    public boolean containsKey(String shortUri)
+    {
+        return index.containsKey(shortUri);
+    }
+
+    @Override
+    public byte[] getCache(String shortUri)
+    {
+        ByteBuf buf = getCacheBuffer(shortUri);
+        if (buf == null)
+        {
+            return null;
+        }
+        try
+        {
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.getBytes(buf.readerIndex(), bytes);
+            return bytes;
+        }
+        finally
+        {
+            buf.release();
+        }
+    }
+
+    @Override
+    public ByteBuf getCacheBuffer(String shortUri)
+    {
+        Entry entry = index.get(shortUri);
+        if (entry == null)
+        {
+            stats.recordMiss();
+            return null;
+        }
+        if (entry.length == 0)
+        {
+            stats.recordHit();
+            return Unpooled.EMPTY_BUFFER;
+        }
+
+        try
+        {
+            ByteBuf view = entry.slab.buffer.retainedSlice(entry.offset, entry.length).asReadOnly();
+            stats.recordHit();
+            return view;
+        }
+        catch (IllegalReferenceCountException e)
+        {
+            // slab刚被复用，按未缓存处理
+            stats.recordMiss();
+            return null;
+        }
+    }
+
+    @Override
+    public ResourceMeta getMeta(String shortUri)
+    {
+        Entry entry = index.get(shortUri);
+        return entry != null ? entry.meta : null;
+    }
+
+    @Override
+    public void putCache(String shortUri, byte[] bytes)
+    {
+        putCache(shortUri, bytes, System.currentTimeMillis());
+    }
+
+    @Override
+    public void putCache(String shortUri, byte[] bytes, long lastModified)
+    {
+        int length = bytes != null ? bytes.length : 0;
+        if (length > MAX_BYTES_LENGTH)
+        {
+            return;
+        }
+        ResourceMeta meta = length > 0 ? ResourceMeta.of(bytes, lastModified) : null;
+
+        synchronized (this)
+        {
+            // 内容与修改时间都未变化时不重复写入
+            if (sameContent(index.get(shortUri), length, meta))
+            {
+                return;
+            }
+
+            Slab slab;
+            try
+            {
+                slab = slabFor(length);
+            }
+            catch (IOException e)
+            {
+                logger.error("Failed to allocate cache slab", e);
+                return;
+            }
+
+            int offset = writerIndex;
+            if (length > 0)
+            {
+                slab.buffer.setBytes(offset, bytes);
+                writerIndex += length;
+            }
+            slab.keys.add(shortUri);
+            index.put(shortUri, new Entry(slab, offset, length, meta));
+        }
+    }
+
+    private static boolean sameContent(Entry entry, int length, ResourceMeta meta)
+    {
+        if (entry == null || entry.length != length)
+        {
+            return false;
+        }
+        if (entry.meta == null || meta == null)
+        {
+            return entry.meta == meta;
+        }
+        return entry.meta.getEtag().equals(meta.getEtag()) && entry.meta.getLastModified() == meta.getLastModified();
+    }
+
+    @Override
+    public ResourceCacheStats stats()
+    {
+        return stats;
+    }
+
+    /**
+     * 已分配slab的总字节数
+     */
+    public long allocatedBytes()
+    {
+        long bytes = 0;
+        for (Slab slab : slabs)
+        {
+            if (slab != null)
+            {
+                bytes += slabSize;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 已缓存元素数量
+     */
+    public int size()
+    {
+        return index.size();
+    }
+
+    /**
+     * 返回可写入length字节的slab，当前slab空间不足时切换到下一个
+     */
+    private Slab slabFor(int length)
+        throws IOException
+    {
+        if (current >= 0 && slabSize - writerIndex >= length)
+        {
+            return slabs[current];
+        }
+
+        current = (current + 1) % slabs.length;
+        Slab old = slabs[current];
+        if (old != null)
+        {
+            // 复用最早的slab：先摘除索引，已返回的视图仍持有旧slab直到释放；
+            // 已被替换到其他slab的key保留新的索引
+            for (String key : old.keys)
+            {
+                Entry removed = index.get(key);
+                if (removed != null && removed.slab == old && index.remove(key, removed))
+                {
+                    stats.recordEviction("slab", removed.length);
+                }
+            }
+            slabs[current] = null;
+            old.buffer.release();
+        }
+        slabs[current] = new Slab(allocate());
+        writerIndex = 0;
+        return slabs[current];
+    }
+
+    private ByteBuf allocate()
+        throws IOException
+    {
+        if (mappedDir == null)
+        {
+            return Unpooled.directBuffer(slabSize, slabSize);
+        }
+
+        // 每个slab映射一个新的临时文件，映射后即删除文件，旧映射在所有视图释放并被回收后才解除
+        File file = File.createTempFile("microweb-cache-", ".slab", mappedDir);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel())
+        {
+            raf.setLength(slabSize);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, slabSize);
+            return Unpooled.wrappedBuffer(mapped).clear();
+        }
+        finally
+        {
+            if (!file.delete())
+            {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private static final class Slab
+    {
+        private final ByteBuf buffer;
+
+        /** 写入此slab的key，复用slab时用于摘除索引 */
+        private final List<String> keys = new ArrayList<String>();
+
+        Slab(ByteBuf buffer)
+        {
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final Slab slab;
+
+        private final int offset;
+
+        private final int length;
+
+        private final ResourceMeta meta;
+
+        Entry(Slab slab, int offset, int length, ResourceMeta meta)
+        {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.meta = meta;
+        }
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.yjz.microweb.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * <b>静态资源缓存统计</b><br>
+ * 1. 计数使用LongAdder，记录时不加锁，读取为近似的瞬时值；<br>
+ * 2. 命中、未命中与淘汰由缓存实现记录，不存在资源的拒绝与classpath读取耗时由调用方记录；<br>
+ * 3. 读取耗时按2的幂次(微秒)分桶，分位数取所在桶的上界；<br>
+ * 4. 占用字节数与元素数由缓存实现在读取统计时提供。
+ */
+public class ResourceCacheStats implements ResourceCacheStatsMXBean
+{
+
+    private static final int BUCKETS = 32;
+
+    private final String policy;
+
+    private final LongSupplier residentBytes;
+
+    private final LongSupplier entryCount;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder negativeHits = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder evictedBytes = new LongAdder();
+
+    private final ConcurrentHashMap<String, LongAdder> evictions = new ConcurrentHashMap<String, LongAdder>();
+
+    private final LongAdder[] loadLatency = new LongAdder[BUCKETS];
+
+    /**
+     * @param policy 淘汰策略名称
+     * @param residentBytes 当前缓存数据占用的字节数
+     * @param entryCount 当前缓存元素数
+     */
+    public ResourceCacheStats(String policy, LongSupplier residentBytes, LongSupplier entryCount)
+    {
+        this.policy = policy;
+        this.residentBytes = residentBytes;
+        this.entryCount = entryCount;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            loadLatency[i] = new LongAdder();
+        }
+    }
+
+    public void recordHit()
+    {
+        hits.increment();
+    }
+
+    public void recordMiss()
+    {
+        misses.increment();
+    }
+
+    public void recordNegativeHit()
+    {
+        negativeHits.increment();
+    }
+
+    /**
+     * @param nanos 从classpath读取一个资源的耗时(纳秒)
+     */
+    public void recordLoad(long nanos)
+    {
+        loads.increment();
+        long micros = nanos / 1000;
+        int bucket = micros <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        loadLatency[bucket].increment();
+    }
+
+    /**
+     * @param cause 淘汰原因，如size、admission
+     * @param bytes 被淘汰数据的字节数
+     */
+    public void recordEviction(String cause, long bytes)
+    {
+        recordEvictions(cause, 1, bytes);
+    }
+
+    /**
+     * 一次淘汰多个元素，如清空缓存
+     */
+    public void recordEvictions(String cause, long count, long bytes)
+    {
+        LongAdder counter = evictions.get(cause);
+        if (counter == null)
+        {
+            LongAdder created = new LongAdder();
+            counter = evictions.putIfAbsent(cause, created);
+            if (counter == null)
+            {
+                counter = created;
+            }
+        }
+        counter.add(count);
+        evictedBytes.add(bytes);
+    }
+
+    @Override
+    public String getPolicy()
+    {
+        return policy;
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    @Override
+    public long getNegativeHitCount()
+    {
+        return negativeHits.sum();
+    }
+
+    @Override
+    public double getHitRate()
+    {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double)hitCount / total;
+    }
+
+    @Override
+    public long getLoadCount()
+    {
+        return loads.sum();
+    }
+
+    @Override
+    public Map<String, Long> getEvictionCounts()
+    {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : evictions.entrySet())
+        {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getEvictedBytes()
+    {
+        return evictedBytes.sum();
+    }
+
+    @Override
+    public long getResidentBytes()
+    {
+        return residentBytes.getAsLong();
+    }
+
+    @Override
+    public long getEntryCount()
+    {
+        return entryCount.getAsLong();
+    }
+
+    @Override
+    public long[] getLoadLatencyHistogram()
+    {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            histogram[i] = loadLatency[i].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public long getLoadLatencyP50Micros()
+    {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long getLoadLatencyP99Micros()
+    {
+        return percentile(0.99);
+    }
+
+    @Override
+    public void reset()
+    {
+        hits.reset();
+        misses.reset();
+        negativeHits.reset();
+        loads.reset();
+        evictedBytes.reset();
+        evictions.clear();
+        for (LongAdder bucket : loadLatency)
+        {
+            bucket.reset();
+        }
+    }
+
+    /**
+     * 全部统计项，用于管理接口输出
+     */
+    public Map<String, Object> snapshot()
+    {
+        Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+        snapshot.put("policy", getPolicy());
+        snapshot.put("hits", getHitCount());
+        snapshot.put("misses", getMissCount());
+        snapshot.put("negativeHits", getNegativeHitCount());
+        snapshot.put("hitRate", getHitRate());
+        snapshot.put("loads", getLoadCount());
+        snapshot.put("evictions", getEvictionCounts());
+        snapshot.put("evictedBytes", getEvictedBytes());
+        snapshot.put("residentBytes", getResidentBytes());
+        snapshot.put("entries", getEntryCount());
+        snapshot.put("loadLatencyP50Micros", getLoadLatencyP50Micros());
+        snapshot.put("loadLatencyP99Micros", getLoadLatencyP99Micros());
+        snapshot.put("loadLatencyHistogram", getLoadLatencyHistogram());
+        return snapshot;
+    }
+
+    private long percentile(double quantile)
+    {
+        long[] histogram = getLoadLatencyHistogram();
+        long total = 0;
+        for (long count : histogram)
+        {
+            total += count;
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long rank = (long)Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += histogram[i];
+            if (seen >= rank)
+            {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+}
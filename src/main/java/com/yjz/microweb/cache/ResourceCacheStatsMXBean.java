@@ -0,0 +1,49 @@
+package com.yjz.microweb.cache;
+
+import java.util.Map;
+
+/**
+ * 静态资源缓存统计的JMX接口，注册为com.yjz.microweb:type=ResourceCache
+ */
+public interface ResourceCacheStatsMXBean
+{
+
+    /** 淘汰策略 */
+    String getPolicy();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /** 未命中中由不存在资源缓存或索引直接拒绝的请求数 */
+    long getNegativeHitCount();
+
+    /** 命中率，没有请求时为0 */
+    double getHitRate();
+
+    /** 从classpath读取资源的次数 */
+    long getLoadCount();
+
+    /** 按淘汰原因统计的淘汰次数 */
+    Map<String, Long> getEvictionCounts();
+
+    long getEvictedBytes();
+
+    /** 当前缓存数据占用的字节数 */
+    long getResidentBytes();
+
+    long getEntryCount();
+
+    /** 读取耗时分布，第i个桶为[2^(i-1), 2^i)微秒，第0个桶为1微秒以内 */
+    long[] getLoadLatencyHistogram();
+
+    /** 读取耗时的中位数上界(微秒) */
+    long getLoadLatencyP50Micros();
+
+    /** 读取耗时的99分位上界(微秒) */
+    long getLoadLatencyP99Micros();
+
+    /** 清零计数 */
+    void reset();
+
+}
@@ -0,0 +1,403 @@
+package com.yjz.microweb.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <b>静态资源缓存(W-TinyLFU)</b><br>
+ * 1. 数据保存在ConcurrentHashMap中，读取不加锁；<br>
+ * 2. 淘汰策略为W-TinyLFU：新元素先进入窗口LRU(容量的1%)，被挤出窗口时与主区SLRU(试用区20%、保护区80%)的淘汰候选比较
+ * 访问频率(Count-Min Sketch估计)，频率更高者留下；<br>
+ * 3. 容量按字节计算(数据长度+固定开销)，插入时同步淘汰到容量以内，每次插入的均摊开销为O(1)，不再需要定时清理线程；<br>
+ * 4. 读取只把访问记录放入有界队列，队列积累到一定数量时由读线程tryLock批量回放，拿不到锁就跳过，队列满时丢弃记录；<br>
+ * 5. 与{@link ResourceCacheDefault}一致：只缓存不超过2M的数据，null按new byte[0]缓存；<br>
+ * 6. 插入时计算ETag等校验信息({@link ResourceMeta})，与数据一起保存，空数据不计算；<br>
+ * 7. 淘汰按原因统计：admission(候选频率不高于主区淘汰对象，未被接纳)、frequency(主区元素被频率更高的候选替换)、size(容量兜底)。
+ */
+public class ResourceCacheTinyLfu implements ResourceCache
+{
+
+    /** 默认最大缓存容量 */
+    private static final long DEFAULT_MAX_WEIGHT = 256 * 1024 * 1024l;
+
+    /** 单个缓存元素byte[]的最大长度 */
+    private static final int MAX_BYTES_LENGTH = 2097152;
+
+    /** 每个元素的固定开销，使空元素也计入容量 */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /** 估算元素个数时使用的平均大小 */
+    private static final int AVERAGE_ENTRY_SIZE = 16 * 1024;
+
+    /** 访问记录达到此数量时尝试回放 */
+    private static final int DRAIN_THRESHOLD = 64;
+
+    /** 访问记录队列上限，超过后丢弃新的访问记录 */
+    private static final int READ_BUFFER_MAX = 1024 * 16;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final int WINDOW = 0;
+
+    private static final int PROBATION = 1;
+
+    private static final int PROTECTED = 2;
+
+    private final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<String, Node>();
+
+    private final ConcurrentLinkedQueue<Node> readBuffer = new ConcurrentLinkedQueue<Node>();
+
+    private final AtomicInteger readBufferSize = new AtomicInteger();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final FrequencySketch sketch;
+
+    private final ResourceCacheStats stats = new ResourceCacheStats("tinylfu", this::weightedSize, this::size);
+
+    private final long maxWeight;
+
+    private final long windowMaxWeight;
+
+    private final long protectedMaxWeight;
+
+    /** 以下字段只在evictionLock内访问 */
+    private final Node window = Node.sentinel();
+
+    private final Node probation = Node.sentinel();
+
+    private final Node protectedQueue = Node.sentinel();
+
+    private long windowWeight;
+
+    private long protectedWeight;
+
+    private long totalWeight;
+
+    public ResourceCacheTinyLfu()
+    {
+        this(DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param maxWeight 最大缓存容量(字节)
+     */
+    public ResourceCacheTinyLfu(long maxWeight)
+    {
+        this.maxWeight = Math.max(maxWeight, MAX_BYTES_LENGTH + ENTRY_OVERHEAD);
+        this.windowMaxWeight = Math.max(this.maxWeight / 100, MAX_BYTES_LENGTH + ENTRY_OVERHEAD);
+        this.protectedMaxWeight = (this.maxWeight - windowMaxWeight) / 5 * 4;
+        this.sketch = new FrequencySketch((int)Math.min(Integer.MAX_VALUE, this.maxWeight / AVERAGE_ENTRY_SIZE));
+    }
+
+    @Override
+    public boolean containsKey(String shortUri)
+    {
+        return data.containsKey(shortUri);
+    }
+
+    @Override
+    public byte[] getCache(String shortUri)
+    {
+        Node node = data.get(shortUri);
+        if (node == null)
+        {
+            stats.recordMiss();
+            return null;
+        }
+        stats.recordHit();
+
+        if (readBufferSize.get() < READ_BUFFER_MAX)
+        {
+            readBuffer.add(node);
+            if (readBufferSize.incrementAndGet() >= DRAIN_THRESHOLD && evictionLock.tryLock())
+            {
+                try
+                {
+                    drainReadBuffer();
+                }
+                finally
+                {
+                    evictionLock.unlock();
+                }
+            }
+        }
+        return node.value;
+    }
+
+    @Override
+    public ResourceMeta getMeta(String shortUri)
+    {
+        Node node = data.get(shortUri);
+        return node != null ? node.meta : null;
+    }
+
+    @Override
+    public void putCache(String shortUri, byte[] bytes)
+    {
+        putCache(shortUri, bytes, System.currentTimeMillis());
+    }
+
+    @Override
+    public void putCache(String shortUri, byte[] bytes, long lastModified)
+    {
+        byte[] value = bytes != null ? bytes : EMPTY;
+        if (value.length > MAX_BYTES_LENGTH)
+        {
+            return;
+        }
+        // 摘要计算放在锁外
+        ResourceMeta meta = value.length > 0 ? ResourceMeta.of(value, lastModified) : null;
+
+        evictionLock.lock();
+        try
+        {
+            drainReadBuffer();
+            sketch.increment(shortUri);
+
+            Node node = data.get(shortUri);
+            if (node != null)
+            {
+                // 资源已缓存：更新数据并视为一次访问
+                int weight = value.length + ENTRY_OVERHEAD;
+                adjustWeight(node, weight - node.weight);
+                node.meta = meta;
+                node.value = value;
+                node.weight = weight;
+                onAccess(node);
+            }
+            else
+            {
+                node = new Node(shortUri, value, value.length + ENTRY_OVERHEAD);
+                node.meta = meta;
+                data.put(shortUri, node);
+                node.queue = WINDOW;
+                node.linkLast(window);
+                windowWeight += node.weight;
+                totalWeight += node.weight;
+            }
+            evict();
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public ResourceCacheStats stats()
+    {
+        return stats;
+    }
+
+    /**
+     * 当前缓存元素数量
+     */
+    public int size()
+    {
+        return data.size();
+    }
+
+    /**
+     * 当前占用容量(字节)，包含每个元素的固定开销
+     */
+    public long weightedSize()
+    {
+        evictionLock.lock();
+        try
+        {
+            return totalWeight;
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    private void drainReadBuffer()
+    {
+        Node node;
+        while ((node = readBuffer.poll()) != null)
+        {
+            readBufferSize.decrementAndGet();
+            sketch.increment(node.key);
+            if (node.queue >= 0)
+            {
+                onAccess(node);
+            }
+        }
+    }
+
+    private void onAccess(Node node)
+    {
+        if (node.queue == WINDOW)
+        {
+            node.moveToLast(window);
+        }
+        else if (node.queue == PROBATION)
+        {
+            // 试用区命中晋升到保护区，保护区超额时把最久未访问的元素降回试用区
+            node.unlink();
+            node.queue = PROTECTED;
+            node.linkLast(protectedQueue);
+            protectedWeight += node.weight;
+            while (protectedWeight > protectedMaxWeight && protectedQueue.next != protectedQueue)
+            {
+                Node demoted = protectedQueue.next;
+                demoted.unlink();
+                protectedWeight -= demoted.weight;
+                demoted.queue = PROBATION;
+                demoted.linkLast(probation);
+            }
+        }
+        else if (node.queue == PROTECTED)
+        {
+            node.moveToLast(protectedQueue);
+        }
+    }
+
+    private void adjustWeight(Node node, int delta)
+    {
+        totalWeight += delta;
+        if (node.queue == WINDOW)
+        {
+            windowWeight += delta;
+        }
+        else if (node.queue == PROTECTED)
+        {
+            protectedWeight += delta;
+        }
+    }
+
+    private void evict()
+    {
+        // 窗口超额：最久未访问的元素作为候选进入主区，主区已满时与主区淘汰对象比较频率
+        while (windowWeight > windowMaxWeight)
+        {
+            Node candidate = window.next;
+            candidate.unlink();
+            windowWeight -= candidate.weight;
+            candidate.queue = PROBATION;
+            candidate.linkLast(probation);
+
+            while (totalWeight > maxWeight)
+            {
+                Node victim = mainVictim(candidate);
+                if (victim == null)
+                {
+                    break;
+                }
+                if (sketch.frequency(candidate.key) > sketch.frequency(victim.key))
+                {
+                    remove(victim, "frequency");
+                }
+                else
+                {
+                    remove(candidate, "admission");
+                    break;
+                }
+            }
+        }
+
+        // 窗口内的元素较大时可能仍然超额，按窗口、试用区、保护区的顺序淘汰最久未访问的元素
+        while (totalWeight > maxWeight)
+        {
+            Node victim = window.next != window ? window.next
+                : probation.next != probation ? probation.next : protectedQueue.next;
+            if (victim == protectedQueue)
+            {
+                break;
+            }
+            remove(victim, "size");
+        }
+    }
+
+    /**
+     * 主区淘汰对象：试用区最久未访问的元素(不包括候选本身)，试用区为空时取保护区
+     */
+    private Node mainVictim(Node candidate)
+    {
+        Node victim = probation.next;
+        if (victim == candidate)
+        {
+            victim = victim.next;
+        }
+        if (victim == probation)
+        {
+            victim = protectedQueue.next;
+            if (victim == protectedQueue)
+            {
+                return null;
+            }
+        }
+        return victim;
+    }
+
+    private void remove(Node node, String cause)
+    {
+        stats.recordEviction(cause, node.weight - ENTRY_OVERHEAD);
+        node.unlink();
+        adjustWeight(node, -node.weight);
+        node.queue = -1;
+        data.remove(node.key, node);
+    }
+
+    private static final class Node
+    {
+        private final String key;
+
+        private volatile byte[] value;
+
+        private volatile ResourceMeta meta;
+
+        /** 以下字段只在evictionLock内访问 */
+        private int weight;
+
+        /** 所在队列，-1表示已移除 */
+        private int queue;
+
+        private Node prev;
+
+        private Node next;
+
+        Node(String key, byte[] value, int weight)
+        {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        static Node sentinel()
+        {
+            Node node = new Node(null, null, 0);
+            node.prev = node;
+            node.next = node;
+            return node;
+        }
+
+        void linkLast(Node head)
+        {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        void unlink()
+        {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+
+        void moveToLast(Node head)
+        {
+            unlink();
+            linkLast(head);
+        }
+    }
+
+}
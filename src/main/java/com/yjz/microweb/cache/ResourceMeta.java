@@ -0,0 +1,62 @@
+package com.yjz.microweb.cache;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <b>缓存资源的校验信息</b><br>
+ * 在资源放入缓存时计算一次：<br>
+ * 1. 强ETag：内容长度加SHA-1摘要的前64位，内容相同则ETag相同；<br>
+ * 2. 最后修改时间：精确到秒，与HTTP日期格式一致，便于If-Modified-Since比较。
+ */
+public final class ResourceMeta
+{
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String etag;
+
+    private final long lastModified;
+
+    public ResourceMeta(String etag, long lastModified)
+    {
+        this.etag = etag;
+        this.lastModified = lastModified / 1000 * 1000;
+    }
+
+    /**
+     * 根据资源内容计算校验信息
+     */
+    public static ResourceMeta of(byte[] bytes, long lastModified)
+    {
+        StringBuilder sb = new StringBuilder(36).append('"').append(Integer.toHexString(bytes.length)).append('-');
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            for (int i = 0; i < 8; i++)
+            {
+                sb.append(HEX[(digest[i] >> 4) & 0xF]).append(HEX[digest[i] & 0xF]);
+            }
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // 每个JRE都必须提供SHA-1，这里不会发生
+            throw new IllegalStateException(e);
+        }
+        return new ResourceMeta(sb.append('"').toString(), lastModified);
+    }
+
+    /**
+     * 带双引号的强ETag
+     */
+    public String getEtag()
+    {
+        return etag;
+    }
+
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+}
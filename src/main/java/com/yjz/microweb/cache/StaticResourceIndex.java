@@ -0,0 +1,263 @@
+package com.yjz.microweb.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <b>classpath静态资源索引</b><br>
+ * 也可用{@link #scan(File[])}索引文件系统中的静态目录<br>
+ * 1. 启动时扫描一次classpath中所有同名的静态资源根目录(目录或jar)，记录资源路径(以/开头，相对于根目录)、长度与修改时间，之后只读；<br>
+ * 2. 多个根目录包含同一路径时以classpath顺序靠前者为准，与Class.getResource一致；<br>
+ * 3. jar按{@link com.yjz.microweb.util.ExpandJar}的方式遍历条目，但不解压；<br>
+ * 4. 索引完整时，不在索引中的请求直接判定为不存在，不再访问classpath；<br>
+ * 5. 根目录位于无法遍历的位置时索引不完整，{@link #isComplete()}返回false，调用方应回退到按需查找。
+ */
+public class StaticResourceIndex
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(StaticResourceIndex.class);
+
+    private final Map<String, Resource> resources;
+
+    private final boolean complete;
+
+    private StaticResourceIndex(Map<String, Resource> resources, boolean complete)
+    {
+        this.resources = Collections.unmodifiableMap(resources);
+        this.complete = complete;
+    }
+
+    /**
+     * 不完整的空索引，所有资源都需要按需查找
+     */
+    public static StaticResourceIndex incomplete()
+    {
+        return new StaticResourceIndex(new LinkedHashMap<String, Resource>(), false);
+    }
+
+    /**
+     * 扫描classpath下的静态资源根目录
+     *
+     * @param root classpath路径，如/views/public
+     */
+    public static StaticResourceIndex scan(String root)
+    {
+        String name = root.startsWith("/") ? root.substring(1) : root;
+        Map<String, Resource> resources = new LinkedHashMap<String, Resource>();
+        try
+        {
+            Enumeration<URL> urls = StaticResourceIndex.class.getClassLoader().getResources(name);
+            while (urls.hasMoreElements())
+            {
+                URL url = urls.nextElement();
+                if ("file".equals(url.getProtocol()))
+                {
+                    walk(new File(url.toURI()), "", resources);
+                }
+                else if ("jar".equals(url.getProtocol()))
+                {
+                    scanJar(url, resources);
+                }
+                else
+                {
+                    logger.info("Static resource root " + url + " can not be scanned, index disabled.");
+                    return incomplete();
+                }
+            }
+        }
+        catch (IOException | URISyntaxException e)
+        {
+            logger.warn("Failed to scan static resource root " + root + ", index disabled.", e);
+            return incomplete();
+        }
+        logger.info("Indexed " + resources.size() + " static resources under classpath:" + root);
+        return new StaticResourceIndex(resources, true);
+    }
+
+    /**
+     * 扫描文件系统中的静态目录，多个目录包含同一路径时以靠前者为准；启动后新增的文件不在索引中
+     */
+    public static StaticResourceIndex scan(File[] roots)
+    {
+        Map<String, Resource> resources = new LinkedHashMap<String, Resource>();
+        for (File root : roots)
+        {
+            walk(root, "", resources);
+        }
+        logger.info("Indexed " + resources.size() + " static files under " + roots.length + " directories.");
+        return new StaticResourceIndex(resources, true);
+    }
+
+    private static void walk(File dir, String prefix, Map<String, Resource> resources)
+    {
+        File[] files = dir.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        for (File file : files)
+        {
+            String path = prefix + "/" + file.getName();
+            if (file.isDirectory())
+            {
+                walk(file, path, resources);
+            }
+            else if (!resources.containsKey(path))
+            {
+                resources.put(path, new Resource(path, file.length(), file.lastModified()));
+            }
+        }
+    }
+
+    private static void scanJar(URL url, Map<String, Resource> resources)
+        throws IOException
+    {
+        JarURLConnection juc = (JarURLConnection)url.openConnection();
+        juc.setUseCaches(false);
+        String prefix = juc.getEntryName();
+        if (prefix == null)
+        {
+            prefix = "";
+        }
+        else if (!prefix.endsWith("/"))
+        {
+            prefix = prefix + "/";
+        }
+
+        try (JarFile jarFile = juc.getJarFile())
+        {
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            while (jarEntries.hasMoreElements())
+            {
+                JarEntry jarEntry = jarEntries.nextElement();
+                String name = jarEntry.getName();
+                if (jarEntry.isDirectory() || !name.startsWith(prefix))
+                {
+                    continue;
+                }
+                String path = name.substring(prefix.length() - 1);
+                if (!resources.containsKey(path))
+                {
+                    resources.put(path, new Resource(path, jarEntry.getSize(), jarEntry.getTime()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 索引是否包含全部资源
+     */
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * 资源是否存在；索引不完整时返回值没有意义
+     */
+    public boolean contains(String path)
+    {
+        return resources.containsKey(path);
+    }
+
+    public Resource get(String path)
+    {
+        return resources.get(path);
+    }
+
+    public int size()
+    {
+        return resources.size();
+    }
+
+    /**
+     * 按模式选择资源，用于预加载：按模式的顺序排列，同一模式内较小的资源在前<br>
+     * 模式支持精确路径(/index.html)、后缀(*.css)与前缀(/js/*)
+     */
+    public List<Resource> select(String[] patterns)
+    {
+        Set<Resource> selected = new LinkedHashSet<Resource>();
+        for (String pattern : patterns)
+        {
+            List<Resource> matched = new ArrayList<Resource>();
+            for (Resource resource : resources.values())
+            {
+                if (matches(pattern, resource.getPath()))
+                {
+                    matched.add(resource);
+                }
+            }
+            Collections.sort(matched, Comparator.comparingLong(Resource::getSize));
+            selected.addAll(matched);
+        }
+        return new ArrayList<Resource>(selected);
+    }
+
+    private static boolean matches(String pattern, String path)
+    {
+        if (pattern.startsWith("*"))
+        {
+            return path.endsWith(pattern.substring(1));
+        }
+        if (pattern.endsWith("*"))
+        {
+            return path.startsWith(pattern.substring(0, pattern.length() - 1));
+        }
+        return pattern.equals(path);
+    }
+
+    /**
+     * 索引中的一个资源
+     */
+    public static final class Resource
+    {
+        private final String path;
+
+        private final long size;
+
+        private final long lastModified;
+
+        Resource(String path, long size, long lastModified)
+        {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public String getPath()
+        {
+            return path;
+        }
+
+        /**
+         * 资源长度(字节)，jar中未记录时为-1
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+    }
+
+}
@@ -1440,6 +1440,14 @@ public class MicrowebServletContext implements ServletContext
         return eventListeners;
     }
     
+    /**
+     * 通过addListener注册的listener实例，只读
+     */
+    public Set<EventListener> getRegisteredListeners()
+    {
+        return Collections.unmodifiableSet(eventListenerInstances);
+    }
+    
     /**
      * Add a filter mapping to this Context.
      *
@@ -1490,6 +1498,7 @@ public class MicrowebServletContext implements ServletContext
         {
             filterMaps.add(0, filterMap);
         }
+        filterChainFactory.invalidate();
         
         // if (notifyContainerListeners) {
         // fireContainerEvent("addFilterMap", filterMap);
@@ -1514,6 +1523,7 @@ public class MicrowebServletContext implements ServletContext
         // }
         // }
         filterMaps.clear();
+        filterChainFactory.invalidate();
     }
     
     /**
@@ -1554,7 +1564,7 @@ public class MicrowebServletContext implements ServletContext
         return mappings;
     }
     
-    protected FilterChainFactory getFilterChainFactory()
+    public FilterChainFactory getFilterChainFactory()
     {
         return filterChainFactory;
     }
@@ -1582,6 +1592,7 @@ public class MicrowebServletContext implements ServletContext
                 }
             }
         }
+        filterChainFactory.invalidate();
     }
     
     protected void unregisterAllFilters()
@@ -2,6 +2,8 @@ package com.yjz.microweb.filter;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.Servlet;
@@ -13,8 +15,18 @@ import com.yjz.microweb.util.Globals;
 
 public class FilterChainFactory
 {
+    /** 过滤器链缓存的最大条目数，超过后整体清空重新累积 */
+    private static final int MAX_CACHED_PLANS = 1024;
+    
+    private static final MicrowebFilterRegistration[] EMPTY_PLAN = new MicrowebFilterRegistration[0];
+    
     private final MicrowebServletContext ctx;
     
+    /**
+     * 当前映射对应的匹配器与过滤器链缓存。映射变化时整体替换，正在构建的旧结果只会写入被丢弃的旧对象。
+     */
+    private volatile Plans plans = new Plans();
+    
     // ------------------------------------------------------------ Constructors
     
     public FilterChainFactory(final MicrowebServletContext ctx)
@@ -38,68 +50,70 @@ public class FilterChainFactory
         final DispatcherType dispatcherType)
     {
         
-        return buildFilterChain(servlet, getRequestPath(request), dispatcherType);
+        // If there is no servlet to execute, return null
+        if (servlet == null)
+        {
+            return (null);
+        }
+        
+        // 每个请求只创建持有游标的链对象，过滤器数组来自缓存
+        return new MicrowebFilterChain(servlet, ctx, getFilterPlan(servlet, getRequestPath(request), dispatcherType));
         
     }
     
+    /**
+     * 过滤器映射或注册发生变化时调用，丢弃全部缓存的过滤器链
+     */
+    public void invalidate()
+    {
+        plans = new Plans();
+    }
+    
     // -------------------------------------------------------- Private Methods
-    private MicrowebFilterChain buildFilterChain(final Servlet servlet, final String requestPath,
+    private MicrowebFilterRegistration[] getFilterPlan(final Servlet servlet, final String requestPath,
         final DispatcherType dispatcherType)
     {
-        // If there is no servlet to execute, return null
-        if (servlet == null)
+        String servletName = servlet.getServletConfig().getServletName();
+        PlanKey key = new PlanKey(requestPath, dispatcherType, servletName);
+        
+        Plans current = plans;
+        MicrowebFilterRegistration[] plan = current.cache.get(key);
+        if (plan == null)
         {
-            return (null);
+            plan = buildFilterPlan(current, servletName, requestPath, dispatcherType);
+            if (current.cache.size() >= MAX_CACHED_PLANS)
+            {
+                current.cache.clear();
+            }
+            current.cache.put(key, plan);
         }
-        
-        // Create and initialize a filter chain object
-        MicrowebFilterChain filterChain = new MicrowebFilterChain(servlet, ctx);
-        
+        return plan;
+    }
+    
+    private MicrowebFilterRegistration[] buildFilterPlan(final Plans current, final String servletName,
+        final String requestPath, final DispatcherType dispatcherType)
+    {
         final Map<String, ? extends MicrowebFilterRegistration> registrations = ctx.getFilterRegistrations();
         
         // If there are no filter mappings, we are done
         if (registrations.isEmpty())
         {
-            return filterChain;
+            return EMPTY_PLAN;
         }
         
-        final List<FilterMap> filterMaps = ctx.getFilterMaps();
-        
-        // Add the relevant path-mapped filters to this filter chain
-        for (final FilterMap filterMap : filterMaps)
+        // URL映射在前、servlet名称映射在后，各自按注册顺序
+        List<String> filterNames = current.matcher(ctx).match(requestPath, servletName, dispatcherType);
+        if (filterNames.isEmpty())
         {
-            if (!filterMap.getDispatcherTypes().contains(dispatcherType))
-            {
-                continue;
-            }
-            
-            if (!matchFiltersURL(filterMap, requestPath))
-            {
-                continue;
-            }
-            
-            filterChain.addFilter(registrations.get(filterMap.getFilterName()));
+            return EMPTY_PLAN;
         }
         
-        // Add filters that match on servlet name second
-        String servletName = servlet.getServletConfig().getServletName();
-        for (final FilterMap filterMap : filterMaps)
+        MicrowebFilterRegistration[] plan = new MicrowebFilterRegistration[filterNames.size()];
+        for (int i = 0; i < plan.length; i++)
         {
-            if (!filterMap.getDispatcherTypes().contains(dispatcherType))
-            {
-                continue;
-            }
-            
-            if (!matchFiltersServlet(filterMap, servletName))
-            {
-                continue;
-            }
-            
-            filterChain.addFilter(registrations.get(filterMap.getFilterName()));
+            plan[i] = registrations.get(filterNames.get(i));
         }
-        
-        // Return the completed filter chain
-        return filterChain;
+        return plan;
     }
     
     private String getRequestPath(ServletRequest request)
@@ -126,101 +140,70 @@ public class FilterChainFactory
         return requestPath;
     }
     
-    /**
-     * Return <code>true</code> if the context-relative request path matches the requirements of the specified filter
-     * mapping; otherwise, return <code>null</code>.
-     *
-     * @param filterMap Filter mapping being checked
-     * @param requestPath Context-relative request path of this request
-     */
-    /*
-     * SJSWS 6324431 private boolean matchFiltersURL(FilterMap filterMap, String requestPath) {
-     */
-    // START SJSWS 6324431
-    private boolean matchFiltersURL(FilterMap filterMap, String requestPath)
+    private static final class Plans
     {
-        // END SJSWS 6324431
-        
-        if (requestPath == null)
-        {
-            return false;
-        }
+        /** (请求路径, DispatcherType, servlet名称) -> 有序的过滤器数组，数组构建后不再修改，由所有请求共享 */
+        private final ConcurrentHashMap<PlanKey, MicrowebFilterRegistration[]> cache =
+            new ConcurrentHashMap<PlanKey, MicrowebFilterRegistration[]>();
         
-        // Match on context relative request path
-        String testPath = filterMap.getURLPattern();
-        if (testPath == null)
-        {
-            return false;
-        }
+        private volatile FilterMapMatcher matcher;
         
-        // Case 1 - Exact Match
-        if (testPath.equals(requestPath))
+        FilterMapMatcher matcher(MicrowebServletContext ctx)
         {
-            return true;
-        }
-        
-        // Case 2 - Path Match ("/.../*")
-        if (testPath.equals("/*"))
-        {
-            return true;
-        }
-        if (testPath.endsWith("/*"))
-        {
-            if (testPath.regionMatches(0, requestPath, 0, testPath.length() - 2))
+            FilterMapMatcher m = matcher;
+            if (m == null)
             {
-                if (requestPath.length() == (testPath.length() - 2))
-                {
-                    return true;
-                }
-                else if ('/' == requestPath.charAt(testPath.length() - 2))
+                synchronized (this)
                 {
-                    return true;
+                    m = matcher;
+                    if (m == null)
+                    {
+                        matcher = m = new FilterMapMatcher(ctx.getFilterMaps());
+                    }
                 }
             }
-            return false;
+            return m;
         }
-        
-        // Case 3 - Extension Match
-        if (testPath.startsWith("*."))
-        {
-            int slash = requestPath.lastIndexOf('/');
-            int period = requestPath.lastIndexOf('.');
-            if ((slash >= 0) && (period > slash) && (period != requestPath.length() - 1)
-                && ((requestPath.length() - period) == (testPath.length() - 1)))
-            {
-                return (testPath.regionMatches(2, requestPath, period + 1, testPath.length() - 2));
-            }
-        }
-        
-        // Case 4 - "Default" Match
-        return false; // NOTE - Not relevant for selecting filters
-        
     }
     
-    /**
-     * Return <code>true</code> if the specified servlet name matches the requirements of the specified filter mapping;
-     * otherwise return <code>false</code>.
-     *
-     * @param filterMap Filter mapping being checked
-     * @param servletName Servlet name being checked
-     */
-    private boolean matchFiltersServlet(FilterMap filterMap, String servletName)
+    private static final class PlanKey
     {
+        private final String requestPath;
+        
+        private final DispatcherType dispatcherType;
+        
+        private final String servletName;
+        
+        private final int hash;
         
-        if (servletName == null)
+        PlanKey(String requestPath, DispatcherType dispatcherType, String servletName)
         {
-            return false;
+            this.requestPath = requestPath;
+            this.dispatcherType = dispatcherType;
+            this.servletName = servletName;
+            this.hash = Objects.hash(requestPath, dispatcherType, servletName);
         }
-        else
+        
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj)
         {
-            if (servletName.equals(filterMap.getServletName()) || "*".equals(filterMap.getServletName()))
+            if (this == obj)
             {
                 return true;
             }
-            else
+            if (!(obj instanceof PlanKey))
             {
                 return false;
             }
+            PlanKey other = (PlanKey)obj;
+            return hash == other.hash && dispatcherType == other.dispatcherType
+                && Objects.equals(requestPath, other.requestPath) && Objects.equals(servletName, other.servletName);
         }
     }
     
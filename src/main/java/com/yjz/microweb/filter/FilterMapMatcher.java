@@ -0,0 +1,242 @@
+package com.yjz.microweb.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.DispatcherType;
+
+/**
+ * <b>过滤器映射匹配器</b><br>
+ * 由全部FilterMap一次性编译而成，匹配耗时与已映射的过滤器数量无关：<br>
+ * 1. 精确路径：HashMap；<br>
+ * 2. 前缀路径("/.../*")：按路径段组织的字典树，沿请求路径逐段下行，收集途经节点上的映射；<br>
+ * 3. 扩展名("*.ext")：以扩展名为键的HashMap；<br>
+ * 4. servlet名称：以名称为键的HashMap，外加"*"映射。<br>
+ * 返回结果先按URL映射、后按servlet名称映射，各自保持FilterMap的注册顺序，与逐个匹配的结果一致。
+ */
+public class FilterMapMatcher
+{
+
+    private final Map<String, List<Mapping>> exactMappings = new HashMap<String, List<Mapping>>();
+
+    private final Node prefixRoot = new Node();
+
+    private final Map<String, List<Mapping>> extensionMappings = new HashMap<String, List<Mapping>>();
+
+    private final Map<String, List<Mapping>> servletMappings = new HashMap<String, List<Mapping>>();
+
+    private final List<Mapping> anyServletMappings = new ArrayList<Mapping>();
+
+    public FilterMapMatcher(List<FilterMap> filterMaps)
+    {
+        int order = 0;
+        for (FilterMap filterMap : filterMaps)
+        {
+            Mapping mapping = new Mapping(order++, filterMap.getFilterName(), filterMap.getDispatcherTypes());
+
+            String servletName = filterMap.getServletName();
+            if (servletName != null)
+            {
+                if ("*".equals(servletName))
+                {
+                    anyServletMappings.add(mapping);
+                }
+                else
+                {
+                    add(servletMappings, servletName, mapping);
+                }
+            }
+
+            String pattern = filterMap.getURLPattern();
+            if (pattern == null)
+            {
+                continue;
+            }
+            if (pattern.endsWith("/*"))
+            {
+                prefixNode(pattern.substring(0, pattern.length() - 2)).mappings.add(mapping);
+            }
+            else if (pattern.startsWith("*."))
+            {
+                add(extensionMappings, pattern.substring(2), mapping);
+            }
+            else
+            {
+                add(exactMappings, pattern, mapping);
+            }
+        }
+    }
+
+    /**
+     * 返回匹配的过滤器名称，URL映射在前、servlet名称映射在后，各自按注册顺序
+     */
+    public List<String> match(String requestPath, String servletName, DispatcherType dispatcherType)
+    {
+        List<String> names = new ArrayList<String>();
+
+        if (requestPath != null)
+        {
+            List<Mapping> matched = new ArrayList<Mapping>();
+            collect(exactMappings.get(requestPath), dispatcherType, matched);
+            collectPrefix(requestPath, dispatcherType, matched);
+            collect(extensionMappings.get(extension(requestPath)), dispatcherType, matched);
+            addNames(matched, names);
+        }
+
+        if (servletName != null)
+        {
+            List<Mapping> matched = new ArrayList<Mapping>();
+            collect(servletMappings.get(servletName), dispatcherType, matched);
+            collect(anyServletMappings, dispatcherType, matched);
+            addNames(matched, names);
+        }
+
+        return names;
+    }
+
+    private void collectPrefix(String requestPath, DispatcherType dispatcherType, List<Mapping> matched)
+    {
+        // "/*"匹配所有路径
+        Node node = prefixRoot;
+        collect(node.mappings, dispatcherType, matched);
+        if (requestPath.isEmpty() || requestPath.charAt(0) != '/')
+        {
+            return;
+        }
+
+        int start = 1;
+        int length = requestPath.length();
+        while (start <= length)
+        {
+            int end = requestPath.indexOf('/', start);
+            if (end < 0)
+            {
+                end = length;
+            }
+            node = node.children.get(requestPath.substring(start, end));
+            if (node == null)
+            {
+                return;
+            }
+            collect(node.mappings, dispatcherType, matched);
+            start = end + 1;
+        }
+    }
+
+    private Node prefixNode(String prefix)
+    {
+        Node node = prefixRoot;
+        if (prefix.isEmpty())
+        {
+            return node;
+        }
+
+        // 前缀以'/'开头(validateURLPattern保证)，按'/'切分为路径段
+        int start = prefix.charAt(0) == '/' ? 1 : 0;
+        int length = prefix.length();
+        while (start <= length)
+        {
+            int end = prefix.indexOf('/', start);
+            if (end < 0)
+            {
+                end = length;
+            }
+            String segment = prefix.substring(start, end);
+            Node child = node.children.get(segment);
+            if (child == null)
+            {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * 最后一个路径段的扩展名，没有时返回null
+     */
+    private static String extension(String requestPath)
+    {
+        int slash = requestPath.lastIndexOf('/');
+        int period = requestPath.lastIndexOf('.');
+        if (slash >= 0 && period > slash && period != requestPath.length() - 1)
+        {
+            return requestPath.substring(period + 1);
+        }
+        return null;
+    }
+
+    private static void collect(List<Mapping> mappings, DispatcherType dispatcherType, List<Mapping> matched)
+    {
+        if (mappings == null)
+        {
+            return;
+        }
+        for (Mapping mapping : mappings)
+        {
+            if (mapping.dispatcherTypes.contains(dispatcherType))
+            {
+                matched.add(mapping);
+            }
+        }
+    }
+
+    private static void addNames(List<Mapping> matched, List<String> names)
+    {
+        if (matched.size() > 1)
+        {
+            Collections.sort(matched);
+        }
+        for (Mapping mapping : matched)
+        {
+            names.add(mapping.filterName);
+        }
+    }
+
+    private static void add(Map<String, List<Mapping>> map, String key, Mapping mapping)
+    {
+        List<Mapping> mappings = map.get(key);
+        if (mappings == null)
+        {
+            mappings = new ArrayList<Mapping>(1);
+            map.put(key, mappings);
+        }
+        mappings.add(mapping);
+    }
+
+    private static final class Node
+    {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+
+        private final List<Mapping> mappings = new ArrayList<Mapping>(1);
+    }
+
+    private static final class Mapping implements Comparable<Mapping>
+    {
+        private final int order;
+
+        private final String filterName;
+
+        private final Set<DispatcherType> dispatcherTypes;
+
+        Mapping(int order, String filterName, Set<DispatcherType> dispatcherTypes)
+        {
+            this.order = order;
+            this.filterName = filterName;
+            this.dispatcherTypes = dispatcherTypes;
+        }
+
+        @Override
+        public int compareTo(Mapping other)
+        {
+            return Integer.compare(order, other.order);
+        }
+    }
+
+}
@@ -47,6 +47,19 @@ public class MicrowebFilterChain implements FilterChain, FilterChainInvoker
         this.ctx = ctx;
     }
     
+    /**
+     * 使用预先构建的过滤器数组，数组在多个请求间共享，只读不写
+     */
+    public MicrowebFilterChain(final Servlet servlet, final MicrowebServletContext ctx,
+        final MicrowebFilterRegistration[] filters)
+    {
+        
+        this.servlet = servlet;
+        this.ctx = ctx;
+        this.filters = filters;
+        this.n = filters.length;
+    }
+    
     // ---------------------------------------------------- FilterChain Methods
     
     public void invokeFilterChain(ServletRequest request, ServletResponse response)
@@ -122,6 +135,7 @@ public class MicrowebFilterChain implements FilterChain, FilterChainInvoker
     {
         synchronized (lock)
         {
+            // 共享数组时n等于数组长度，先复制再追加
             if (n == filters.length)
             {
                 MicrowebFilterRegistration[] newFilters = new MicrowebFilterRegistration[n + 4];
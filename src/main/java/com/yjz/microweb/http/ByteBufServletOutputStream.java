@@ -0,0 +1,137 @@
+package com.yjz.microweb.http;
+
+import java.io.IOException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+/**
+ * <b>基于ByteBuf的输出流</b><br>
+ * 1. 直接写入ctx.alloc()分配的池化堆外ByteBuf，首次写入时才分配，空响应不占用缓冲区；<br>
+ * 2. 响应写出时通过{@link #detach()}把缓冲区交给FullHttpResponse/HttpContent，无需复制；<br>
+ * 3. 未交出的缓冲区必须通过{@link #release()}释放，close()不释放数据。
+ */
+public class ByteBufServletOutputStream extends ServletOutputStream
+{
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ByteBufAllocator alloc;
+
+    private ByteBuf buffer;
+
+    private WriteListener writeListener;
+
+    public ByteBufServletOutputStream(ByteBufAllocator alloc)
+    {
+        this.alloc = alloc != null ? alloc : ByteBufAllocator.DEFAULT;
+    }
+
+    @Override
+    public void write(int b)
+        throws IOException
+    {
+        buffer().writeByte(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+        throws IOException
+    {
+        buffer().writeBytes(b, off, len);
+    }
+
+    /**
+     * 已写入且未交出的字节数
+     */
+    public int size()
+    {
+        return buffer != null ? buffer.readableBytes() : 0;
+    }
+
+    /**
+     * 返回当前数据的只读视图，不改变引用计数
+     */
+    public ByteBuf content()
+    {
+        return buffer != null ? buffer.asReadOnly() : Unpooled.EMPTY_BUFFER;
+    }
+
+    /**
+     * 交出当前缓冲区，调用方负责释放；之后的写入使用新分配的缓冲区
+     */
+    public ByteBuf detach()
+    {
+        ByteBuf buf = buffer != null ? buffer : Unpooled.EMPTY_BUFFER;
+        buffer = null;
+        return buf;
+    }
+
+    /**
+     * 丢弃已写入的数据，保留缓冲区以便复用
+     */
+    public void reset()
+    {
+        if (buffer != null)
+        {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * 释放未交出的缓冲区，用于异常路径
+     */
+    public void release()
+    {
+        if (buffer != null)
+        {
+            buffer.release();
+            buffer = null;
+        }
+    }
+
+    @Override
+    public boolean isReady()
+    {
+        return true;
+    }
+
+    /**
+     * 写入只进入缓冲区，始终可写，因此设置后立即回调onWritePossible；回调抛出的异常交给onError
+     */
+    @Override
+    public void setWriteListener(WriteListener writeListener)
+    {
+        if (writeListener == null)
+        {
+            throw new NullPointerException("WriteListener must not be null");
+        }
+        if (this.writeListener != null)
+        {
+            throw new IllegalStateException("WriteListener has already been set");
+        }
+        this.writeListener = writeListener;
+        try
+        {
+            writeListener.onWritePossible();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            writeListener.onError(e);
+        }
+    }
+
+    private ByteBuf buffer()
+    {
+        if (buffer == null)
+        {
+            buffer = alloc.buffer(INITIAL_CAPACITY);
+        }
+        return buffer;
+    }
+
+}
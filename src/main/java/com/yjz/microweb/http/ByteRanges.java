@@ -0,0 +1,259 @@
+package com.yjz.microweb.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.CharsetUtil;
+
+/**
+ * <b>静态资源的区间请求</b><br>
+ * 1. 只支持bytes单位，区间按起点排序，重叠或相邻的区间合并为一个；<br>
+ * 2. 格式错误、单位不支持或区间数超过{@link #MAX_RANGES}时忽略Range，返回完整资源；<br>
+ * 3. 全部区间都超出资源长度时不可满足，应响应416；<br>
+ * 4. 携带If-Range时，只有与资源的强ETag或修改时间(秒)一致才按区间响应，否则返回完整资源；<br>
+ * 5. 多个区间以multipart/byteranges返回，各部分的分隔头由{@link #partHeaders}生成，数据部分由调用方直接切片写出。
+ */
+public final class ByteRanges
+{
+
+    /** 单个请求允许的最大区间数 */
+    public static final int MAX_RANGES = 16;
+
+    /** 请求的区间都不可满足 */
+    public static final long[][] UNSATISFIABLE = new long[0][];
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private ByteRanges()
+    {
+    }
+
+    /**
+     * 返回请求的区间，每个区间为闭区间{start, end}；不按区间响应时返回null，不可满足时返回{@link #UNSATISFIABLE}
+     *
+     * @param requestHeaders 请求头
+     * @param etag 资源的ETag，为空时If-Range只能按修改时间匹配
+     * @param lastModified 资源最后修改时间(毫秒)，小于等于0表示未知
+     * @param length 资源长度
+     */
+    public static long[][] select(HttpHeaders requestHeaders, String etag, long lastModified, long length)
+    {
+        String range = requestHeaders.get(HttpHeaderNames.RANGE);
+        if (range == null)
+        {
+            return null;
+        }
+        if (requestHeaders.contains(HttpHeaderNames.IF_RANGE) && !isRangeFresh(requestHeaders, etag, lastModified))
+        {
+            return null;
+        }
+        return parse(range, length);
+    }
+
+    /**
+     * 解析Range请求头
+     *
+     * @see #select(HttpHeaders, String, long, long)
+     */
+    public static long[][] parse(String range, long length)
+    {
+        if (!range.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length()))
+        {
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<long[]>();
+        int specs = 0;
+        for (String spec : range.substring(BYTES_UNIT.length()).split(","))
+        {
+            spec = spec.trim();
+            if (spec.isEmpty())
+            {
+                continue;
+            }
+            if (++specs > MAX_RANGES)
+            {
+                return null;
+            }
+            int dashIdx = spec.indexOf('-');
+            if (dashIdx < 0)
+            {
+                return null;
+            }
+
+            long start;
+            long end;
+            try
+            {
+                if (dashIdx == 0)
+                {
+                    // 后缀区间：最后N个字节
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0)
+                    {
+                        return null;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = suffix == 0 ? -1 : length - 1;
+                }
+                else
+                {
+                    start = Long.parseLong(spec.substring(0, dashIdx));
+                    end = dashIdx == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dashIdx + 1));
+                    if (start < 0 || end < start)
+                    {
+                        return null;
+                    }
+                    end = Math.min(end, length - 1);
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                return null;
+            }
+
+            if (start < length && start <= end)
+            {
+                ranges.add(new long[] {start, end});
+            }
+        }
+        if (specs == 0)
+        {
+            return null;
+        }
+        if (ranges.isEmpty())
+        {
+            return UNSATISFIABLE;
+        }
+        return coalesce(ranges);
+    }
+
+    private static long[][] coalesce(List<long[]> ranges)
+    {
+        Collections.sort(ranges, new Comparator<long[]>()
+        {
+            @Override
+            public int compare(long[] a, long[] b)
+            {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+
+        List<long[]> merged = new ArrayList<long[]>(ranges.size());
+        long[] last = null;
+        for (long[] range : ranges)
+        {
+            if (last != null && range[0] <= last[1] + 1)
+            {
+                last[1] = Math.max(last[1], range[1]);
+            }
+            else
+            {
+                last = range;
+                merged.add(range);
+            }
+        }
+        return merged.toArray(new long[merged.size()][]);
+    }
+
+    /**
+     * If-Range为ETag时按强比较，为日期时与修改时间(秒)精确比较
+     */
+    private static boolean isRangeFresh(HttpHeaders requestHeaders, String etag, long lastModified)
+    {
+        String ifRange = requestHeaders.get(HttpHeaderNames.IF_RANGE).trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+        {
+            return etag != null && !etag.startsWith("W/") && ifRange.equals(etag);
+        }
+        // 日期格式错误时按不一致处理，返回完整资源
+        Date date = DateFormatter.parseHttpDate(ifRange);
+        return date != null && lastModified > 0 && lastModified / 1000 == date.getTime() / 1000;
+    }
+
+    public static long length(long[] range)
+    {
+        return range[1] - range[0] + 1;
+    }
+
+    /**
+     * Content-Range响应头，如bytes 0-499/1234
+     */
+    public static String contentRange(long[] range, long length)
+    {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    /**
+     * 416响应的Content-Range
+     */
+    public static String unsatisfiedRange(long length)
+    {
+        return "bytes */" + length;
+    }
+
+    /**
+     * multipart/byteranges的分隔符
+     */
+    public static String boundary()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Long.toHexString(random.nextLong() | Long.MIN_VALUE) + Long.toHexString(random.nextLong() | Long.MIN_VALUE);
+    }
+
+    public static String multipartType(String boundary)
+    {
+        return "multipart/byteranges; boundary=" + boundary;
+    }
+
+    /**
+     * 各部分之前的分隔头，返回ranges.length + 1个元素，最后一个为结束分隔符；
+     * 响应体依次为分隔头i、区间i的数据，最后为结束分隔符
+     */
+    public static byte[][] partHeaders(String boundary, String contentType, long[][] ranges, long length)
+    {
+        byte[][] headers = new byte[ranges.length + 1][];
+        for (int i = 0; i < ranges.length; i++)
+        {
+            StringBuilder header = new StringBuilder(128);
+            if (i > 0)
+            {
+                header.append("\r\n");
+            }
+            header.append("--").append(boundary).append("\r\n");
+            if (contentType != null)
+            {
+                header.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            header.append("Content-Range: ").append(contentRange(ranges[i], length)).append("\r\n\r\n");
+            headers[i] = header.toString().getBytes(CharsetUtil.US_ASCII);
+        }
+        headers[ranges.length] = ("\r\n--" + boundary + "--\r\n").getBytes(CharsetUtil.US_ASCII);
+        return headers;
+    }
+
+    /**
+     * multipart/byteranges响应体的总长度
+     */
+    public static long multipartLength(byte[][] partHeaders, long[][] ranges)
+    {
+        long total = 0;
+        for (byte[] header : partHeaders)
+        {
+            total += header.length;
+        }
+        for (long[] range : ranges)
+        {
+            total += length(range);
+        }
+        return total;
+    }
+
+}
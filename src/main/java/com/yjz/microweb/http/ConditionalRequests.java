@@ -0,0 +1,123 @@
+package com.yjz.microweb.http;
+
+import java.util.Date;
+import java.util.Map;
+
+import com.yjz.microweb.transport.HttpServerConf;
+
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * <b>静态资源的条件请求与缓存控制</b><br>
+ * 1. If-None-Match优先：与ETag按弱比较匹配(忽略W/前缀)，"*"匹配任意资源；<br>
+ * 2. 未携带If-None-Match时比较If-Modified-Since，资源修改时间(秒)不晚于该时间即未修改；<br>
+ * 3. Cache-Control的max-age按扩展名取{@link HttpServerConf#getStaticMaxAges()}，未配置的扩展名取默认值，小于0时不设置。
+ */
+public final class ConditionalRequests
+{
+
+    private ConditionalRequests()
+    {
+    }
+
+    /**
+     * 请求的校验条件与资源一致时返回true，应响应304
+     *
+     * @param requestHeaders 请求头
+     * @param etag 资源的ETag，为空时只比较修改时间
+     * @param lastModified 资源最后修改时间(毫秒)，小于等于0表示未知
+     */
+    public static boolean isNotModified(HttpHeaders requestHeaders, String etag, long lastModified)
+    {
+        String ifNoneMatch = requestHeaders.get(HttpHeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch != null)
+        {
+            return etag != null && matches(ifNoneMatch, etag);
+        }
+
+        if (lastModified > 0)
+        {
+            // 日期格式错误时忽略该条件
+            String ifModifiedSince = requestHeaders.get(HttpHeaderNames.IF_MODIFIED_SINCE);
+            Date date = ifModifiedSince == null ? null : DateFormatter.parseHttpDate(ifModifiedSince);
+            return date != null && lastModified / 1000 <= date.getTime() / 1000;
+        }
+        return false;
+    }
+
+    /**
+     * 设置ETag与Last-Modified响应头
+     */
+    public static void setValidators(HttpHeaders headers, String etag, long lastModified)
+    {
+        if (etag != null)
+        {
+            headers.set(HttpHeaderNames.ETAG, etag);
+        }
+        if (lastModified > 0)
+        {
+            headers.set(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(lastModified)));
+        }
+    }
+
+    /**
+     * 按文件扩展名设置Cache-Control响应头
+     */
+    public static void setCacheControl(HttpHeaders headers, HttpServerConf conf, String filename)
+    {
+        int maxAge = conf.getStaticMaxAge();
+        Map<String, Integer> maxAges = conf.getStaticMaxAges();
+        int dotIdx = filename.lastIndexOf('.');
+        if (dotIdx >= 0 && !maxAges.isEmpty())
+        {
+            Integer value = maxAges.get(filename.substring(dotIdx + 1).toLowerCase());
+            if (value != null)
+            {
+                maxAge = value;
+            }
+        }
+
+        if (maxAge == 0)
+        {
+            headers.set(HttpHeaderNames.CACHE_CONTROL, HttpHeaderValues.NO_CACHE);
+        }
+        else if (maxAge > 0)
+        {
+            headers.set(HttpHeaderNames.CACHE_CONTROL, "max-age=" + maxAge);
+        }
+    }
+
+    /**
+     * If-None-Match为逗号分隔的ETag列表
+     */
+    private static boolean matches(String ifNoneMatch, String etag)
+    {
+        String target = stripWeak(etag);
+        int from = 0;
+        int length = ifNoneMatch.length();
+        while (from < length)
+        {
+            int to = ifNoneMatch.indexOf(',', from);
+            if (to < 0)
+            {
+                to = length;
+            }
+            String candidate = ifNoneMatch.substring(from, to).trim();
+            if ("*".equals(candidate) || stripWeak(candidate).equals(target))
+            {
+                return true;
+            }
+            from = to + 1;
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag)
+    {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+}
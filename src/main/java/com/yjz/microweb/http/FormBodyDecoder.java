@@ -0,0 +1,102 @@
+package com.yjz.microweb.http;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * <b>表单请求体解析</b><br>
+ * 1. 直接在请求ByteBuf上按字节扫描application/x-www-form-urlencoded内容，不复制整个请求体、不生成整体字符串；<br>
+ * 2. 按'&'、'='、','切分后再逐段做百分号解码，编码后的分隔符不会被误切；<br>
+ * 3. 与原有规则一致：没有值的参数忽略，多个值以','分隔。
+ */
+final class FormBodyDecoder
+{
+
+    private FormBodyDecoder()
+    {
+    }
+
+    static Map<String, String[]> decode(ByteBuf content, Charset charset)
+    {
+        Map<String, String[]> map = new HashMap<String, String[]>();
+
+        int end = content.writerIndex();
+        byte[] scratch = new byte[64];
+        int pos = content.readerIndex();
+        while (pos < end)
+        {
+            int pairEnd = indexOf(content, pos, end, '&');
+            int eq = indexOf(content, pos, pairEnd, '=');
+            if (eq > pos && eq + 1 < pairEnd)
+            {
+                if (scratch.length < pairEnd - pos)
+                {
+                    scratch = new byte[pairEnd - pos];
+                }
+                String key = decodeComponent(content, pos, eq, charset, scratch);
+
+                List<String> values = new ArrayList<String>(1);
+                int valueStart = eq + 1;
+                while (valueStart < pairEnd)
+                {
+                    int valueEnd = indexOf(content, valueStart, pairEnd, ',');
+                    if (valueEnd > valueStart)
+                    {
+                        values.add(decodeComponent(content, valueStart, valueEnd, charset, scratch));
+                    }
+                    valueStart = valueEnd + 1;
+                }
+                map.put(key, values.toArray(new String[values.size()]));
+            }
+            pos = pairEnd + 1;
+        }
+
+        return map;
+    }
+
+    private static int indexOf(ByteBuf content, int from, int to, char c)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (content.getByte(i) == c)
+            {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * 解码[from, to)区间，scratch长度不小于区间长度
+     */
+    private static String decodeComponent(ByteBuf content, int from, int to, Charset charset, byte[] scratch)
+    {
+        int n = 0;
+        for (int i = from; i < to; i++)
+        {
+            byte b = content.getByte(i);
+            if (b == '+')
+            {
+                b = ' ';
+            }
+            else if (b == '%' && i + 2 < to)
+            {
+                int hi = Character.digit(content.getByte(i + 1), 16);
+                int lo = Character.digit(content.getByte(i + 2), 16);
+                if (hi >= 0 && lo >= 0)
+                {
+                    b = (byte)((hi << 4) + lo);
+                    i += 2;
+                }
+            }
+            scratch[n++] = b;
+        }
+        return new String(scratch, 0, n, charset);
+    }
+
+}
@@ -45,15 +45,17 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
 
 import com.yjz.microweb.session.HttpSessionImpl;
-import com.yjz.microweb.session.LocalSessionManager;
 import com.yjz.microweb.session.SessionManager;
 import com.yjz.microweb.util.Globals;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.DecoderResult;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 
@@ -66,7 +68,9 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 	
 	private boolean active = true;
 	private final Map<String, Object> attributes = new LinkedHashMap<String, Object>();
-	private final SessionManager sessionManager = LocalSessionManager.INSTANCE;
+	private final SessionManager sessionManager = HttpCoreServer.instance().SESSION_MANAGER;
+	/** 本次请求新建了Session，需要通过Cookie返回id */
+	private boolean sessionCookiePending = false;
 	
 	public FullHttpRequestWrapper(ServletContext servletContext, FullHttpRequest request, String requestURI, Map<String, String[]> parameters) {
 		this.servletContext = servletContext;
@@ -78,45 +82,53 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 		this.setAttribute(
             Globals.DISPATCHER_REQUEST_PATH_ATTR, requestURI);
 		
-		String header = request.headers().get("Cookie");
-		ServerCookieDecoder decoder = ServerCookieDecoder.LAX;
-		if(!StringUtils.isEmpty(header)){
-			Set<io.netty.handler.codec.http.cookie.Cookie> set = decoder.decode(header);
-			for(io.netty.handler.codec.http.cookie.Cookie cookie : set){
-				if(cookie.name().equalsIgnoreCase("JSESSIONID")){
-					this.session = sessionManager.get(cookie.value());
-					if(this.session == null){
-						this.session = sessionManager.build(true);
-					}else{
-						this.requestedSessionIdFromCookie = true;
-					}
+		this.setContentType(request.headers().get("Content-Type"));
+		this.servletPath = requestURI;
+		// Cookie与Session在首次使用时才解析与查找，不使用Session的请求没有额外开销
+	}
+	
+	/**
+	 * 解析Cookie头，只执行一次，同时取得请求的Session id
+	 */
+	private void decodeCookies() {
+		if (this.cookiesDecoded) {
+			return;
+		}
+		this.cookiesDecoded = true;
+		String header = request.headers().get(HttpHeaderNames.COOKIE);
+		if (StringUtils.isEmpty(header)) {
+			return;
+		}
+		this.decodedCookies = ServerCookieDecoder.LAX.decode(header);
+		if (this.requestedSessionId == null) {
+			for (io.netty.handler.codec.http.cookie.Cookie cookie : this.decodedCookies) {
+				if (cookie.name().equalsIgnoreCase(Globals.SESSION_COOKIE_NAME)) {
+					this.requestedSessionId = cookie.value();
+					this.requestedSessionIdFromCookie = true;
 					break;
 				}
 			}
 		}
-		
-		this.setContentType(request.headers().get("Content-Type"));
-		this.servletPath = requestURI;
-		
-		String cookieStr = request.headers().get("Cookie");
-		if(cookieStr != null)
-		{
-		    String[] cookies = cookieStr.split(";");
-		    if(cookies.length > 0)
-		    {
-		        List<Cookie> cookieList = new ArrayList<>();
-		        for(String cookie : cookies)
-		        {
-		            String[] nameValue = cookie.split("=");
-		            if(nameValue.length > 1)
-		            {
-		                cookieList.add(new Cookie(nameValue[0].trim(), nameValue[1].trim()));
-		            }
-		        }
-		        
-		        this.setCookies(cookieList.toArray(new Cookie[0]));
-		    }
+	}
+	
+	/**
+	 * 按请求的Session id查找Session，只执行一次；不存在或已超时时不新建，由getSession(true)新建
+	 */
+	private void resolveSession() {
+		if (this.sessionResolved) {
+			return;
+		}
+		this.sessionResolved = true;
+		String sid = getRequestedSessionId();
+		if (sid == null || this.session != null) {
+			return;
+		}
+		HttpSession requested = sessionManager.get(sid);
+		if (requested instanceof HttpSessionImpl) {
+			// 更新最后访问时间，已超时的Session被标记为失效
+			((HttpSessionImpl) requested).update();
 		}
+		this.session = requested;
 	}
 	
 	public FullHttpRequest getHttpRequest(){
@@ -259,6 +271,9 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 
 	@Override
 	public int getContentLength() {
+		if (request instanceof StreamingFullHttpRequest) {
+			return (int) HttpUtil.getContentLength(request, -1L);
+		}
 		return (request.content() != null ? request.content().readableBytes() : -1);
 	}
 	
@@ -306,19 +321,19 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 	private static final ServletInputStream EMPTY_SERVLET_INPUT_STREAM = new MicrowebServletInputStream(new ByteArrayInputStream(new byte[0]));
 	private static final String CONTENT_TYPE_HEADER = "Content-Type";
 	
+	private ServletInputStream streamingInputStream;
+	
 	@Override
 	public ServletInputStream getInputStream() throws IOException {
+		if (request instanceof StreamingFullHttpRequest) {
+			if (streamingInputStream == null) {
+				streamingInputStream = new MicrowebServletInputStream(((StreamingFullHttpRequest) request).bodyStream());
+			}
+			return streamingInputStream;
+		}
 		if (request.content() != null) {
-		    if(request.content().isDirect())
-		    {
-		        byte[] dst = new byte[request.content().capacity()];
-	            request.content().getBytes(0, dst);
-	            return new MicrowebServletInputStream(new ByteArrayInputStream(dst));
-		    }
-		    else 
-		    {
-		        return new MicrowebServletInputStream(new ByteArrayInputStream(request.content().array()));
-		    }
+			// 在duplicate上读取，不复制请求体，也不移动原buffer的读指针
+			return new MicrowebServletInputStream(new ByteBufInputStream(request.content().duplicate()));
 		}
 		else {
 			return EMPTY_SERVLET_INPUT_STREAM;
@@ -417,8 +432,8 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 
 	@Override
 	public BufferedReader getReader() throws IOException {
-		if (request.content() != null) {
-			InputStream sourceStream = new ByteArrayInputStream(request.content().array());
+		if (request instanceof StreamingFullHttpRequest || request.content() != null) {
+			InputStream sourceStream = getInputStream();
 			Reader sourceReader = (this.characterEncoding != null) ?
 					new InputStreamReader(sourceStream, this.characterEncoding) : new InputStreamReader(sourceStream);
 			return new BufferedReader(sourceReader);
@@ -616,6 +631,14 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 
 	private Cookie[] cookies;
 
+	/** cookies已由Cookie头生成或被显式设置 */
+	private boolean cookiesMaterialized = false;
+
+	/** Cookie头已解析，decodedCookies为null表示请求没有Cookie */
+	private boolean cookiesDecoded = false;
+
+	private Set<io.netty.handler.codec.http.cookie.Cookie> decodedCookies;
+
 	public void setAuthType(String authType) {
 		this.authType = authType;
 	}
@@ -627,10 +650,26 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 
 	public void setCookies(Cookie... cookies) {
 		this.cookies = cookies;
+		this.cookiesMaterialized = true;
 	}
 
 	@Override
 	public Cookie[] getCookies() {
+		if (!this.cookiesMaterialized) {
+			this.cookiesMaterialized = true;
+			decodeCookies();
+			if (this.decodedCookies != null) {
+				List<Cookie> cookieList = new ArrayList<Cookie>(this.decodedCookies.size());
+				for (io.netty.handler.codec.http.cookie.Cookie cookie : this.decodedCookies) {
+					try {
+						cookieList.add(new Cookie(cookie.name(), cookie.value()));
+					} catch (IllegalArgumentException e) {
+						// 名称不符合Servlet规范的Cookie忽略
+					}
+				}
+				this.cookies = cookieList.toArray(new Cookie[cookieList.size()]);
+			}
+		}
 		return this.cookies;
 	}
 	
@@ -787,6 +826,7 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 
 	@Override
 	public String getRequestedSessionId() {
+		decodeCookies();
 		return this.requestedSessionId;
 	}
 
@@ -803,9 +843,10 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 
 	private HttpSession session;
 
-	private boolean requestedSessionIdValid = true;
+	/** 已按请求的Session id查找过Session */
+	private boolean sessionResolved = false;
 
-	private boolean requestedSessionIdFromCookie = true;
+	private boolean requestedSessionIdFromCookie = false;
 
 	private boolean requestedSessionIdFromURL = false;
 
@@ -846,6 +887,7 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 
 	public void setSession(HttpSession session) {
 		this.session = session;
+		this.sessionResolved = true;
 		if (session instanceof HttpSessionImpl) {
 			((HttpSessionImpl) session).access();
 		}
@@ -854,6 +896,7 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 	@Override
 	public HttpSession getSession(boolean create) {
 		checkActive();
+		resolveSession();
 		// Reset session if invalidated.
 		if (this.session instanceof HttpSessionImpl && !((HttpSessionImpl) this.session).isValid()) {
 			sessionManager.remove(session.getId());
@@ -862,6 +905,8 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 		// Create new session if necessary.
 		if (this.session == null && create) {
 			this.session = sessionManager.build(create);
+			this.sessionCookiePending = true;
+			addSessionCookie();
 		}
 		//this.session = sessionManager.build(create);
 		return this.session;
@@ -876,17 +921,22 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 	 * it always returns the current session id.
 	 */
 	public String changeSessionId() {
+		resolveSession();
 		Assert.isTrue(this.session != null, "The request does not have a session");
 		return this.session.getId();
 	}
 
 	@Override
 	public boolean isRequestedSessionIdValid() {
-		return this.requestedSessionIdValid;
+		resolveSession();
+		String sid = getRequestedSessionId();
+		return sid != null && this.session != null && sid.equals(this.session.getId())
+				&& !(this.session instanceof HttpSessionImpl && !((HttpSessionImpl) this.session).isValid());
 	}
 
 	@Override
 	public boolean isRequestedSessionIdFromCookie() {
+		decodeCookies();
 		return this.requestedSessionIdFromCookie;
 	}
 
@@ -978,6 +1028,29 @@ public class FullHttpRequestWrapper implements HttpServletRequest {
 
 	public void setResponse(FullHttpResponseWrapper responseWrapper) {
 		this.response = responseWrapper;
+		addSessionCookie();
+	}
+	
+	/**
+	 * 新建的Session通过Cookie返回id
+	 */
+	private void addSessionCookie() {
+		if (!sessionCookiePending || this.session == null || this.response == null || this.response.isCommitted()) {
+			return;
+		}
+		Cookie cookie = new Cookie(Globals.SESSION_COOKIE_NAME, this.session.getId());
+		cookie.setPath(StringUtils.hasText(getContextPath()) ? getContextPath() : "/");
+		this.response.addCookie(cookie);
+		this.sessionCookiePending = false;
+	}
+	
+	/**
+	 * 请求结束时由SessionManager保存Session的修改
+	 */
+	public void commitSession() {
+		if (this.session != null) {
+			sessionManager.commit(this.session);
+		}
 	}
 
 }
@@ -1,6 +1,5 @@
 package com.yjz.microweb.http;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -26,13 +25,21 @@ import org.springframework.util.Assert;
 import org.springframework.web.util.WebUtils;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
 
 public class FullHttpResponseWrapper implements HttpServletResponse {
 	
@@ -40,21 +47,69 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 	
 	private final ChannelHandlerContext ctx;
 	
+	/** 是否允许流式响应 */
+	private final boolean streaming;
+	
+	/** 流式响应已写出的响应头，未开始流式写出时为null */
+	private HttpResponse head;
+	
 	public FullHttpResponseWrapper(ChannelHandlerContext ctx, FullHttpResponse response) {
+		this(ctx, response, false);
+	}
+	
+	public FullHttpResponseWrapper(ChannelHandlerContext ctx, FullHttpResponse response, boolean streaming) {
 		this.response = response;
 		this.ctx = ctx;
+		this.streaming = streaming;
+		this.content = new ByteBufServletOutputStream(ctx != null ? ctx.alloc() : null);
+		this.outputStream = new ResponseServletOutputStream(this.content);
+	}
+	
+	/**
+	 * 释放尚未写出的响应内容，用于处理失败的异常路径
+	 */
+	public void releaseContent() {
+		content.release();
 	}
 
-	public FullHttpResponse getResponse() {
+	/**
+	 * 返回待写出的完整响应；若已开始流式写出，则写出剩余内容和结束分片，并返回已写出的响应头
+	 */
+	public HttpResponse getResponse() {
+		if (head != null) {
+			try {
+				writeChunk();
+			} catch (IOException e) {
+				// 连接已断开，剩余内容直接丢弃
+				content.release();
+			}
+			ctx.channel().writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+			return head;
+		}
+		
+		// 直接交出池化缓冲区，无需复制
 		ByteBuf buf = response.content();
-		response = (DefaultFullHttpResponse) response.replace(buf.writeBytes(content.toByteArray()));
+		response = (DefaultFullHttpResponse) response.replace(content.detach());
+		buf.release();
 		this.contentLength = response.content().readableBytes();
-		String con = new String(content.toByteArray());
 		HttpHeaders headers = response.headers();
 		for(String hname : getHeaderNames())
 		{
 		    headers.add(hname, getHeaderValue(hname));
 		}
+		addCookieHeaders(headers);
+
+		return response;
+	}
+	
+	/**
+	 * 是否已开始流式写出
+	 */
+	public boolean isStreamed() {
+		return head != null;
+	}
+	
+	private void addCookieHeaders(HttpHeaders headers) {
 		for(Cookie cookie : getCookies())
 		{
 		    StringBuilder sb = new StringBuilder();
@@ -97,8 +152,41 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 
 		    headers.add("Set-Cookie", sb.substring(0, sb.length() - 1));
 		}
-
-		return response;
+	}
+	
+	/**
+	 * 提交流式响应：写出响应头，未显式设置Content-Length时采用chunked传输
+	 */
+	private void commitStreaming() {
+		if (head != null) {
+			return;
+		}
+		HttpHeaders headers = response.headers();
+		addCookieHeaders(headers);
+		if (!headers.contains(HttpHeaderNames.CONTENT_LENGTH)) {
+			HttpUtil.setTransferEncodingChunked(response, true);
+		}
+		head = new DefaultHttpResponse(response.protocolVersion(), response.status(), headers);
+		ctx.channel().write(head);
+	}
+	
+	/**
+	 * 将缓冲区内容作为一个分片写出；出站缓冲区不可写时等待该分片写出，以免渲染速度超过网络速度时占满内存
+	 */
+	private void writeChunk() throws IOException {
+		if (content.size() == 0) {
+			ctx.channel().flush();
+			return;
+		}
+		Channel channel = ctx.channel();
+		if (!channel.isActive()) {
+			content.release();
+			throw new IOException("Connection closed while streaming response");
+		}
+		ChannelFuture future = channel.writeAndFlush(new DefaultHttpContent(content.detach()));
+		if (!channel.isWritable() && !ctx.executor().inEventLoop()) {
+			future.awaitUninterruptibly();
+		}
 	}
 
     public HttpHeaders trailingHeaders() {
@@ -216,9 +304,9 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 
 	private boolean charset = false;
 
-	private final ByteArrayOutputStream content = new ByteArrayOutputStream(1024);
+	private final ByteBufServletOutputStream content;
 
-	private final ServletOutputStream outputStream = new ResponseServletOutputStream(this.content);
+	private final ServletOutputStream outputStream;
 
 	private PrintWriter writer;
 
@@ -326,8 +414,6 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 			throw new IllegalStateException("Writer access not allowed");
 		}
 		if (this.writer == null) {
-			byte[] bytes = response.content().array();
-			this.content.write(bytes, 0, bytes.length);
 			Writer targetWriter = (this.characterEncoding != null ?
 					new OutputStreamWriter(this.content, this.characterEncoding) : new OutputStreamWriter(this.content));
 			this.writer = new ResponsePrintWriter(targetWriter);
@@ -336,14 +422,18 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 	}
 
 	public byte[] getContentAsByteArray() {
-		flushBuffer();
-		return response.content().array();
+		setCommitted(true);
+		return ByteBufUtil.getBytes(bodyContent());
 	}
 
 	public String getContentAsString() throws UnsupportedEncodingException {
-		flushBuffer();
+		setCommitted(true);
 		return (this.characterEncoding != null ? 
-				response.content().toString(Charset.forName(this.characterEncoding)) : response.content().toString());
+				bodyContent().toString(Charset.forName(this.characterEncoding)) : bodyContent().toString(Charset.defaultCharset()));
+	}
+	
+	private ByteBuf bodyContent() {
+		return content.size() > 0 ? content.content() : response.content();
 	}
 
 	@Override
@@ -353,7 +443,7 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 	}
 
 	public int getContentLength() {
-		this.contentLength = response.content().readableBytes();
+		this.contentLength = response.content().readableBytes() + content.size();
 		return (int) this.contentLength;
 	}
 
@@ -363,7 +453,7 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 	}
 
 	public long getContentLengthLong() {
-		this.contentLength = response.content().readableBytes();
+		this.contentLength = response.content().readableBytes() + content.size();
 		return this.contentLength;
 	}
 
@@ -406,8 +496,12 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 	}
 
 	@Override
-	public void flushBuffer() {
+	public void flushBuffer() throws IOException {
 		setCommitted(true);
+		if (streaming) {
+			commitStreaming();
+			writeChunk();
+		}
 	}
 
 	@Override
@@ -415,13 +509,18 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 		if (isCommitted()) {
 			throw new IllegalStateException("Cannot reset buffer - response is already committed");
 		}
+		content.reset();
 		response.content().clear();
 	}
 
-	private void setCommittedIfBufferSizeExceeded() {
+	private void setCommittedIfBufferSizeExceeded() throws IOException {
 		int bufSize = getBufferSize();
-		if (bufSize > 0 && response.content().readableBytes() > bufSize) {
+		if (bufSize > 0 && content.size() > bufSize) {
 			setCommitted(true);
+			if (streaming) {
+				commitStreaming();
+				writeChunk();
+			}
 		}
 	}
 
@@ -778,10 +877,13 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 
 		@Override
 		public void write(int b) throws IOException {
-			/*ByteBuf buf = ctx.alloc().buffer(4);
-			ctx.channel().writeAndFlush(buf.writeByte(b));*/
 			super.write(b);
-			super.flush();
+			setCommittedIfBufferSizeExceeded();
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			super.write(b, off, len);
 			setCommittedIfBufferSizeExceeded();
 		}
 
@@ -808,7 +910,7 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 			//ctx.channel().writeAndFlush(Unpooled.copiedBuffer(buf, off, len, Charset.forName("utf-8")));
 			super.write(buf, off, len);
 			super.flush();
-			setCommittedIfBufferSizeExceeded();
+			checkBufferSize();
 		}
 
 		@Override
@@ -817,7 +919,7 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 			
 			super.write(s, off, len);
 			super.flush();
-			setCommittedIfBufferSizeExceeded();
+			checkBufferSize();
 		}
 
 		@Override
@@ -826,7 +928,7 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 			ctx.channel().writeAndFlush(buf.writeByte(c));*/
 			super.write(c);
 			super.flush();
-			setCommittedIfBufferSizeExceeded();
+			checkBufferSize();
 		}
 
 		@Override
@@ -835,6 +937,14 @@ public class FullHttpResponseWrapper implements HttpServletResponse {
 			super.flush();
 			setCommitted(true);
 		}
+
+		private void checkBufferSize() {
+			try {
+				setCommittedIfBufferSizeExceeded();
+			} catch (IOException e) {
+				setError();
+			}
+		}
 	}
 
 }
@@ -1,7 +1,8 @@
 package com.yjz.microweb.http;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.Map;
 
 import javax.servlet.DispatcherType;
@@ -10,22 +11,32 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.web.multipart.commons.CommonsMultipartResolver;
 import org.springframework.web.servlet.DispatcherServlet;
 
+import com.yjz.microweb.cache.NegativeCache;
 import com.yjz.microweb.cache.ResourceCache;
+import com.yjz.microweb.cache.ResourceCacheStats;
+import com.yjz.microweb.cache.ResourceMeta;
+import com.yjz.microweb.cache.StaticResourceIndex;
 import com.yjz.microweb.context.MicrowebServletContext;
-import com.yjz.microweb.filter.FilterChainFactory;
 import com.yjz.microweb.filter.MicrowebFilterChain;
+import com.yjz.microweb.transport.HttpServerConf;
 import com.yjz.microweb.util.FileUtil;
 import com.yjz.microweb.util.MimeType;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -39,6 +50,8 @@ public class HttpActionAdapter4Spring implements HttpActionAdapter
     // private static final InterceptorHandler<FullHttpRequestWrapper, FullHttpResponseWrapper> interceptors = new
     // InterceptorHandler<>();
     
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    
     private static HttpActionAdapter4Spring httpActionAdaptor = new HttpActionAdapter4Spring();
     
     private boolean isStaticSupport;
@@ -49,6 +62,16 @@ public class HttpActionAdapter4Spring implements HttpActionAdapter
     
     private ResourceCache CACHE;
     
+    private NegativeCache NEGATIVE_CACHE;
+    
+    private StaticResourceIndex staticIndex;
+    
+    private ResourceCacheStats stats;
+    
+    private boolean isResponseStreaming;
+    
+    private HttpServerConf conf;
+    
     // FilterChain是非线程安全的，需为每个线程保存索引，因此采用ThreadLocal建立副本。这里采用Interceptor会更加适合。
     // private static final ThreadLocal<FilterChain<FullHttpRequestWrapper, FullHttpResponseWrapper>> chain = new
     // ThreadLocal<>();
@@ -59,6 +82,11 @@ public class HttpActionAdapter4Spring implements HttpActionAdapter
         this.servletContext = HttpCoreServer.instance().servletContext;
         this.dispatcherServlet = HttpCoreServer.instance().dispatcherServlet;
         this.CACHE = HttpCoreServer.instance().CACHE;
+        this.NEGATIVE_CACHE = HttpCoreServer.instance().NEGATIVE_CACHE;
+        this.staticIndex = HttpCoreServer.instance().staticIndex;
+        this.stats = CACHE.stats();
+        this.conf = HttpCoreServer.instance().conf;
+        this.isResponseStreaming = conf.isResponseStreaming();
     }
     
     public static HttpActionAdapter4Spring instance()
@@ -71,9 +99,10 @@ public class HttpActionAdapter4Spring implements HttpActionAdapter
     {
         FullHttpResponse resp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
 
-        HttpServletRequest requestWrapper = new FullHttpRequestWrapper(servletContext, request, requestURI, parameters);
-        FullHttpResponseWrapper responseWrapper = new FullHttpResponseWrapper(ctx, resp);   
-        ((FullHttpRequestWrapper) requestWrapper).setResponse(responseWrapper);
+        FullHttpRequestWrapper fullRequestWrapper = new FullHttpRequestWrapper(servletContext, request, requestURI, parameters);
+        HttpServletRequest requestWrapper = fullRequestWrapper;
+        FullHttpResponseWrapper responseWrapper = new FullHttpResponseWrapper(ctx, resp, isResponseStreaming);
+        fullRequestWrapper.setResponse(responseWrapper);
         
         if(request.headers() != null)
         {
@@ -88,7 +117,7 @@ public class HttpActionAdapter4Spring implements HttpActionAdapter
         
         try
         {
-            MicrowebFilterChain filterChain = new FilterChainFactory(servletContext).createFilterChain(requestWrapper,
+            MicrowebFilterChain filterChain = servletContext.getFilterChainFactory().createFilterChain(requestWrapper,
                 dispatcherServlet,  DispatcherType.REQUEST);
             
             if (filterChain != null)
@@ -104,6 +133,15 @@ public class HttpActionAdapter4Spring implements HttpActionAdapter
         {
             logger.error(e.getMessage(), e);
         }
+        catch (RuntimeException e)
+        {
+            responseWrapper.releaseContent();
+            throw e;
+        }
+        finally
+        {
+            fullRequestWrapper.commitSession();
+        }
     
         return responseWrapper.getResponse();
     }
@@ -123,6 +161,18 @@ public class HttpActionAdapter4Spring implements HttpActionAdapter
     public HttpResponse doGet(ChannelHandlerContext ctx, FullHttpRequest request, String requestURI,
         Map<String, String[]> parameters)
     {
+        if (stats != null && requestURI.equals(conf.getCacheStatsUri()))
+        {
+            return getCacheStats();
+        }
+        if (isStaticSupport && isStaticRequest(requestURI))
+        {
+            HttpResponse resp = getStaticResource(request, requestURI);
+            if (resp != null)
+            {
+                return resp;
+            }
+        }
         return doService(ctx, request, requestURI, parameters);
     }
     
@@ -211,50 +261,355 @@ public class HttpActionAdapter4Spring implements HttpActionAdapter
     /**
      * <b>返回静态资源</b></br>
      * </br>
-     * 待修改：新建http协议管理类，根据http协议完善请求和响应</br>
+     * 从classpath的/views/public下读取资源并缓存，ETag与修改时间在放入缓存时计算，条件请求校验通过时直接返回304</br>
+     * 携带Range时从缓存的缓冲区切片返回206，多个区间以multipart/byteranges返回</br>
+     * 资源不存在时返回null，由Spring继续处理</br>
      * 
-     * @param resp
+     * @param request
      * @param requestURI
-     * @param parameters
      * @return
      */
-    private HttpResponse getStaticResource(FullHttpRequest request, FullHttpResponse resp, String requestURI,
-        Map<String, String[]> parameters)
+    private HttpResponse getStaticResource(FullHttpRequest request, String requestURI)
     {
-        HttpHeaders headers = resp.headers();
+        String location = null;
         if (null == requestURI || requestURI.isEmpty() || "/".equals(requestURI))
         {
             requestURI = "/index.html";
-            headers.add(HttpHeaderNames.CONTENT_LOCATION, request.headers().get("Host") + "/index.html");
+            location = request.headers().get("Host") + "/index.html";
         }
         
-        byte[] bytes = CACHE.getCache(requestURI);
-        if (null == bytes)
+        // 堆外缓存返回只读视图，直接作为响应体写出，不复制
+        ByteBuf content = loadResource(requestURI, requestURI);
+        if (content == null)
         {
-            InputStream is = this.getClass().getResourceAsStream("/views/public" + requestURI);
-            bytes = FileUtil.inputStreamToBytes(is);
-            CACHE.putCache(requestURI, bytes);
+            return null;
         }
         
-        if (bytes != null && bytes.length > 0)
+        // 文本类资源优先返回预压缩版本，带Content-Encoding的响应不会被HttpContentCompressor再次压缩
+        String cacheKey = requestURI;
+        String encoding = null;
+        String contentType = MimeType.getByFilename(requestURI);
+        boolean compressible = PrecompressedResources.isCompressible(contentType);
+        if (compressible)
         {
-            resp = resp.replace(Unpooled.wrappedBuffer(bytes));
-            
-            // 需要根据实际的文件类型设置参数
-            headers.add(HttpHeaderNames.CONTENT_TYPE, "text/html; charset=UTF-8");
-            headers.add(HttpHeaderNames.CONTENT_LENGTH, resp.content().readableBytes());
-            // headers.add(HttpHeaderNames.EXPIRES, "Thu, 01 Oct 2030 15:33:19 GMT");
-            // headers.add(HttpHeaderNames.LAST_MODIFIED, "Wed, 22 Jun 2017 06:40:43 GMT");
-            
-            resp = resp.replace(Unpooled.wrappedBuffer(bytes));
-            // headers.add(HttpHeaderNames.CONTENT_MD5, "dddddfsadfarewqerrew");
+            for (String accepted : PrecompressedResources.accepted(request.headers().get(HttpHeaderNames.ACCEPT_ENCODING)))
+            {
+                String variantKey = ResourceCache.variantKey(requestURI, accepted);
+                ByteBuf variant = loadVariant(variantKey, requestURI, accepted, content);
+                if (variant != null)
+                {
+                    content.release();
+                    content = variant;
+                    cacheKey = variantKey;
+                    encoding = accepted;
+                    break;
+                }
+            }
+        }
+        
+        ResourceMeta meta = CACHE.getMeta(cacheKey);
+        FullHttpResponse resp;
+        if (meta != null && ConditionalRequests.isNotModified(request.headers(), meta.getEtag(), meta.getLastModified()))
+        {
+            content.release();
+            resp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED);
+        }
+        else
+        {
+            resp = rangeResponse(request, meta, content, contentType);
+        }
+        
+        HttpHeaders headers = resp.headers();
+        if (location != null)
+        {
+            headers.set(HttpHeaderNames.CONTENT_LOCATION, location);
+        }
+        if (encoding != null)
+        {
+            headers.set(HttpHeaderNames.CONTENT_ENCODING, encoding);
+        }
+        if (compressible)
+        {
+            headers.set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+        }
+        if (meta != null)
+        {
+            ConditionalRequests.setValidators(headers, meta.getEtag(), meta.getLastModified());
+        }
+        ConditionalRequests.setCacheControl(headers, conf, requestURI);
+        return resp;
+    }
+    
+    /**
+     * 按Range请求切片缓存中的资源，切片与原缓冲区共享内存，不复制；未请求区间时返回完整资源
+     */
+    private FullHttpResponse rangeResponse(FullHttpRequest request, ResourceMeta meta, ByteBuf content,
+        String contentType)
+    {
+        int length = content.readableBytes();
+        long[][] ranges = meta == null ? null
+            : ByteRanges.select(request.headers(), meta.getEtag(), meta.getLastModified(), length);
+        FullHttpResponse resp;
+        if (ranges == null)
+        {
+            resp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
+            resp.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        }
+        else if (ranges == ByteRanges.UNSATISFIABLE)
+        {
+            content.release();
+            resp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            resp.headers().set(HttpHeaderNames.CONTENT_RANGE, ByteRanges.unsatisfiedRange(length));
+        }
+        else if (ranges.length == 1)
+        {
+            // slice与content共用引用计数，随响应释放
+            ByteBuf part = content.slice(content.readerIndex() + (int)ranges[0][0], (int)ByteRanges.length(ranges[0]));
+            resp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.PARTIAL_CONTENT, part);
+            resp.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+            resp.headers().set(HttpHeaderNames.CONTENT_RANGE, ByteRanges.contentRange(ranges[0], length));
         }
         else
         {
-            resp.setStatus(HttpResponseStatus.NOT_FOUND);
-            headers.add("Content-Length", 0);
+            String boundary = ByteRanges.boundary();
+            byte[][] partHeaders = ByteRanges.partHeaders(boundary, contentType, ranges, length);
+            // 组件数足够时CompositeByteBuf不会合并组件
+            CompositeByteBuf body = Unpooled.compositeBuffer(partHeaders.length + ranges.length);
+            for (int i = 0; i < ranges.length; i++)
+            {
+                body.addComponent(true, Unpooled.wrappedBuffer(partHeaders[i]));
+                body.addComponent(true,
+                    content.retainedSlice(content.readerIndex() + (int)ranges[i][0], (int)ByteRanges.length(ranges[i])));
+            }
+            body.addComponent(true, Unpooled.wrappedBuffer(partHeaders[ranges.length]));
+            content.release();
+            resp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.PARTIAL_CONTENT, body);
+            resp.headers().set(HttpHeaderNames.CONTENT_TYPE, ByteRanges.multipartType(boundary));
+        }
+        resp.headers().set(HttpHeaderNames.CONTENT_LENGTH, resp.content().readableBytes());
+        resp.headers().set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+        return resp;
+    }
+    
+    /**
+     * 从缓存或classpath的/views/public下读取资源，存在的资源放入缓存，不存在的不占用缓存<br>
+     * 资源不存在或为空时返回null
+     */
+    private ByteBuf loadResource(String cacheKey, String path)
+    {
+        ByteBuf content = CACHE.getCacheBuffer(cacheKey);
+        if (null == content)
+        {
+            if (!exists(path))
+            {
+                if (stats != null)
+                {
+                    stats.recordNegativeHit();
+                }
+                return null;
+            }
+            content = readResource(cacheKey, path, true);
+            if (content == null)
+            {
+                return null;
+            }
+        }
+        
+        if (!content.isReadable())
+        {
+            content.release();
+            return null;
+        }
+        return content;
+    }
+    
+    /**
+     * 从classpath读取资源并放入缓存，不存在或为空时返回null
+     *
+     * @param recordLoad 是否计入缓存统计的加载次数与耗时
+     */
+    private ByteBuf readResource(String cacheKey, String path, boolean recordLoad)
+    {
+        long start = System.nanoTime();
+        byte[] bytes = null;
+        StaticResourceIndex.Resource indexed = staticIndex.get(path);
+        long lastModified = indexed != null && indexed.getLastModified() > 0 ? indexed.getLastModified()
+            : System.currentTimeMillis();
+        URL url = this.getClass().getResource(HttpCoreServer.STATIC_ROOT + path);
+        if (url != null)
+        {
+            try
+            {
+                URLConnection conn = url.openConnection();
+                if (indexed == null && conn.getLastModified() > 0)
+                {
+                    lastModified = conn.getLastModified();
+                }
+                bytes = FileUtil.inputStreamToBytes(conn.getInputStream());
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to load static resource " + url, e);
+            }
+        }
+        if (recordLoad && stats != null)
+        {
+            stats.recordLoad(System.nanoTime() - start);
+        }
+        if (bytes == null || bytes.length == 0)
+        {
+            return null;
+        }
+        CACHE.putCache(cacheKey, bytes, lastModified);
+        return Unpooled.wrappedBuffer(bytes);
+    }
+    
+    /**
+     * 资源可能存在时返回true：索引完整时以索引为准，不访问classpath；
+     * 索引不完整时由classpath查找确认，NegativeCache可能误判，不能据此隐藏已有资源
+     */
+    private boolean exists(String path)
+    {
+        return !staticIndex.isComplete() || staticIndex.contains(path);
+    }
+    
+    /**
+     * 返回资源的压缩版本：优先使用构建时生成的同名.gz/.br/.zst文件；没有gzip文件时由原数据压缩一次后缓存<br>
+     * 1. 先以containsKey探测缓存，只读取已缓存的版本，不存在的版本不计入缓存统计，也不进入缓存的访问频率；<br>
+     * 2. 确认不存在的版本(以及压缩后不比原数据小的gzip)记入NEGATIVE_CACHE，之后不再查找；
+     * NEGATIVE_CACHE误判只会使该请求返回原数据，不影响正确性。
+     */
+    private ByteBuf loadVariant(String variantKey, String requestURI, String encoding, ByteBuf identity)
+    {
+        if (CACHE.containsKey(variantKey))
+        {
+            ByteBuf cached = CACHE.getCacheBuffer(variantKey);
+            if (cached != null)
+            {
+                if (cached.isReadable())
+                {
+                    return cached;
+                }
+                cached.release();
+                return null;
+            }
+        }
+        if (NEGATIVE_CACHE.mightContain(variantKey))
+        {
+            return null;
+        }
+        
+        String path = requestURI + PrecompressedResources.extension(encoding);
+        ByteBuf precompressed = exists(path) ? readResource(variantKey, path, false) : null;
+        if (precompressed != null)
+        {
+            if (precompressed.isReadable())
+            {
+                return precompressed;
+            }
+            precompressed.release();
+        }
+        if (!"gzip".equals(encoding) || !CACHE.containsKey(requestURI))
+        {
+            // 原数据未能缓存(过大)时不在每次请求中重复压缩
+            NEGATIVE_CACHE.put(variantKey);
+            return null;
+        }
+        
+        byte[] bytes = ByteBufUtil.getBytes(identity);
+        byte[] gzipped = PrecompressedResources.gzip(bytes);
+        if (gzipped.length >= bytes.length)
+        {
+            NEGATIVE_CACHE.put(variantKey);
+            return null;
         }
+        ResourceMeta meta = CACHE.getMeta(requestURI);
+        CACHE.putCache(variantKey, gzipped, meta != null ? meta.getLastModified() : System.currentTimeMillis());
+        return Unpooled.wrappedBuffer(gzipped);
+    }
+    
+    /**
+     * 按配置的模式把classpath静态资源(及其压缩版本)预先放入缓存，总量不超过staticPreloadBudget<br>
+     * 在HttpCoreServer初始化完成后、开始接受请求前调用，使部署后的首批请求与稳定状态一致
+     */
+    public void preloadStaticResources()
+    {
+        long budget = conf.getStaticPreloadBudget();
+        if (!isStaticSupport || budget <= 0 || !staticIndex.isComplete())
+        {
+            return;
+        }
+        
+        long start = System.currentTimeMillis();
+        long used = 0;
+        int count = 0;
+        for (StaticResourceIndex.Resource resource : staticIndex.select(conf.getStaticPreloadPatterns()))
+        {
+            if (resource.getSize() < 0 || used + resource.getSize() > budget)
+            {
+                continue;
+            }
+            String path = resource.getPath();
+            ByteBuf content = loadResource(path, path);
+            if (content == null)
+            {
+                continue;
+            }
+            used += content.readableBytes();
+            count++;
+            
+            if (PrecompressedResources.isCompressible(MimeType.getByFilename(path)))
+            {
+                for (String encoding : PrecompressedResources.encodings())
+                {
+                    ByteBuf variant = loadVariant(ResourceCache.variantKey(path, encoding), path, encoding, content);
+                    if (variant != null)
+                    {
+                        used += variant.readableBytes();
+                        variant.release();
+                    }
+                }
+            }
+            content.release();
+        }
+        logger.info("Preloaded " + count + " static resources (" + used + " bytes) in "
+            + (System.currentTimeMillis() - start) + "ms.");
+    }
+    
+    /**
+     * 管理接口：以JSON返回缓存统计
+     */
+    private HttpResponse getCacheStats()
+    {
+        byte[] json;
+        try
+        {
+            json = OBJECT_MAPPER.writeValueAsBytes(stats.snapshot());
+        }
+        catch (JsonProcessingException e)
+        {
+            logger.error(e.getMessage(), e);
+            return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        }
+        FullHttpResponse resp =
+            new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(json));
+        resp.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=UTF-8");
+        resp.headers().set(HttpHeaderNames.CONTENT_LENGTH, json.length);
+        resp.headers().set(HttpHeaderNames.CACHE_CONTROL, HttpHeaderValues.NO_STORE);
         return resp;
     }
     
+    /**
+     * 根路径或扩展名为已知类型的请求才查找静态资源，避免为动态请求产生大量无效缓存
+     */
+    private boolean isStaticRequest(String requestURI)
+    {
+        if (null == requestURI || requestURI.isEmpty() || "/".equals(requestURI))
+        {
+            return true;
+        }
+        int dotIdx = requestURI.lastIndexOf('.');
+        return dotIdx > requestURI.lastIndexOf('/') && MimeType.contains(requestURI.substring(dotIdx + 1));
+    }
+    
 }
@@ -0,0 +1,230 @@
+package com.yjz.microweb.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+
+/**
+ * <b>流式请求体</b><br>
+ * 1. IO线程通过{@link #offer(ByteBuf)}投递请求体分片，业务线程通过read读取，请求体未接收完毕即可开始处理。<br>
+ * 2. 队列为有界队列：积压分片数达到上限时关闭channel的autoRead，消费到一半以下时恢复，IO线程永不阻塞。<br>
+ * 3. 关闭后投递的分片直接释放，未读取的分片在关闭时统一释放。
+ */
+public class HttpContentInputStream extends InputStream
+{
+
+    /** 请求体结束标记 */
+    private static final ByteBuf EOF = Unpooled.unreleasableBuffer(Unpooled.buffer(0));
+
+    /** 连接中断标记 */
+    private static final ByteBuf ABORT = Unpooled.unreleasableBuffer(Unpooled.buffer(0));
+
+    private final LinkedBlockingQueue<ByteBuf> queue = new LinkedBlockingQueue<>();
+
+    private final Channel channel;
+
+    private final int capacity;
+
+    private ByteBuf current;
+
+    private volatile boolean closed = false;
+
+    private final Object lock = new Object();
+
+    private boolean suspended = false;
+
+    private boolean eof = false;
+
+    public HttpContentInputStream(Channel channel, int capacity)
+    {
+        this.channel = channel;
+        this.capacity = capacity > 1 ? capacity : 2;
+    }
+
+    /**
+     * 投递请求体分片，由IO线程调用，获得buf的所有权
+     */
+    public void offer(ByteBuf buf)
+    {
+        if (closed || !buf.isReadable())
+        {
+            buf.release();
+            return;
+        }
+
+        queue.add(buf);
+        suspendIfFull();
+
+        // 投递与关闭并发时，由投递方负责释放
+        if (closed)
+        {
+            drain();
+        }
+    }
+
+    /**
+     * 请求体接收完毕
+     */
+    public void finish()
+    {
+        queue.add(EOF);
+    }
+
+    /**
+     * 连接中断，读取方将得到IOException
+     */
+    public void abort()
+    {
+        queue.add(ABORT);
+    }
+
+    @Override
+    public int read()
+        throws IOException
+    {
+        ByteBuf buf = next();
+        return buf == null ? -1 : buf.readByte() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+        throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        ByteBuf buf = next();
+        if (buf == null)
+        {
+            return -1;
+        }
+
+        int n = Math.min(len, buf.readableBytes());
+        buf.readBytes(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available()
+        throws IOException
+    {
+        return current != null ? current.readableBytes() : 0;
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        if (current != null)
+        {
+            current.release();
+            current = null;
+        }
+        drain();
+        resumeIfDrained();
+    }
+
+    /**
+     * 返回可读分片，阻塞直到有数据；请求体结束返回null
+     */
+    private ByteBuf next()
+        throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("Stream closed");
+        }
+        if (current != null && current.isReadable())
+        {
+            return current;
+        }
+        if (current != null)
+        {
+            current.release();
+            current = null;
+        }
+        if (eof)
+        {
+            return null;
+        }
+
+        ByteBuf buf;
+        try
+        {
+            buf = queue.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        resumeIfDrained();
+
+        if (buf == EOF)
+        {
+            eof = true;
+            return null;
+        }
+        if (buf == ABORT)
+        {
+            eof = true;
+            throw new IOException("Connection closed before the request body was fully received");
+        }
+
+        current = buf;
+        return current;
+    }
+
+    /**
+     * 挂起与恢复在同一把锁内判断队列长度，避免两个线程交错导致autoRead永久关闭
+     */
+    private void suspendIfFull()
+    {
+        synchronized (lock)
+        {
+            if (!suspended && queue.size() >= capacity)
+            {
+                suspended = true;
+                channel.config().setAutoRead(false);
+            }
+        }
+    }
+
+    private void resumeIfDrained()
+    {
+        synchronized (lock)
+        {
+            if (suspended && queue.size() <= capacity / 2)
+            {
+                suspended = false;
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    private void drain()
+    {
+        ByteBuf buf;
+        while ((buf = queue.poll()) != null)
+        {
+            if (buf != EOF && buf != ABORT)
+            {
+                buf.release();
+            }
+        }
+    }
+
+}
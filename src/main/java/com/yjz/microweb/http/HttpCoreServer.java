@@ -1,11 +1,15 @@
 package com.yjz.microweb.http;
 
+import java.io.File;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
-import java.net.URLDecoder;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.servlet.Filter;
 import javax.servlet.ServletException;
 
@@ -20,17 +24,31 @@ import com.yjz.microweb.annotation.FilterDef;
 import com.yjz.microweb.annotation.FilterInitParam;
 import com.yjz.microweb.annotation.FilterName;
 import com.yjz.microweb.annotation.FilterUrlPattern;
+import com.yjz.microweb.cache.NegativeCache;
 import com.yjz.microweb.cache.ResourceCache;
-import com.yjz.microweb.cache.ResourceCacheDefault;
+import com.yjz.microweb.cache.ResourceCacheOffHeap;
+import com.yjz.microweb.cache.ResourceCacheStats;
+import com.yjz.microweb.cache.ResourceCacheTinyLfu;
+import com.yjz.microweb.cache.StaticResourceIndex;
 import com.yjz.microweb.context.MicrowebServletContext;
 import com.yjz.microweb.filter.FilterMap;
 import com.yjz.microweb.filter.MicrowebFilterConfig;
 import com.yjz.microweb.servlet.MicrowebServletConfig;
+import com.yjz.microweb.session.DiskSessionManager;
+import com.yjz.microweb.session.LocalSessionManager;
+import com.yjz.microweb.session.LoopbackReplicationTransport;
+import com.yjz.microweb.session.OffHeapSessionManager;
+import com.yjz.microweb.session.ReplicatedSessionManager;
+import com.yjz.microweb.session.ReplicationTransport;
+import com.yjz.microweb.session.SessionManager;
+import com.yjz.microweb.transport.HttpServerConf;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.util.CharsetUtil;
 
 /**
  * HttpServlet核心服务器
@@ -47,16 +65,49 @@ public class HttpCoreServer
     
     private static HttpCoreServer httpCoreServer = new HttpCoreServer();
     
+    /** classpath中静态资源的根目录 */
+    static final String STATIC_ROOT = "/views/public";
+    
+    /** 缓存统计的JMX名称 */
+    private static final String CACHE_STATS_MBEAN = "com.yjz.microweb:type=ResourceCache";
+    
     protected XmlWebApplicationContext wac;
     
     protected DispatcherServlet dispatcherServlet;
     
     protected MicrowebServletContext servletContext;
     
-    protected ResourceCache CACHE = new ResourceCacheDefault();
+    protected ResourceCache CACHE = new ResourceCacheTinyLfu();
+    
+    /** 不存在的静态资源，不占用CACHE */
+    protected NegativeCache NEGATIVE_CACHE = new NegativeCache(100000, 60000);
+    
+    /** classpath静态资源索引，启动时扫描 */
+    protected StaticResourceIndex staticIndex = StaticResourceIndex.incomplete();
+    
+    /** Session存储，按配置在启动时选择 */
+    protected SessionManager SESSION_MANAGER = LocalSessionManager.INSTANCE;
     
     protected boolean isStaticSupport = true;
     
+    protected HttpServerConf conf = new HttpServerConf();
+    
+    /** 请求方法到HttpActionAdapter处理方法的分发表，未登记的方法交由doUnContainMethod处理 */
+    private static final Map<HttpMethod, MethodRoute> ROUTES = new HashMap<HttpMethod, MethodRoute>();
+    
+    static
+    {
+        ROUTES.put(HttpMethod.GET, HttpActionAdapter::doGet);
+        ROUTES.put(HttpMethod.POST, HttpActionAdapter::doPost);
+        ROUTES.put(HttpMethod.OPTIONS, HttpActionAdapter::doOptions);
+        ROUTES.put(HttpMethod.HEAD, HttpActionAdapter::doHead);
+        ROUTES.put(HttpMethod.PUT, HttpActionAdapter::doPut);
+        ROUTES.put(HttpMethod.PATCH, HttpActionAdapter::doPatch);
+        ROUTES.put(HttpMethod.DELETE, HttpActionAdapter::doDelete);
+        ROUTES.put(HttpMethod.TRACE, HttpActionAdapter::doTrace);
+        ROUTES.put(HttpMethod.CONNECT, HttpActionAdapter::doConnect);
+    }
+    
     private HttpCoreServer()
     {
         
@@ -69,6 +120,15 @@ public class HttpCoreServer
     
     public void init(String servletContextName)
     {
+        init(servletContextName, new HttpServerConf());
+    }
+    
+    public void init(String servletContextName, HttpServerConf conf)
+    {
+        this.conf = conf;
+        
+        initResourceCache();
+        
         initServletContext(servletContextName);
         
         initWebApplication();
@@ -77,6 +137,107 @@ public class HttpCoreServer
         
         initServlet();
         
+        initSessionManager();
+        
+        HttpActionAdapter4Spring.instance().preloadStaticResources();
+        
+    }
+    
+    private void initResourceCache()
+    {
+        String cacheType = conf.getCacheType();
+        if ("offheap".equalsIgnoreCase(cacheType))
+        {
+            this.CACHE = new ResourceCacheOffHeap(conf.getCacheCapacity());
+        }
+        else if ("mmap".equalsIgnoreCase(cacheType))
+        {
+            String cacheDir = conf.getCacheDir();
+            File dir = cacheDir != null ? new File(cacheDir)
+                : new File(System.getProperty("java.io.tmpdir"), "microweb-cache");
+            this.CACHE = new ResourceCacheOffHeap(conf.getCacheCapacity(), 64 * 1024 * 1024, dir);
+        }
+        else
+        {
+            this.CACHE = new ResourceCacheTinyLfu(conf.getCacheCapacity());
+        }
+        
+        this.NEGATIVE_CACHE = new NegativeCache(conf.getNegativeCacheCapacity(), conf.getNegativeCacheTtl());
+        this.staticIndex = StaticResourceIndex.scan(STATIC_ROOT);
+        
+        registerCacheStats(CACHE.stats());
+    }
+    
+    /**
+     * 将缓存统计注册为JMX MXBean，重复初始化时替换之前的注册
+     */
+    private void registerCacheStats(ResourceCacheStats stats)
+    {
+        if (stats == null)
+        {
+            return;
+        }
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(CACHE_STATS_MBEAN);
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(stats, name);
+        }
+        catch (JMException e)
+        {
+            logger.warn("Failed to register " + CACHE_STATS_MBEAN, e);
+        }
+    }
+    
+    private void initSessionManager()
+    {
+        String sessionStore = conf.getSessionStore();
+        if ("offheap".equalsIgnoreCase(sessionStore))
+        {
+            this.SESSION_MANAGER = new OffHeapSessionManager();
+        }
+        else if ("disk".equalsIgnoreCase(sessionStore))
+        {
+            String sessionStoreDir = conf.getSessionStoreDir();
+            File dir = sessionStoreDir != null ? new File(sessionStoreDir)
+                : new File(System.getProperty("java.io.tmpdir"), "microweb-sessions");
+            this.SESSION_MANAGER = new DiskSessionManager(dir, conf.getSessionStoreSize());
+        }
+        else if ("replicated".equalsIgnoreCase(sessionStore))
+        {
+            String node = conf.getSessionReplicationNode();
+            this.SESSION_MANAGER = new ReplicatedSessionManager(
+                node != null ? node.trim() : ManagementFactory.getRuntimeMXBean().getName(),
+                createReplicationTransport(conf.getSessionReplicationTransport()), conf.getSessionReplicationInterval(),
+                conf.getSessionReplicationBatch());
+        }
+        else
+        {
+            this.SESSION_MANAGER = LocalSessionManager.INSTANCE;
+        }
+        
+        this.SESSION_MANAGER.setMaxInactiveInterval(conf.getSessionTimeout());
+        this.SESSION_MANAGER.setServletContext(this.servletContext);
+    }
+    
+    private ReplicationTransport createReplicationTransport(String className)
+    {
+        if (className == null || className.trim().isEmpty())
+        {
+            return new LoopbackReplicationTransport();
+        }
+        try
+        {
+            return (ReplicationTransport)Class.forName(className.trim()).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | ClassCastException e)
+        {
+            throw new MicrowebException("Failed to create session replication transport " + className, e);
+        }
     }
     
     private void initServletContext(String servletContextName)
@@ -175,10 +336,21 @@ public class HttpCoreServer
         }
     }
     
+    /**
+     * 上下文路径，未初始化时返回空字符串
+     */
+    public String getContextPath()
+    {
+        return servletContext != null ? servletContext.getContextPath() : "";
+    }
+    
     public HttpResponse dispach(ChannelHandlerContext ctx, Object msg)
     {
-        HttpActionAdapter action = HttpActionAdapter4Spring.instance();
-        
+        return dispach(HttpActionAdapter4Spring.instance(), ctx, msg);
+    }
+    
+    HttpResponse dispach(HttpActionAdapter action, ChannelHandlerContext ctx, Object msg)
+    {
         if (!(msg instanceof FullHttpRequest))
         {
             return action.doNotHttpRequest(ctx, msg);
@@ -193,88 +365,75 @@ public class HttpCoreServer
         }
         
         String uri = request.uri();
-        String[] temp = uri.split("\\?");
-        String shortUri = getRequestURI(temp[0]);
+        int queryIndex = uri.indexOf('?');
+        String shortUri = getRequestURI(queryIndex < 0 ? uri : uri.substring(0, queryIndex));
         
         Map<String, String[]> parameters = null;
         if (method.equals(HttpMethod.GET))
         {
-            parameters = temp.length > 1 ? getParameters(temp[1]) : new HashMap<>();
+            parameters = queryIndex < 0 ? new HashMap<>() : getParameters(uri, queryIndex + 1);
         }
         else if (method.equals(HttpMethod.POST))
         {
             parameters = getParametersInBoby(request);
         }
         
-        if (method.equals(HttpMethod.GET))
-        {
-            return action.doGet(ctx, request, shortUri, parameters);
-        }
-        else if (method.equals(HttpMethod.POST))
-        {
-            return action.doPost(ctx, request, shortUri, parameters);
-        }
-        else if (method.equals(HttpMethod.OPTIONS))
-        {
-            return action.doOptions(ctx, request, shortUri, parameters);
-        }
-        else if (method.equals(HttpMethod.HEAD))
-        {
-            return action.doHead(ctx, request, shortUri, parameters);
-        }
-        else if (method.equals(HttpMethod.PUT))
-        {
-            return action.doPut(ctx, request, shortUri, parameters);
-        }
-        else if (method.equals(HttpMethod.PATCH))
-        {
-            return action.doPatch(ctx, request, shortUri, parameters);
-        }
-        else if (method.equals(HttpMethod.DELETE))
-        {
-            return action.doDelete(ctx, request, shortUri, parameters);
-        }
-        else if (method.equals(HttpMethod.TRACE))
-        {
-            return action.doTrace(ctx, request, shortUri, parameters);
-        }
-        else if (method.equals(HttpMethod.CONNECT))
-        {
-            return action.doConnect(ctx, request, shortUri, parameters);
-        }
-        else
+        MethodRoute route = ROUTES.get(method);
+        if (route == null)
         {
             return action.doUnContainMethod(ctx, request, shortUri, parameters);
         }
+        return route.route(action, ctx, request, shortUri, parameters);
     }
     
+    /**
+     * 按字面前缀去掉上下文路径
+     */
     private String getRequestURI(String fullPath)
     {
-        return fullPath.replaceAll(servletContext.getContextPath(), "");
+        String contextPath = servletContext.getContextPath();
+        int length = contextPath.length();
+        if (length > 0 && fullPath.startsWith(contextPath)
+            && (fullPath.length() == length || fullPath.charAt(length) == '/'))
+        {
+            return fullPath.substring(length);
+        }
+        return fullPath;
     }
     
     /**
-     * 构建请求参数
+     * 构建请求参数，从uri的from位置开始单遍扫描查询串
      * 
-     * @param temp
+     * @param uri 完整请求uri
+     * @param from 查询串起始位置('?'之后)
      * @return
      */
-    private Map<String, String[]> getParameters(String paramNameValueStr)
+    private Map<String, String[]> getParameters(String uri, int from)
     {
         Map<String, String[]> map = new HashMap<String, String[]>();
         
-        String suffix = paramNameValueStr;
-        String[] params = suffix.split("&");
-        for (String s : params)
+        int length = uri.length();
+        while (from < length)
         {
-            String[] keyValues = s.split("=");
-            if(keyValues.length > 1)
+            int pairEnd = uri.indexOf('&', from);
+            if (pairEnd < 0)
             {
-                String key = keyValues[0]; 
-                String[] values = keyValues[1].split(",");
-                map.put(key, values);
+                pairEnd = length;
             }
-            
+            int eq = uri.indexOf('=', from);
+            if (eq >= 0 && eq < pairEnd - 1)
+            {
+                int valueEnd = uri.indexOf('=', eq + 1);
+                if (valueEnd < 0 || valueEnd > pairEnd)
+                {
+                    valueEnd = pairEnd;
+                }
+                if (valueEnd > eq + 1)
+                {
+                    map.put(uri.substring(from, eq), uri.substring(eq + 1, valueEnd).split(","));
+                }
+            }
+            from = pairEnd + 1;
         }
         
         return map;
@@ -293,21 +452,14 @@ public class HttpCoreServer
             return new HashMap<String, String[]>();
         }
         
-        byte[] dst = null;
-        if (request.content().isDirect())
-        {
-            dst = new byte[request.content().capacity()];
-            request.content().getBytes(0, dst);
-        }
-        else
-        {
-            dst = request.content().array();
-        }
-        
-        String bodyContent = new String(dst);
-        bodyContent = URLDecoder.decode(bodyContent);
-        
-        return getParameters(bodyContent);
+        // 直接在请求ByteBuf上解析，不复制请求体
+        return FormBodyDecoder.decode(request.content(), HttpUtil.getCharset(request, CharsetUtil.UTF_8));
         
     }
+    
+    private interface MethodRoute
+    {
+        HttpResponse route(HttpActionAdapter action, ChannelHandlerContext ctx, FullHttpRequest request,
+            String shortUri, Map<String, String[]> parameters);
+    }
 }
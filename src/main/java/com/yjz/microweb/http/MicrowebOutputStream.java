@@ -40,6 +40,11 @@ public class MicrowebOutputStream extends ServletOutputStream {
 		this.targetStream.write(b);
 	}
 
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		this.targetStream.write(b, off, len);
+	}
+
 	@Override
 	public void flush() throws IOException {
 		super.flush();
@@ -53,15 +58,39 @@ public class MicrowebOutputStream extends ServletOutputStream {
 		this.targetStream.close();
 	}
 
+	/**
+	 * 目标为ServletOutputStream时以其为准，否则写入不会阻塞，始终可写
+	 */
 	@Override
 	public boolean isReady() {
-		// TODO Auto-generated method stub
+		if (this.targetStream instanceof ServletOutputStream) {
+			return ((ServletOutputStream) this.targetStream).isReady();
+		}
 		return true;
 	}
 
+	/**
+	 * 目标为ServletOutputStream时交给目标处理；否则始终可写，设置后立即回调onWritePossible，回调抛出的异常交给onError
+	 */
 	@Override
 	public void setWriteListener(WriteListener writeListener) {
+		if (this.targetStream instanceof ServletOutputStream) {
+			((ServletOutputStream) this.targetStream).setWriteListener(writeListener);
+			return;
+		}
+		if (writeListener == null) {
+			throw new NullPointerException("WriteListener must not be null");
+		}
+		if (this.writeListener != null) {
+			throw new IllegalStateException("WriteListener has already been set");
+		}
 		this.writeListener = writeListener;
+		try {
+			writeListener.onWritePossible();
+		}
+		catch (IOException | RuntimeException e) {
+			writeListener.onError(e);
+		}
 	}
 
 }
\ No newline at end of file
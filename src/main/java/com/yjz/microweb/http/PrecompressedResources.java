@@ -0,0 +1,180 @@
+package com.yjz.microweb.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <b>静态资源的预压缩版本</b><br>
+ * 1. 支持br、zstd、gzip三种编码，文件扩展名分别为.br、.zst、.gz，可在构建时生成并与原文件放在一起；<br>
+ * 2. 按Accept-Encoding的q值协商，q值相同时按br、zstd、gzip的顺序优先；<br>
+ * 3. 运行时只生成gzip版本(JDK自带)，br与zstd只使用预先生成的文件；<br>
+ * 4. 预压缩响应带有Content-Encoding，HttpContentCompressor不会再次压缩。
+ */
+public final class PrecompressedResources
+{
+
+    /** 按优先级排列的编码 */
+    private static final String[] ENCODINGS = {"br", "zstd", "gzip"};
+
+    private static final String[] EXTENSIONS = {".br", ".zst", ".gz"};
+
+    private static final String[] NONE = new String[0];
+
+    private PrecompressedResources()
+    {
+    }
+
+    /**
+     * 返回客户端接受的编码，按优先级排列
+     *
+     * @param acceptEncoding Accept-Encoding请求头，可以为空
+     */
+    public static String[] accepted(String acceptEncoding)
+    {
+        if (acceptEncoding == null || acceptEncoding.isEmpty())
+        {
+            return NONE;
+        }
+
+        float[] q = new float[ENCODINGS.length];
+        float any = -1;
+        for (String item : acceptEncoding.split(","))
+        {
+            String coding = item;
+            float value = 1;
+            int idx = item.indexOf(';');
+            if (idx >= 0)
+            {
+                coding = item.substring(0, idx);
+                value = parseQuality(item.substring(idx + 1));
+            }
+            coding = coding.trim();
+            if ("*".equals(coding))
+            {
+                any = value;
+                continue;
+            }
+            for (int i = 0; i < ENCODINGS.length; i++)
+            {
+                if (ENCODINGS[i].equalsIgnoreCase(coding))
+                {
+                    // 0表示未出现，出现但q=0时记为负数
+                    q[i] = value > 0 ? value : -1;
+                }
+            }
+        }
+
+        int count = 0;
+        String[] result = new String[ENCODINGS.length];
+        float[] order = new float[ENCODINGS.length];
+        for (int i = 0; i < ENCODINGS.length; i++)
+        {
+            float value = q[i] != 0 ? q[i] : any;
+            if (value <= 0)
+            {
+                continue;
+            }
+            // 插入排序，q值相同时保持优先级顺序
+            int j = count++;
+            while (j > 0 && order[j - 1] < value)
+            {
+                order[j] = order[j - 1];
+                result[j] = result[j - 1];
+                j--;
+            }
+            order[j] = value;
+            result[j] = ENCODINGS[i];
+        }
+
+        if (count == result.length)
+        {
+            return result;
+        }
+        String[] accepted = new String[count];
+        System.arraycopy(result, 0, accepted, 0, count);
+        return accepted;
+    }
+
+    /**
+     * 支持的全部编码，按优先级排列
+     */
+    public static String[] encodings()
+    {
+        return ENCODINGS.clone();
+    }
+
+    /**
+     * 编码对应的文件扩展名
+     */
+    public static String extension(String encoding)
+    {
+        for (int i = 0; i < ENCODINGS.length; i++)
+        {
+            if (ENCODINGS[i].equals(encoding))
+            {
+                return EXTENSIONS[i];
+            }
+        }
+        throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+    }
+
+    /**
+     * 文本类资源才值得压缩，图片、音视频、压缩包等本身已经压缩
+     */
+    public static boolean isCompressible(String contentType)
+    {
+        if (contentType == null)
+        {
+            return false;
+        }
+        return contentType.startsWith("text/") || contentType.endsWith("+xml") || contentType.endsWith("/xml")
+            || contentType.endsWith("json") || contentType.endsWith("javascript")
+            || contentType.equals("application/x-font-ttf");
+    }
+
+    /**
+     * 以最高压缩级别生成gzip数据，只在资源放入缓存时执行一次
+     */
+    public static byte[] gzip(byte[] bytes)
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 2 + 32);
+        try (GZIPOutputStream out = new GZIPOutputStream(baos, 8192)
+        {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        })
+        {
+            out.write(bytes);
+        }
+        catch (IOException e)
+        {
+            // 写入内存不会发生IO异常
+            throw new IllegalStateException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    private static float parseQuality(String params)
+    {
+        for (String param : params.split(";"))
+        {
+            param = param.trim();
+            if (param.startsWith("q=") || param.startsWith("Q="))
+            {
+                try
+                {
+                    return Float.parseFloat(param.substring(2).trim());
+                }
+                catch (NumberFormatException e)
+                {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+}
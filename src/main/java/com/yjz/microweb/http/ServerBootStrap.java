@@ -2,12 +2,16 @@ package com.yjz.microweb.http;
 
 import java.io.IOException;
 import java.security.cert.CertificateException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.slf4j.Logger;
 
+import com.yjz.microweb.transport.DispatchMode;
 import com.yjz.microweb.transport.HttpServer;
 import com.yjz.microweb.transport.HttpServerConf;
+import com.yjz.microweb.transport.TransportMode;
 
 public class ServerBootStrap
 {
@@ -40,13 +44,130 @@ public class ServerBootStrap
             String poolQueueSizeStr = properties.getProperty("pool.queuesize");
             int poolQueueSize = poolQueueSizeStr == null ? 100 : Integer.parseInt(poolQueueSizeStr);
             
-            logger.info("Finished loading microweb.properties.");
-            /**************************************************************************************/
+            TransportMode transport = TransportMode.parse(properties.getProperty("server.transport"));
             
-            /**************************************************************************************/
-            logger.info("Start Initializing Webapp Context.");
-            HttpCoreServer.instance().init(servletContextName);
-            logger.info("Webapp Context has been initialized.");
+            String acceptorsStr = properties.getProperty("server.acceptors");
+            int acceptors = acceptorsStr == null ? 1 : Integer.parseInt(acceptorsStr);
+            
+            String requestStreamingStr = properties.getProperty("request.streaming");
+            boolean requestStreaming = requestStreamingStr == null ? false : Boolean.valueOf(requestStreamingStr);
+            
+            String aggregateLimitStr = properties.getProperty("request.aggregate.limit");
+            int aggregateLimit = aggregateLimitStr == null ? 64 * 1024 : Integer.parseInt(aggregateLimitStr);
+            
+            String streamingUrisStr = properties.getProperty("request.streaming.uris");
+            String[] streamingUris = streamingUrisStr == null ? new String[0] : streamingUrisStr.trim().split("\\s*,\\s*");
+            
+            String streamingQueueSizeStr = properties.getProperty("request.streaming.queuesize");
+            int streamingQueueSize = streamingQueueSizeStr == null ? 16 : Integer.parseInt(streamingQueueSizeStr);
+            
+            String responseStreamingStr = properties.getProperty("response.streaming");
+            boolean responseStreaming = responseStreamingStr == null ? false : Boolean.valueOf(responseStreamingStr);
+            
+            DispatchMode dispatchMode = DispatchMode.parse(properties.getProperty("server.dispatch"));
+            
+            String admissionEnabledStr = properties.getProperty("admission.enabled");
+            boolean admissionEnabled = admissionEnabledStr == null ? true : Boolean.valueOf(admissionEnabledStr);
+            
+            String admissionQueueDepthStr = properties.getProperty("admission.queue.depth");
+            int admissionQueueDepth = admissionQueueDepthStr == null ? 0 : Integer.parseInt(admissionQueueDepthStr);
+            
+            String admissionTargetDelayStr = properties.getProperty("admission.target.delay");
+            long admissionTargetDelay = admissionTargetDelayStr == null ? 50 : Long.parseLong(admissionTargetDelayStr);
+            
+            String admissionIntervalStr = properties.getProperty("admission.interval");
+            long admissionInterval = admissionIntervalStr == null ? 500 : Long.parseLong(admissionIntervalStr);
+            
+            String retryAfterStr = properties.getProperty("admission.retry.after");
+            int retryAfter = retryAfterStr == null ? 1 : Integer.parseInt(retryAfterStr);
+            
+            String cacheType = properties.getProperty("cache.type", "tinylfu");
+            
+            String cacheCapacityStr = properties.getProperty("cache.capacity");
+            long cacheCapacity = cacheCapacityStr == null ? 256 * 1024 * 1024l : Long.parseLong(cacheCapacityStr);
+            
+            String cacheDir = properties.getProperty("cache.dir");
+            
+            String negativeCacheCapacityStr = properties.getProperty("cache.negative.capacity");
+            int negativeCacheCapacity = negativeCacheCapacityStr == null ? 100000 : Integer.parseInt(negativeCacheCapacityStr);
+            
+            String negativeCacheTtlStr = properties.getProperty("cache.negative.ttl");
+            long negativeCacheTtl = negativeCacheTtlStr == null ? 60000 : Long.parseLong(negativeCacheTtlStr);
+            
+            String cacheStatsUriStr = properties.getProperty("cache.stats.uri");
+            String cacheStatsUri = cacheStatsUriStr == null || cacheStatsUriStr.trim().isEmpty() ? null : cacheStatsUriStr.trim();
+            
+            String staticDirsStr = properties.getProperty("static.dirs");
+            String[] staticDirs = staticDirsStr == null ? new String[0] : staticDirsStr.trim().split("\\s*,\\s*");
+            
+            String staticPreloadBudgetStr = properties.getProperty("static.preload.budget");
+            long staticPreloadBudget = staticPreloadBudgetStr == null ? 0 : Long.parseLong(staticPreloadBudgetStr.trim());
+            
+            String staticPreloadPatternsStr = properties.getProperty("static.preload.patterns");
+            String[] staticPreloadPatterns = staticPreloadPatternsStr == null ? null : staticPreloadPatternsStr.trim().split("\\s*,\\s*");
+            
+            String staticMaxAgeStr = properties.getProperty("static.maxage");
+            int staticMaxAge = staticMaxAgeStr == null ? -1 : Integer.parseInt(staticMaxAgeStr.trim());
+            
+            // 格式：js:86400,css:86400,html:0
+            String staticMaxAgesStr = properties.getProperty("static.maxage.extensions");
+            Map<String, Integer> staticMaxAges = new HashMap<String, Integer>();
+            if (staticMaxAgesStr != null && !staticMaxAgesStr.trim().isEmpty())
+            {
+                for (String item : staticMaxAgesStr.trim().split("\\s*,\\s*"))
+                {
+                    int idx = item.indexOf(':');
+                    staticMaxAges.put(item.substring(0, idx).trim().toLowerCase(),
+                        Integer.parseInt(item.substring(idx + 1).trim()));
+                }
+            }
+            
+            String compressionEnabledStr = properties.getProperty("compression.enabled");
+            boolean compressionEnabled = compressionEnabledStr == null ? true : Boolean.parseBoolean(compressionEnabledStr.trim());
+            
+            String compressionMinSizeStr = properties.getProperty("compression.min.size");
+            int compressionMinSize = compressionMinSizeStr == null ? 1024 : Integer.parseInt(compressionMinSizeStr.trim());
+            
+            // MIME类型或扩展名，逗号分隔，如 text/*,js,application/json
+            String compressionAllowTypesStr = properties.getProperty("compression.types.allow");
+            String[] compressionAllowTypes = compressionAllowTypesStr == null || compressionAllowTypesStr.trim().isEmpty()
+                ? new String[0] : compressionAllowTypesStr.trim().split("\\s*,\\s*");
+            
+            String compressionDenyTypesStr = properties.getProperty("compression.types.deny");
+            String[] compressionDenyTypes = compressionDenyTypesStr == null || compressionDenyTypesStr.trim().isEmpty()
+                ? new String[0] : compressionDenyTypesStr.trim().split("\\s*,\\s*");
+            
+            String compressionLevelStr = properties.getProperty("compression.level");
+            int compressionLevel = compressionLevelStr == null ? 6 : Integer.parseInt(compressionLevelStr.trim());
+            
+            String compressionMinLevelStr = properties.getProperty("compression.level.min");
+            int compressionMinLevel = compressionMinLevelStr == null ? 1 : Integer.parseInt(compressionMinLevelStr.trim());
+            
+            String compressionBusyTasksStr = properties.getProperty("compression.busy.tasks");
+            int compressionBusyTasks = compressionBusyTasksStr == null ? 64 : Integer.parseInt(compressionBusyTasksStr.trim());
+            
+            String sessionTimeoutStr = properties.getProperty("session.timeout");
+            int sessionTimeout = sessionTimeoutStr == null ? 1800 : Integer.parseInt(sessionTimeoutStr.trim());
+            
+            String sessionStoreStr = properties.getProperty("session.store");
+            String sessionStore = sessionStoreStr == null ? "local" : sessionStoreStr.trim();
+            
+            String sessionStoreDir = properties.getProperty("session.store.dir");
+            
+            String sessionStoreSizeStr = properties.getProperty("session.store.size");
+            int sessionStoreSize = sessionStoreSizeStr == null ? 64 * 1024 * 1024 : Integer.parseInt(sessionStoreSizeStr.trim());
+            
+            String sessionReplicationTransport = properties.getProperty("session.replication.transport");
+            
+            String sessionReplicationNode = properties.getProperty("session.replication.node");
+            
+            String sessionReplicationIntervalStr = properties.getProperty("session.replication.interval");
+            long sessionReplicationInterval = sessionReplicationIntervalStr == null ? 100 : Long.parseLong(sessionReplicationIntervalStr.trim());
+            
+            String sessionReplicationBatchStr = properties.getProperty("session.replication.batch");
+            int sessionReplicationBatch = sessionReplicationBatchStr == null ? 256 : Integer.parseInt(sessionReplicationBatchStr.trim());
+            
+            logger.info("Finished loading microweb.properties.");
             /**************************************************************************************/
             
             /**************************************************************************************/
@@ -56,7 +177,57 @@ public class ServerBootStrap
             conf.setCorePoolSize(corePoolSize);
             conf.setMaximumPoolSize(maximumPoolSize);
             conf.setPoolQueueSize(poolQueueSize);
+            conf.setTransport(transport);
+            conf.setAcceptors(acceptors);
+            conf.setRequestStreaming(requestStreaming);
+            conf.setAggregateLimit(aggregateLimit);
+            conf.setStreamingUris(streamingUris);
+            conf.setStreamingQueueSize(streamingQueueSize);
+            conf.setResponseStreaming(responseStreaming);
+            conf.setDispatchMode(dispatchMode);
+            conf.setAdmissionEnabled(admissionEnabled);
+            conf.setAdmissionQueueDepth(admissionQueueDepth);
+            conf.setAdmissionTargetDelay(admissionTargetDelay);
+            conf.setAdmissionInterval(admissionInterval);
+            conf.setRetryAfter(retryAfter);
+            conf.setCacheType(cacheType);
+            conf.setCacheCapacity(cacheCapacity);
+            conf.setCacheDir(cacheDir);
+            conf.setNegativeCacheCapacity(negativeCacheCapacity);
+            conf.setNegativeCacheTtl(negativeCacheTtl);
+            conf.setCacheStatsUri(cacheStatsUri);
+            conf.setStaticDirs(staticDirs);
+            conf.setStaticPreloadBudget(staticPreloadBudget);
+            if (staticPreloadPatterns != null)
+            {
+                conf.setStaticPreloadPatterns(staticPreloadPatterns);
+            }
+            conf.setStaticMaxAge(staticMaxAge);
+            conf.setStaticMaxAges(staticMaxAges);
+            conf.setCompressionEnabled(compressionEnabled);
+            conf.setCompressionMinSize(compressionMinSize);
+            conf.setCompressionAllowTypes(compressionAllowTypes);
+            conf.setCompressionDenyTypes(compressionDenyTypes);
+            conf.setCompressionLevel(compressionLevel);
+            conf.setCompressionMinLevel(compressionMinLevel);
+            conf.setCompressionBusyTasks(compressionBusyTasks);
+            conf.setSessionTimeout(sessionTimeout);
+            conf.setSessionStore(sessionStore);
+            conf.setSessionStoreDir(sessionStoreDir);
+            conf.setSessionStoreSize(sessionStoreSize);
+            conf.setSessionReplicationTransport(sessionReplicationTransport);
+            conf.setSessionReplicationNode(sessionReplicationNode);
+            conf.setSessionReplicationInterval(sessionReplicationInterval);
+            conf.setSessionReplicationBatch(sessionReplicationBatch);
+            /**************************************************************************************/
             
+            /**************************************************************************************/
+            logger.info("Start Initializing Webapp Context.");
+            HttpCoreServer.instance().init(servletContextName, conf);
+            logger.info("Webapp Context has been initialized.");
+            /**************************************************************************************/
+            
+            /**************************************************************************************/
             logger.info("Start Initializing httpServer.");
             HttpServer httpServer = new HttpServer(conf);
             httpServer.doStart();
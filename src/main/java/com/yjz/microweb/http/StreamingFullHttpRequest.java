@@ -0,0 +1,31 @@
+package com.yjz.microweb.http;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+
+/**
+ * <b>流式请求</b><br>
+ * 请求头到达即转发给业务线程，content为空，请求体通过{@link #bodyStream()}按分片读取。<br>
+ * 由于实现了FullHttpMessage，HttpObjectAggregator会直接放行。
+ */
+public class StreamingFullHttpRequest extends DefaultFullHttpRequest
+{
+
+    private final HttpContentInputStream bodyStream;
+
+    public StreamingFullHttpRequest(HttpRequest request, HttpContentInputStream bodyStream)
+    {
+        super(request.protocolVersion(), request.method(), request.uri(), Unpooled.buffer(0), request.headers(),
+            new DefaultHttpHeaders());
+        setDecoderResult(request.decoderResult());
+        this.bodyStream = bodyStream;
+    }
+
+    public HttpContentInputStream bodyStream()
+    {
+        return bodyStream;
+    }
+
+}
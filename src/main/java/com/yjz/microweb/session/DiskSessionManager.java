@@ -0,0 +1,394 @@
+package com.yjz.microweb.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yjz.microweb.MicrowebException;
+
+import io.netty.util.CharsetUtil;
+
+/**
+ * <b>磁盘Session存储(内存映射日志 + 索引)</b><br>
+ * 1. 记录追加写入内存映射的日志文件，堆上只保留id到记录偏移的索引；记录格式为[长度 int][有效标记 byte][id长度 short][id][Session记录]；<br>
+ * 2. 长度字段最后写入，进程异常退出时未写完的记录长度为0，恢复时作为日志结尾；<br>
+ * 3. 修改属性时追加新记录并把旧记录标记为无效，只更新访问时间时原地修改，删除时只修改有效标记；<br>
+ * 4. 启动时顺序扫描日志重建索引，同一id以靠后的记录为准，恢复的Session重新加入超时时间轮；<br>
+ * 5. 日志写满时先压缩：有效记录写入新文件后原子替换旧文件，仍然不足时扩大映射，最大不超过2G；<br>
+ * 6. 数据由操作系统写回磁盘，进程退出时强制刷盘，可以跨重启与重新部署保留，但不保证掉电时不丢失最近的修改。
+ */
+public class DiskSessionManager extends SerializedSessionManager
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskSessionManager.class);
+
+    private static final String LOG_FILE = "sessions.log";
+
+    private static final String COMPACT_FILE = "sessions.log.compact";
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private static final int LIVE_OFFSET = 4;
+
+    private static final int SID_LENGTH_OFFSET = 5;
+
+    private static final int SID_OFFSET = 7;
+
+    private final File dir;
+
+    private final int initialCapacity;
+
+    /** 读写记录持读锁，追加、删除、压缩与扩容持写锁 */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ConcurrentHashMap<String, Integer> index = new ConcurrentHashMap<String, Integer>();
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private int tail;
+
+    /** 无效记录占用的字节数 */
+    private long garbage;
+
+    /**
+     * @param dir 日志文件目录，不存在时创建
+     * @param capacity 初始映射大小(字节)
+     */
+    public DiskSessionManager(File dir, int capacity)
+    {
+        this.dir = dir;
+        this.initialCapacity = Math.max(capacity, 1024 * 1024);
+        try
+        {
+            Files.createDirectories(dir.toPath());
+            open(new File(dir, LOG_FILE), initialCapacity);
+            recover();
+        }
+        catch (IOException e)
+        {
+            throw new MicrowebException(e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                flush();
+            }
+        }, "microweb-session-flush"));
+    }
+
+    private void open(File file, int capacity)
+        throws IOException
+    {
+        @SuppressWarnings("resource")
+        FileChannel fileChannel = new RandomAccessFile(file, "rw").getChannel();
+        long size = Math.max(fileChannel.size(), capacity);
+        this.channel = fileChannel;
+        this.buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, MAX_CAPACITY));
+    }
+
+    private void recover()
+    {
+        int capacity = buffer.capacity();
+        int pos = 0;
+        int live = 0;
+        while (pos + SID_OFFSET <= capacity)
+        {
+            int length = buffer.getInt(pos);
+            if (length < SID_OFFSET || length > capacity - pos)
+            {
+                break;
+            }
+            int sidLength = buffer.getShort(pos + SID_LENGTH_OFFSET);
+            if (sidLength <= 0 || SID_OFFSET + sidLength + HEADER_SIZE > length)
+            {
+                break;
+            }
+            if (buffer.get(pos + LIVE_OFFSET) != 0)
+            {
+                byte[] sid = new byte[sidLength];
+                ByteBuffer view = buffer.duplicate();
+                view.position(pos + SID_OFFSET);
+                view.get(sid);
+                Integer previous = index.put(new String(sid, CharsetUtil.UTF_8), pos);
+                if (previous != null)
+                {
+                    kill(previous);
+                }
+                else
+                {
+                    live++;
+                }
+            }
+            else
+            {
+                garbage += length;
+            }
+            pos += length;
+        }
+        tail = pos;
+
+        for (Map.Entry<String, Integer> entry : index.entrySet())
+        {
+            scheduleExpiry(entry.getKey(), deadline(buffer, payloadOffset(entry.getValue())));
+        }
+        logger.info("Recovered " + live + " sessions from " + new File(dir, LOG_FILE) + ".");
+    }
+
+    @Override
+    protected byte[] load(String sid)
+    {
+        lock.readLock().lock();
+        try
+        {
+            Integer pos = index.get(sid);
+            if (pos == null)
+            {
+                return null;
+            }
+            int payload = payloadOffset(pos);
+            byte[] record = new byte[pos + buffer.getInt(pos) - payload];
+            ByteBuffer view = buffer.duplicate();
+            view.position(payload);
+            view.get(record);
+            return record;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean store(String sid, byte[] record, boolean create)
+    {
+        byte[] sidBytes = sid.getBytes(CharsetUtil.UTF_8);
+        int length = SID_OFFSET + sidBytes.length + record.length;
+        lock.writeLock().lock();
+        try
+        {
+            if (!create && !index.containsKey(sid))
+            {
+                return false;
+            }
+            ensureCapacity(length);
+
+            int pos = tail;
+            buffer.put(pos + LIVE_OFFSET, (byte)1);
+            buffer.putShort(pos + SID_LENGTH_OFFSET, (short)sidBytes.length);
+            ByteBuffer view = buffer.duplicate();
+            view.position(pos + SID_OFFSET);
+            view.put(sidBytes);
+            view.put(record);
+            // 长度最后写入，未写完的记录在恢复时被忽略
+            buffer.putInt(pos, length);
+            tail = pos + length;
+
+            Integer previous = index.put(sid, pos);
+            if (previous != null)
+            {
+                kill(previous);
+            }
+            return true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean touch(String sid, long lastAccessedTime)
+    {
+        lock.readLock().lock();
+        try
+        {
+            Integer pos = index.get(sid);
+            if (pos == null)
+            {
+                return false;
+            }
+            buffer.putLong(payloadOffset(pos) + LAST_ACCESSED_OFFSET, lastAccessedTime);
+            return true;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected long deadline(String sid)
+    {
+        lock.readLock().lock();
+        try
+        {
+            Integer pos = index.get(sid);
+            return pos == null ? -1 : deadline(buffer, payloadOffset(pos));
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean delete(String sid)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            Integer pos = index.remove(sid);
+            if (pos == null)
+            {
+                return false;
+            }
+            kill(pos);
+            return true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean contains(String sid)
+    {
+        return index.containsKey(sid);
+    }
+
+    private int payloadOffset(int pos)
+    {
+        return pos + SID_OFFSET + buffer.getShort(pos + SID_LENGTH_OFFSET);
+    }
+
+    private void kill(int pos)
+    {
+        buffer.put(pos + LIVE_OFFSET, (byte)0);
+        garbage += buffer.getInt(pos);
+    }
+
+    /**
+     * 持写锁调用：空间不足时先压缩，仍然不足时扩大映射
+     */
+    private void ensureCapacity(int length)
+    {
+        if ((long)tail + length <= buffer.capacity())
+        {
+            return;
+        }
+        try
+        {
+            if (garbage > 0)
+            {
+                compact();
+            }
+            if ((long)tail + length > buffer.capacity())
+            {
+                long capacity = Math.max((long)buffer.capacity() * 2, (long)tail + length);
+                if ((long)tail + length > MAX_CAPACITY)
+                {
+                    throw new MicrowebException("Session store " + dir + " is full.");
+                }
+                buffer.force();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, MAX_CAPACITY));
+                logger.info("Session store " + dir + " grown to " + buffer.capacity() + " bytes.");
+            }
+        }
+        catch (IOException e)
+        {
+            throw new MicrowebException(e);
+        }
+    }
+
+    /**
+     * 有效记录写入新文件，完成后替换旧文件，过程中异常退出时旧文件保持完整
+     */
+    private void compact()
+        throws IOException
+    {
+        File compactFile = new File(dir, COMPACT_FILE);
+        Files.deleteIfExists(compactFile.toPath());
+        FileChannel oldChannel = channel;
+        MappedByteBuffer old = buffer;
+        Map<String, Integer> moved = new HashMap<String, Integer>(index.size() * 2);
+        int pos = 0;
+        try
+        {
+            open(compactFile, Math.max(initialCapacity, old.capacity()));
+            for (Map.Entry<String, Integer> entry : index.entrySet())
+            {
+                int from = entry.getValue();
+                int length = old.getInt(from);
+                ByteBuffer source = old.duplicate();
+                source.position(from);
+                source.limit(from + length);
+                ByteBuffer target = buffer.duplicate();
+                target.position(pos);
+                target.put(source);
+                moved.put(entry.getKey(), pos);
+                pos += length;
+            }
+            buffer.force();
+            Files.move(compactFile.toPath(), new File(dir, LOG_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            if (channel != oldChannel)
+            {
+                channel.close();
+            }
+            channel = oldChannel;
+            buffer = old;
+            throw e;
+        }
+        oldChannel.close();
+        index.putAll(moved);
+
+        logger.info("Session store " + dir + " compacted from " + tail + " to " + pos + " bytes.");
+        tail = pos;
+        garbage = 0;
+    }
+
+    /**
+     * 强制写回磁盘
+     */
+    public void flush()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            buffer.force();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 当前Session数
+     */
+    public int size()
+    {
+        return index.size();
+    }
+
+}
@@ -2,9 +2,12 @@ package com.yjz.microweb.session;
 
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
@@ -12,8 +15,13 @@ import javax.servlet.http.HttpSessionContext;
 
 import org.springframework.util.Assert;
 
-import com.yjz.microweb.util.StringUtil;
-
+/**
+ * <b>Session</b><br>
+ * 1. 属性保存在{@link SessionAttributes}中，读写无锁，同一Session的并发请求互不阻塞；<br>
+ * 2. 最后访问时间与是否有效为原子变量，读取不加锁；最后访问时间只向后更新；<br>
+ * 3. 修改标记与修改过的属性名供序列化存储与集群复制使用，与属性的修改之间不保证原子性，
+ * 提交时读取到的是当时的最新值。
+ */
 public class HttpSessionImpl implements HttpSession
 {
     
@@ -21,25 +29,47 @@ public class HttpSessionImpl implements HttpSession
     
     private boolean isNew;
     
-    private boolean valid = true;
+    private final AtomicBoolean valid = new AtomicBoolean(true);
     
     private long creationTime;
     
-    private long lastAccessedTime;
-    
-    private HashMap<String, Object> attributes = new HashMap<String, Object>();
+    private final AtomicLong lastAccessedTime;
     
-    private HashMap<String, Object> values = new HashMap<String, Object>();
+    private final SessionAttributes attributes = new SessionAttributes();
     
     private final ServletContext servletContext;
     
-    private int maxInactiveInterval;
+    private volatile int maxInactiveInterval;
+    
+    /** 属性或超时时间在本次请求中被修改，序列化存储需要重新写入 */
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    
+    /** 被修改或删除的属性名，用于集群复制增量 */
+    private final Set<String> changedAttributes = ConcurrentHashMap.newKeySet();
     
     public HttpSessionImpl(ServletContext servletContext, String sid)
     {
         this.servletContext = servletContext;
         this.sid = sid;
         this.creationTime = System.currentTimeMillis();
+        this.lastAccessedTime = new AtomicLong(this.creationTime);
+    }
+    
+    /**
+     * 从序列化存储中恢复
+     */
+    HttpSessionImpl(ServletContext servletContext, String sid, long creationTime, long lastAccessedTime,
+        int maxInactiveInterval, Map<String, Object> attributes)
+    {
+        this.servletContext = servletContext;
+        this.sid = sid;
+        this.creationTime = creationTime;
+        this.lastAccessedTime = new AtomicLong(lastAccessedTime);
+        this.maxInactiveInterval = maxInactiveInterval;
+        for (Map.Entry<String, Object> attribute : attributes.entrySet())
+        {
+            this.attributes.put(attribute.getKey(), attribute.getValue());
+        }
     }
     
     @Override
@@ -49,63 +79,88 @@ public class HttpSessionImpl implements HttpSession
     }
     
     @Override
-    public synchronized long getLastAccessedTime()
+    public long getLastAccessedTime()
     {
         checkvalid();
-        return lastAccessedTime;
+        return lastAccessedTime.get();
     }
     
-    public synchronized boolean update()
+    public boolean update()
     {
-        if (valid)
+        if (valid.get())
         {
             long currTime = System.currentTimeMillis();
-            if (currTime - lastAccessedTime > maxInactiveInterval)
+            if (currTime > getExpiryTime())
             {
-                valid = false;
-                return valid;
+                valid.set(false);
+                return false;
             }
             else
             {
-                lastAccessedTime = currTime;
+                touch(currTime);
                 return true;
             }
         }
-        return valid;
+        return false;
+    }
+    
+    /**
+     * 超时时刻(毫秒)，由最后访问时间与超时时间(秒)计算，不超时返回Long.MAX_VALUE
+     */
+    public long getExpiryTime()
+    {
+        int interval = maxInactiveInterval;
+        return interval <= 0 ? Long.MAX_VALUE : lastAccessedTime.get() + interval * 1000L;
     }
     
     @Override
-    public synchronized Object getAttribute(String name)
+    public Object getAttribute(String name)
     {
         checkvalid();
-        return attributes.get(name);
+        return name == null ? null : attributes.get(name);
     }
     
     @Override
-    public synchronized void setAttribute(String name, Object value)
+    public void setAttribute(String name, Object value)
     {
+        Assert.notNull(name, "Attribute name must not be null");
         checkvalid();
+        if (value == null)
+        {
+            removeAttribute(name);
+            return;
+        }
         attributes.put(name, value);
+        markChanged(name);
     }
     
     @Override
-    public synchronized void removeAttribute(String name)
+    public void removeAttribute(String name)
     {
         checkvalid();
-        attributes.remove(name);
+        if (name != null && attributes.remove(name) != null)
+        {
+            markChanged(name);
+        }
+    }
+    
+    private void markChanged(String name)
+    {
+        changedAttributes.add(name);
+        dirty.set(true);
     }
     
     @Override
-    public synchronized Enumeration<String> getAttributeNames()
+    public Enumeration<String> getAttributeNames()
     {
         checkvalid();
-        return Collections.enumeration(new LinkedHashSet<String>(attributes.keySet()));
+        return Collections.enumeration(attributes.names());
     }
     
     @Override
-    public synchronized void invalidate()
+    public void invalidate()
     {
-        valid = false;
+        valid.set(false);
     }
     
     @Override
@@ -115,9 +170,9 @@ public class HttpSessionImpl implements HttpSession
         return isNew;
     }
     
-    private synchronized void checkvalid()
+    private void checkvalid()
     {
-        if (!valid)
+        if (!valid.get())
         {
             throw new IllegalStateException();
         }
@@ -139,6 +194,7 @@ public class HttpSessionImpl implements HttpSession
     public void setMaxInactiveInterval(int interval)
     {
         this.maxInactiveInterval = interval;
+        this.dirty.set(true);
     }
     
     @Override
@@ -150,33 +206,33 @@ public class HttpSessionImpl implements HttpSession
     @Override
     public Object getValue(String name)
     {
-        Assert.notNull(StringUtil.isNotEmpty(name), "Attribute name must not be null");
-        return values.get(name);
+        return getAttribute(name);
     }
     
     @Override
     public String[] getValueNames()
     {
-        Set<String> set = values.keySet();
+        checkvalid();
+        Set<String> set = attributes.names();
         return set.toArray(new String[set.size()]);
     }
     
     @Override
     public void putValue(String name, Object value)
     {
-        values.put(name, value);
+        setAttribute(name, value);
     }
     
     @Override
     public void removeValue(String name)
     {
-        values.remove(name);
+        removeAttribute(name);
     }
     
     public void access()
     {
-        this.valid = true;
-        this.lastAccessedTime = System.currentTimeMillis();
+        this.valid.set(true);
+        this.lastAccessedTime.set(System.currentTimeMillis());
     }
     
     /**
@@ -187,7 +243,86 @@ public class HttpSessionImpl implements HttpSession
      */
     public boolean isValid()
     {
-        return valid;
+        return valid.get();
+    }
+    
+    /**
+     * 属性的副本，用于序列化
+     */
+    Map<String, Object> getAttributeMap()
+    {
+        return attributes.snapshot();
+    }
+    
+    /**
+     * 返回自上次调用以来是否修改过属性或超时时间，并清除标记
+     */
+    boolean clearDirty()
+    {
+        return dirty.getAndSet(false);
+    }
+    
+    /**
+     * 返回自上次调用以来被修改或删除的属性名，并清除记录；取出过程中新修改的属性名留到下次
+     */
+    Set<String> drainChangedAttributes()
+    {
+        if (changedAttributes.isEmpty())
+        {
+            return Collections.<String> emptySet();
+        }
+        Set<String> changed = new HashSet<String>();
+        for (String name : changedAttributes)
+        {
+            if (changedAttributes.remove(name))
+            {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * 应用其他节点复制来的修改，不计入本节点的修改
+     *
+     * @param replaceAll 为true时删除changed中没有的属性(完整快照)
+     */
+    void applyReplicated(long lastAccessedTime, int maxInactiveInterval, Map<String, Object> changed,
+        Set<String> removed, boolean replaceAll)
+    {
+        if (replaceAll)
+        {
+            for (String name : attributes.names())
+            {
+                if (!changed.containsKey(name))
+                {
+                    attributes.remove(name);
+                }
+            }
+        }
+        for (Map.Entry<String, Object> attribute : changed.entrySet())
+        {
+            attributes.put(attribute.getKey(), attribute.getValue());
+        }
+        for (String name : removed)
+        {
+            attributes.remove(name);
+        }
+        touch(lastAccessedTime);
+        this.maxInactiveInterval = maxInactiveInterval;
+    }
+    
+    /**
+     * 其他节点访问了该Session
+     */
+    void touchReplicated(long lastAccessedTime)
+    {
+        touch(lastAccessedTime);
+    }
+    
+    private void touch(long time)
+    {
+        lastAccessedTime.accumulateAndGet(time, Math::max);
     }
     
     @Override
@@ -1,29 +1,68 @@
 package com.yjz.microweb.session;
 
-import java.util.Iterator;
-import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletContext;
 import javax.servlet.SessionCookieConfig;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.yjz.microweb.util.RandomUtil;
 
 public enum LocalSessionManager implements SessionManager {
-	
+
 	INSTANCE;
-	
+
+	private static final Logger logger = LoggerFactory.getLogger(LocalSessionManager.class);
+
+	/** 超时检查的精度(毫秒)与时间轮槽数，一圈约8.5分钟 */
+	private static final long EXPIRY_TICK = 1000;
+	private static final int EXPIRY_WHEEL_SIZE = 512;
+
 	private ServletContext servletContext;
 	private SessionCookieConfig sessionCookieConfig;
 	private int maxAge;
-	
+
+	/** 新建Session的超时时间(秒)，小于等于0表示不超时 */
+	private volatile int maxInactiveInterval = 1800;
+
+	private volatile HttpSessionListener[] listeners = new HttpSessionListener[0];
+
 	private ConcurrentHashMap<String, HttpSession> map = new ConcurrentHashMap<String, HttpSession>();
-	
+
+	private final SessionExpiryWheel expiryWheel = new SessionExpiryWheel(EXPIRY_TICK, EXPIRY_WHEEL_SIZE,
+			new SessionExpiryWheel.Expiry() {
+				@Override
+				public long deadline(String sid) {
+					HttpSession session = map.get(sid);
+					return session == null ? -1 : deadlineOf(session);
+				}
+
+				@Override
+				public void expire(String sid) {
+					HttpSession session = map.get(sid);
+					if (session != null) {
+						expireSession(sid, session);
+					}
+				}
+			});
+
+	@Override
 	public void setServletContext(ServletContext servletContext) {
 		this.servletContext = servletContext;
 		this.sessionCookieConfig = servletContext.getSessionCookieConfig();
 		this.maxAge = sessionCookieConfig.getMaxAge();
+		this.listeners = SerializedSessionManager.sessionListeners(servletContext);
+		expiryWheel.start();
+	}
+
+	@Override
+	public void setMaxInactiveInterval(int maxInactiveInterval) {
+		this.maxInactiveInterval = maxInactiveInterval;
 	}
 
 	@Override
@@ -33,42 +72,83 @@ public enum LocalSessionManager implements SessionManager {
 
 	@Override
 	public void put(HttpSession session) {
-		map.put(session.getId(), session);
+		if (map.put(session.getId(), session) == null) {
+			expiryWheel.schedule(session.getId(), deadlineOf(session));
+		}
 	}
 
 	@Override
 	public void remove(String sid) {
-		map.remove(sid);
+		HttpSession session = map.remove(sid);
+		if (session != null) {
+			fireDestroyed(session);
+		}
 	}
-	
+
 	@Override
 	public HttpSession build(boolean isNew) {
-		String sid = RandomUtil.getRandomString();
-		while(null != map.get(sid)){
-			sid = RandomUtil.getRandomString();
+		HttpSessionImpl session;
+		do {
+			session = new HttpSessionImpl(servletContext, RandomUtil.getRandomString());
+		} while (map.putIfAbsent(session.getId(), session) != null);
+		session.setMaxInactiveInterval(maxInactiveInterval);
+		expiryWheel.schedule(session.getId(), session.getExpiryTime());
+
+		HttpSessionEvent event = new HttpSessionEvent(session);
+		for (HttpSessionListener listener : listeners) {
+			listener.sessionCreated(event);
 		}
-		HttpSession session = new HttpSessionImpl(servletContext, sid);
-		map.put(sid, session);
 		return session;
 	}
-	
+
 	/**
-	 * 清除失效的Session
-	 * 需要重新进行设计，避免遍历的数量过大
-	 * 采用3个map，根据失效时间间隔轮换
+	 * 立即处理已到期的Session
+	 * 超时由时间轮在后台按到期的槽处理，访问Session时不需要移动，不再遍历全部Session
 	 */
 	public void cleanInvalidation(){
-		Iterator<Entry<String, HttpSession>> iterator = map.entrySet().iterator();
-		long currTime = System.currentTimeMillis();
-		while(iterator.hasNext()){
-			Entry<String, HttpSession> entry = iterator.next();
-			HttpSession session = entry.getValue();
-			long lastTime = session.getLastAccessedTime();
-			if(currTime - lastTime > session.getMaxInactiveInterval()){
+		expiryWheel.advance(System.currentTimeMillis());
+	}
+
+	/**
+	 * 超时的Session先通知listener再失效，已被主动失效的Session移除后通知
+	 */
+	private void expireSession(String sid, HttpSession session) {
+		if (!map.remove(sid, session)) {
+			return;
+		}
+		boolean valid = !(session instanceof HttpSessionImpl) || ((HttpSessionImpl) session).isValid();
+		fireDestroyed(session);
+		if (valid) {
+			try {
 				session.invalidate();
-				iterator.remove();
+			} catch (IllegalStateException e) {
+				// 已被主动失效
 			}
 		}
 	}
 
+	private void fireDestroyed(HttpSession session) {
+		HttpSessionEvent event = new HttpSessionEvent(session);
+		for (HttpSessionListener listener : listeners) {
+			try {
+				listener.sessionDestroyed(event);
+			} catch (RuntimeException e) {
+				logger.error("HttpSessionListener failed on session " + session.getId(), e);
+			}
+		}
+	}
+
+	private static long deadlineOf(HttpSession session) {
+		if (session instanceof HttpSessionImpl) {
+			HttpSessionImpl impl = (HttpSessionImpl) session;
+			return impl.isValid() ? impl.getExpiryTime() : 0;
+		}
+		try {
+			int interval = session.getMaxInactiveInterval();
+			return interval <= 0 ? Long.MAX_VALUE : session.getLastAccessedTime() + interval * 1000L;
+		} catch (IllegalStateException e) {
+			return 0;
+		}
+	}
+
 }
@@ -0,0 +1,139 @@
+package com.yjz.microweb.session;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * <b>进程内的Session复制传输</b><br>
+ * 1. 同一进程内同名分组的节点互为对端，用于单机测试与演示复制行为，不跨进程；<br>
+ * 2. 每个节点由单独的线程按顺序投递收到的消息，与网络传输一样是异步的；<br>
+ * 3. 消息以字节数组投递，接收方与发送方不共享对象。
+ */
+public class LoopbackReplicationTransport implements ReplicationTransport
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackReplicationTransport.class);
+
+    private static final String DEFAULT_GROUP = "default";
+
+    private static final ConcurrentHashMap<String, CopyOnWriteArrayList<LoopbackReplicationTransport>> GROUPS =
+        new ConcurrentHashMap<String, CopyOnWriteArrayList<LoopbackReplicationTransport>>();
+
+    private final String group;
+
+    private volatile Receiver receiver;
+
+    private ExecutorService executor;
+
+    public LoopbackReplicationTransport()
+    {
+        this(DEFAULT_GROUP);
+    }
+
+    public LoopbackReplicationTransport(String group)
+    {
+        this.group = group;
+    }
+
+    @Override
+    public synchronized void start(String nodeId, Receiver receiver)
+    {
+        if (executor != null)
+        {
+            return;
+        }
+        this.receiver = receiver;
+        this.executor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("microweb-loopback-" + nodeId, true));
+        GROUPS.computeIfAbsent(group, g -> new CopyOnWriteArrayList<LoopbackReplicationTransport>()).add(this);
+    }
+
+    @Override
+    public void broadcast(byte[] message)
+    {
+        for (LoopbackReplicationTransport peer : members())
+        {
+            if (peer != this)
+            {
+                peer.deliver(message);
+            }
+        }
+    }
+
+    @Override
+    public byte[] fetch(String sid)
+    {
+        for (LoopbackReplicationTransport peer : members())
+        {
+            Receiver peerReceiver = peer.receiver;
+            if (peer != this && peerReceiver != null)
+            {
+                byte[] snapshot = peerReceiver.snapshot(sid);
+                if (snapshot != null)
+                {
+                    return snapshot;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        CopyOnWriteArrayList<LoopbackReplicationTransport> members = GROUPS.get(group);
+        if (members != null)
+        {
+            members.remove(this);
+        }
+        if (executor != null)
+        {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private Iterable<LoopbackReplicationTransport> members()
+    {
+        CopyOnWriteArrayList<LoopbackReplicationTransport> members = GROUPS.get(group);
+        return members != null ? members : new CopyOnWriteArrayList<LoopbackReplicationTransport>();
+    }
+
+    private synchronized void deliver(final byte[] message)
+    {
+        if (executor == null)
+        {
+            return;
+        }
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        receiver.receive(message);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        logger.error("Failed to apply replicated sessions.", e);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // 节点已停止
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.yjz.microweb.session;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * <b>堆外Session存储</b><br>
+ * 1. 每个Session的记录保存在池化的堆外缓冲区中，堆上只保留id到缓冲区的索引；<br>
+ * 2. 对同一Session的读写、替换与释放都在ConcurrentHashMap对该id的原子操作内完成，缓冲区不会在读取过程中被释放；<br>
+ * 3. 记录只在进程内有效，重启后丢失，需要保留时使用{@link DiskSessionManager}。
+ */
+public class OffHeapSessionManager extends SerializedSessionManager
+{
+
+    private final ConcurrentHashMap<String, ByteBuf> records = new ConcurrentHashMap<String, ByteBuf>();
+
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    @Override
+    protected byte[] load(String sid)
+    {
+        final byte[][] result = new byte[1][];
+        records.computeIfPresent(sid, (id, buf) -> {
+            byte[] record = new byte[buf.readableBytes()];
+            buf.getBytes(buf.readerIndex(), record);
+            result[0] = record;
+            return buf;
+        });
+        return result[0];
+    }
+
+    @Override
+    protected boolean store(String sid, byte[] record, boolean create)
+    {
+        final boolean[] stored = new boolean[1];
+        records.compute(sid, (id, old) -> {
+            if (old == null && !create)
+            {
+                return null;
+            }
+            ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(record.length, record.length);
+            buf.writeBytes(record);
+            residentBytes.addAndGet(record.length);
+            if (old != null)
+            {
+                residentBytes.addAndGet(-old.readableBytes());
+                old.release();
+            }
+            stored[0] = true;
+            return buf;
+        });
+        return stored[0];
+    }
+
+    @Override
+    protected boolean touch(String sid, long lastAccessedTime)
+    {
+        return records.computeIfPresent(sid, (id, buf) -> {
+            buf.setLong(buf.readerIndex() + LAST_ACCESSED_OFFSET, lastAccessedTime);
+            return buf;
+        }) != null;
+    }
+
+    @Override
+    protected long deadline(String sid)
+    {
+        final long[] deadline = {-1};
+        records.computeIfPresent(sid, (id, buf) -> {
+            deadline[0] = deadline(buf.nioBuffer(), 0);
+            return buf;
+        });
+        return deadline[0];
+    }
+
+    @Override
+    protected boolean delete(String sid)
+    {
+        final boolean[] deleted = new boolean[1];
+        records.computeIfPresent(sid, (id, buf) -> {
+            residentBytes.addAndGet(-buf.readableBytes());
+            buf.release();
+            deleted[0] = true;
+            return null;
+        });
+        return deleted[0];
+    }
+
+    @Override
+    protected boolean contains(String sid)
+    {
+        return records.containsKey(sid);
+    }
+
+    /**
+     * 当前Session数
+     */
+    public int size()
+    {
+        return records.size();
+    }
+
+    /**
+     * 记录占用的堆外内存(字节)
+     */
+    public long residentBytes()
+    {
+        return residentBytes.get();
+    }
+
+}
@@ -0,0 +1,740 @@
+package com.yjz.microweb.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yjz.microweb.util.RandomUtil;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * <b>集群复制的Session管理</b><br>
+ * 1. 每个节点在堆内保留Session的副本(近端缓存)，读取不经过网络；本节点没有的Session向其他节点查询快照后加入缓存，
+ * 因此负载均衡不需要会话粘滞；<br>
+ * 2. 请求结束时{@link #commit(HttpSession)}只记录被修改或删除的属性，属性值在提交时序列化；
+ * 同一Session的待发送修改按id合并，由后台线程按间隔或达到批量大小时批量广播，复制是异步的；<br>
+ * 3. 最后修改Session的节点为其所有者，负责超时处理与HttpSessionListener通知，其他节点的副本在超时后再等待一段时间静默删除；<br>
+ * 4. 每次修改递增版本号，其他节点只应用更新的版本，版本相同时按所有者id决定，各节点最终一致；
+ * 发现漏掉了中间的修改时丢弃副本，下次访问时重新查询；<br>
+ * 5. 不同节点并发修改同一Session时以版本胜出的修改为准，属性对象被原地修改时需要重新调用setAttribute才会复制。
+ */
+public class ReplicatedSessionManager implements SessionManager, ReplicationTransport.Receiver
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicatedSessionManager.class);
+
+    static final byte UPDATE = 1;
+
+    static final byte TOUCH = 2;
+
+    static final byte REMOVE = 3;
+
+    private static final long EXPIRY_TICK = 1000;
+
+    private static final int EXPIRY_WHEEL_SIZE = 512;
+
+    private final String nodeId;
+
+    private final ReplicationTransport transport;
+
+    private final long flushInterval;
+
+    private final int batchSize;
+
+    private ServletContext servletContext;
+
+    private volatile int maxInactiveInterval = 1800;
+
+    private volatile HttpSessionListener[] listeners = new HttpSessionListener[0];
+
+    private final ConcurrentHashMap<String, Replica> replicas = new ConcurrentHashMap<String, Replica>();
+
+    /** 待发送的修改，同一Session的修改合并为一条 */
+    private final ConcurrentHashMap<String, Delta> pending = new ConcurrentHashMap<String, Delta>();
+
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+    private ScheduledExecutorService flusher;
+
+    private final Runnable flushTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            flush();
+        }
+    };
+
+    private final SessionExpiryWheel expiryWheel =
+        new SessionExpiryWheel(EXPIRY_TICK, EXPIRY_WHEEL_SIZE, new SessionExpiryWheel.Expiry()
+        {
+            @Override
+            public long deadline(String sid)
+            {
+                Replica replica = replicas.get(sid);
+                return replica == null ? -1 : deadlineOf(replica);
+            }
+
+            @Override
+            public void expire(String sid)
+            {
+                Replica replica = replicas.get(sid);
+                if (replica != null)
+                {
+                    expireReplica(sid, replica);
+                }
+            }
+        });
+
+    /**
+     * @param nodeId 本节点的id，集群内唯一
+     * @param transport 节点间传输
+     * @param flushInterval 批量发送的间隔(毫秒)
+     * @param batchSize 待发送的Session数达到此值时立即发送
+     */
+    public ReplicatedSessionManager(String nodeId, ReplicationTransport transport, long flushInterval, int batchSize)
+    {
+        this.nodeId = nodeId;
+        this.transport = transport;
+        this.flushInterval = Math.max(flushInterval, 1);
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    @Override
+    public synchronized void setServletContext(ServletContext servletContext)
+    {
+        this.servletContext = servletContext;
+        this.listeners = SerializedSessionManager.sessionListeners(servletContext);
+        expiryWheel.start();
+        if (flusher == null)
+        {
+            flusher = Executors.newSingleThreadScheduledExecutor(
+                new DefaultThreadFactory("microweb-session-replication", true));
+            flusher.scheduleWithFixedDelay(flushTask, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+            transport.start(nodeId, this);
+        }
+    }
+
+    @Override
+    public void setMaxInactiveInterval(int maxInactiveInterval)
+    {
+        this.maxInactiveInterval = maxInactiveInterval;
+    }
+
+    /**
+     * 发送剩余的修改后离开集群
+     */
+    public synchronized void stop()
+    {
+        if (flusher != null)
+        {
+            flusher.shutdown();
+            flusher = null;
+            flush();
+            transport.stop();
+        }
+        expiryWheel.stop();
+    }
+
+    @Override
+    public HttpSession get(String sid)
+    {
+        Replica replica = replicas.get(sid);
+        if (replica == null)
+        {
+            byte[] snapshot = transport.fetch(sid);
+            if (snapshot == null)
+            {
+                return null;
+            }
+            receive(snapshot);
+            replica = replicas.get(sid);
+            if (replica == null)
+            {
+                return null;
+            }
+        }
+        if (deadlineOf(replica) <= System.currentTimeMillis())
+        {
+            // 已超时但时间轮尚未处理
+            expireReplica(sid, replica);
+            return null;
+        }
+        return replica.session;
+    }
+
+    @Override
+    public void put(HttpSession session)
+    {
+        if (!(session instanceof HttpSessionImpl))
+        {
+            throw new IllegalArgumentException("Unsupported session type " + session.getClass().getName());
+        }
+        HttpSessionImpl impl = (HttpSessionImpl)session;
+        Replica replica = new Replica(impl, nodeId, 1);
+        if (replicas.putIfAbsent(impl.getId(), replica) == null)
+        {
+            expiryWheel.schedule(impl.getId(), impl.getExpiryTime());
+            replicate(replica);
+        }
+    }
+
+    @Override
+    public void remove(String sid)
+    {
+        Replica replica = replicas.remove(sid);
+        if (replica != null)
+        {
+            fireDestroyed(replica.session);
+            enqueue(new Delta(sid, REMOVE, nodeId, replica.version, replica.version, 0, 0, 0, false, null));
+        }
+    }
+
+    @Override
+    public HttpSession build(boolean isNew)
+    {
+        HttpSessionImpl session;
+        Replica replica;
+        do
+        {
+            session = new HttpSessionImpl(servletContext, RandomUtil.getRandomString());
+            session.setMaxInactiveInterval(maxInactiveInterval);
+            replica = new Replica(session, nodeId, 1);
+        } while (replicas.putIfAbsent(session.getId(), replica) != null);
+        expiryWheel.schedule(session.getId(), session.getExpiryTime());
+        replicate(replica);
+
+        HttpSessionEvent event = new HttpSessionEvent(session);
+        for (HttpSessionListener listener : listeners)
+        {
+            listener.sessionCreated(event);
+        }
+        return session;
+    }
+
+    /**
+     * 已失效的Session删除，修改过的成为本节点所有并发送修改的属性，否则只发送最后访问时间
+     */
+    @Override
+    public void commit(HttpSession session)
+    {
+        if (!(session instanceof HttpSessionImpl))
+        {
+            return;
+        }
+        HttpSessionImpl impl = (HttpSessionImpl)session;
+        String sid = impl.getId();
+        Replica replica = replicas.get(sid);
+        if (replica == null || replica.session != impl)
+        {
+            return;
+        }
+        Delta delta;
+        try
+        {
+            synchronized (replica)
+            {
+                Set<String> changed = impl.drainChangedAttributes();
+                if (!impl.clearDirty() && changed.isEmpty())
+                {
+                    delta = new Delta(sid, TOUCH, replica.owner, replica.version, replica.version,
+                        impl.getCreationTime(), impl.getLastAccessedTime(), impl.getMaxInactiveInterval(), false, null);
+                }
+                else
+                {
+                    long base = replica.version;
+                    replica.version = base + 1;
+                    replica.owner = nodeId;
+                    delta = snapshot(replica, base, changed);
+                }
+            }
+        }
+        catch (IllegalStateException e)
+        {
+            // 已失效
+            if (replicas.remove(sid, replica))
+            {
+                fireDestroyed(impl);
+                enqueue(new Delta(sid, REMOVE, nodeId, replica.version, replica.version, 0, 0, 0, false, null));
+            }
+            return;
+        }
+        if (replicas.get(sid) == replica)
+        {
+            // 提交过程中被删除或超时的Session不再发送，合并时删除同样优先
+            enqueue(delta);
+        }
+    }
+
+    private void replicate(Replica replica)
+    {
+        synchronized (replica)
+        {
+            replica.session.drainChangedAttributes();
+            replica.session.clearDirty();
+            enqueue(snapshot(replica, 0, null));
+        }
+    }
+
+    /**
+     * 持replica锁调用，changed为null时生成完整快照；Session已失效时抛出IllegalStateException
+     */
+    private Delta snapshot(Replica replica, long base, Set<String> changed)
+    {
+        HttpSessionImpl session = replica.session;
+        Map<String, Object> attributes = session.getAttributeMap();
+        Map<String, byte[]> values = new HashMap<String, byte[]>();
+        for (String name : changed != null ? changed : attributes.keySet())
+        {
+            Object value = attributes.get(name);
+            if (value == null)
+            {
+                values.put(name, null);
+                continue;
+            }
+            byte[] bytes = SessionCodec.serialize(session.getId(), name, value);
+            if (bytes != null)
+            {
+                values.put(name, bytes);
+            }
+        }
+        return new Delta(session.getId(), UPDATE, replica.owner, base, replica.version, session.getCreationTime(),
+            session.getLastAccessedTime(), session.getMaxInactiveInterval(), changed == null, values);
+    }
+
+    private void enqueue(Delta delta)
+    {
+        pending.merge(delta.sid, delta, Delta::merge);
+        if (pending.size() >= batchSize && flushQueued.compareAndSet(false, true))
+        {
+            ScheduledExecutorService executor = flusher;
+            if (executor != null)
+            {
+                executor.execute(flushTask);
+            }
+        }
+    }
+
+    /**
+     * 发送待发送的修改，每条消息最多包含batchSize个Session
+     */
+    private void flush()
+    {
+        flushQueued.set(false);
+        List<Delta> batch = new ArrayList<Delta>(Math.min(pending.size(), batchSize));
+        Iterator<String> iterator = pending.keySet().iterator();
+        while (iterator.hasNext())
+        {
+            Delta delta = pending.remove(iterator.next());
+            if (delta != null)
+            {
+                batch.add(delta);
+            }
+            if (batch.size() == batchSize || (!iterator.hasNext() && !batch.isEmpty()))
+            {
+                try
+                {
+                    transport.broadcast(encode(batch));
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("Failed to replicate " + batch.size() + " sessions.", e);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    @Override
+    public void receive(byte[] message)
+    {
+        for (Delta delta : decode(message))
+        {
+            apply(delta);
+        }
+    }
+
+    @Override
+    public byte[] snapshot(String sid)
+    {
+        Replica replica = replicas.get(sid);
+        if (replica == null || deadlineOf(replica) <= System.currentTimeMillis())
+        {
+            return null;
+        }
+        try
+        {
+            synchronized (replica)
+            {
+                return encode(Collections.singletonList(snapshot(replica, 0, null)));
+            }
+        }
+        catch (IllegalStateException e)
+        {
+            return null;
+        }
+    }
+
+    private void apply(Delta delta)
+    {
+        Replica replica = replicas.get(delta.sid);
+        if (delta.type == REMOVE)
+        {
+            if (replica != null && delta.version >= replica.version && replicas.remove(delta.sid, replica))
+            {
+                invalidate(replica.session);
+            }
+            return;
+        }
+        if (replica == null)
+        {
+            if (delta.type != UPDATE || !delta.full)
+            {
+                // 本节点没有副本，访问时再查询
+                return;
+            }
+            HttpSessionImpl session = new HttpSessionImpl(servletContext, delta.sid, delta.creationTime,
+                delta.lastAccessedTime, delta.maxInactiveInterval, decodeAttributes(delta));
+            replica = new Replica(session, delta.owner, delta.version);
+            Replica existing = replicas.putIfAbsent(delta.sid, replica);
+            if (existing == null)
+            {
+                expiryWheel.schedule(delta.sid, deadlineOf(replica));
+                return;
+            }
+            replica = existing;
+        }
+        synchronized (replica)
+        {
+            if (delta.type == TOUCH || !newer(delta, replica))
+            {
+                replica.session.touchReplicated(delta.lastAccessedTime);
+            }
+            else if (!delta.full && delta.base != replica.version)
+            {
+                // 漏掉了中间的修改，丢弃副本
+                replicas.remove(delta.sid, replica);
+            }
+            else
+            {
+                Map<String, Object> changed = decodeAttributes(delta);
+                Set<String> removed = new HashSet<String>();
+                for (Map.Entry<String, byte[]> value : delta.values.entrySet())
+                {
+                    if (value.getValue() == null)
+                    {
+                        removed.add(value.getKey());
+                    }
+                }
+                replica.session.applyReplicated(delta.lastAccessedTime, delta.maxInactiveInterval, changed, removed,
+                    delta.full);
+                replica.owner = delta.owner;
+                replica.version = delta.version;
+            }
+        }
+    }
+
+    private boolean newer(Delta delta, Replica replica)
+    {
+        return delta.version > replica.version
+            || (delta.version == replica.version && delta.owner.compareTo(replica.owner) > 0);
+    }
+
+    /**
+     * 所有者按Session的超时时刻处理，其他节点多等待两个发送间隔，避免所有者的访问时间尚未送达时提前删除
+     */
+    private long deadlineOf(Replica replica)
+    {
+        HttpSessionImpl session = replica.session;
+        if (!session.isValid())
+        {
+            return 0;
+        }
+        long deadline = session.getExpiryTime();
+        if (deadline == Long.MAX_VALUE || nodeId.equals(replica.owner))
+        {
+            return deadline;
+        }
+        return deadline + flushInterval * 2;
+    }
+
+    /**
+     * 所有者通知listener并通知其他节点删除，其他节点静默删除
+     */
+    private void expireReplica(String sid, Replica replica)
+    {
+        if (!replicas.remove(sid, replica))
+        {
+            return;
+        }
+        if (nodeId.equals(replica.owner))
+        {
+            fireDestroyed(replica.session);
+            enqueue(new Delta(sid, REMOVE, nodeId, replica.version, replica.version, 0, 0, 0, false, null));
+        }
+        invalidate(replica.session);
+    }
+
+    private static void invalidate(HttpSessionImpl session)
+    {
+        try
+        {
+            session.invalidate();
+        }
+        catch (IllegalStateException e)
+        {
+            // 已被主动失效
+        }
+    }
+
+    private void fireDestroyed(HttpSession session)
+    {
+        HttpSessionEvent event = new HttpSessionEvent(session);
+        for (HttpSessionListener listener : listeners)
+        {
+            try
+            {
+                listener.sessionDestroyed(event);
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("HttpSessionListener failed on session " + session.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * 当前节点持有的Session数
+     */
+    public int size()
+    {
+        return replicas.size();
+    }
+
+    /**
+     * 消息为Session个数，以及每个Session的id、类型、所有者、基础版本、版本、创建时间、最后访问时间、超时时间、是否完整，
+     * 之后为属性个数与每个属性的名称、值的长度(-1表示删除)与序列化后的值
+     */
+    private static byte[] encode(List<Delta> batch)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeInt(batch.size());
+            for (Delta delta : batch)
+            {
+                out.writeUTF(delta.sid);
+                out.writeByte(delta.type);
+                out.writeUTF(delta.owner);
+                out.writeLong(delta.base);
+                out.writeLong(delta.version);
+                out.writeLong(delta.creationTime);
+                out.writeLong(delta.lastAccessedTime);
+                out.writeInt(delta.maxInactiveInterval);
+                out.writeBoolean(delta.full);
+                Map<String, byte[]> values = delta.values != null ? delta.values : Collections.<String, byte[]> emptyMap();
+                out.writeInt(values.size());
+                for (Map.Entry<String, byte[]> value : values.entrySet())
+                {
+                    out.writeUTF(value.getKey());
+                    if (value.getValue() == null)
+                    {
+                        out.writeInt(-1);
+                    }
+                    else
+                    {
+                        out.writeInt(value.getValue().length);
+                        out.write(value.getValue());
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // ByteArrayOutputStream不会抛出IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Delta> decode(byte[] message)
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+        List<Delta> batch = new ArrayList<Delta>();
+        try
+        {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                String sid = in.readUTF();
+                byte type = in.readByte();
+                String owner = in.readUTF();
+                long base = in.readLong();
+                long version = in.readLong();
+                long creationTime = in.readLong();
+                long lastAccessedTime = in.readLong();
+                int maxInactiveInterval = in.readInt();
+                boolean full = in.readBoolean();
+                int size = in.readInt();
+                Map<String, byte[]> values = new HashMap<String, byte[]>();
+                for (int j = 0; j < size; j++)
+                {
+                    String name = in.readUTF();
+                    int length = in.readInt();
+                    byte[] value = null;
+                    if (length >= 0)
+                    {
+                        value = new byte[length];
+                        in.readFully(value);
+                    }
+                    values.put(name, value);
+                }
+                batch.add(new Delta(sid, type, owner, base, version, creationTime, lastAccessedTime,
+                    maxInactiveInterval, full, values));
+            }
+        }
+        catch (IOException e)
+        {
+            logger.error("Replicated session message is corrupted.", e);
+        }
+        return batch;
+    }
+
+    private static Map<String, Object> decodeAttributes(Delta delta)
+    {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        for (Map.Entry<String, byte[]> value : delta.values.entrySet())
+        {
+            if (value.getValue() != null)
+            {
+                Object attribute = SessionCodec.deserialize(delta.sid, value.getKey(), value.getValue());
+                if (attribute != null)
+                {
+                    attributes.put(value.getKey(), attribute);
+                }
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * 本节点的副本，owner与version由副本的锁保护
+     */
+    private static final class Replica
+    {
+        private final HttpSessionImpl session;
+
+        private volatile String owner;
+
+        private volatile long version;
+
+        Replica(HttpSessionImpl session, String owner, long version)
+        {
+            this.session = session;
+            this.owner = owner;
+            this.version = version;
+        }
+    }
+
+    /**
+     * 一个Session待发送或收到的修改，values中值为null的属性表示删除
+     */
+    static final class Delta
+    {
+        final String sid;
+
+        final byte type;
+
+        final String owner;
+
+        /** 修改前的版本，用于发现漏掉的修改 */
+        final long base;
+
+        final long version;
+
+        final long creationTime;
+
+        final long lastAccessedTime;
+
+        final int maxInactiveInterval;
+
+        final boolean full;
+
+        final Map<String, byte[]> values;
+
+        Delta(String sid, byte type, String owner, long base, long version, long creationTime, long lastAccessedTime,
+            int maxInactiveInterval, boolean full, Map<String, byte[]> values)
+        {
+            this.sid = sid;
+            this.type = type;
+            this.owner = owner;
+            this.base = base;
+            this.version = version;
+            this.creationTime = creationTime;
+            this.lastAccessedTime = lastAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.full = full;
+            this.values = values;
+        }
+
+        /**
+         * 合并同一Session先后两次修改：删除覆盖一切，只有版本更高的完整快照可以替换待发送的删除；
+         * 访问时间并入修改，两次修改的属性合并
+         */
+        static Delta merge(Delta older, Delta newer)
+        {
+            if (newer.type == REMOVE)
+            {
+                return newer;
+            }
+            if (older.type == REMOVE)
+            {
+                return newer.type == UPDATE && newer.full && newer.version > older.version ? newer : older;
+            }
+            long lastAccessedTime = Math.max(older.lastAccessedTime, newer.lastAccessedTime);
+            if (newer.type == TOUCH)
+            {
+                return new Delta(older.sid, older.type, older.owner, older.base, older.version, older.creationTime,
+                    lastAccessedTime, older.maxInactiveInterval, older.full, older.values);
+            }
+            if (older.type == TOUCH || newer.full)
+            {
+                return newer;
+            }
+            Map<String, byte[]> values = new HashMap<String, byte[]>(older.values);
+            values.putAll(newer.values);
+            if (older.full)
+            {
+                values.values().removeIf(value -> value == null);
+            }
+            return new Delta(newer.sid, UPDATE, newer.owner, older.base, newer.version, newer.creationTime,
+                lastAccessedTime, newer.maxInactiveInterval, older.full, values);
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.yjz.microweb.session;
+
+/**
+ * <b>Session复制的节点间传输</b><br>
+ * 1. 消息为不透明的字节数组，由{@link ReplicatedSessionManager}编码，传输只负责投递到同组的其他节点；<br>
+ * 2. 广播为异步的，同一发送方的消息应按发送顺序投递，不投递给发送方自己；<br>
+ * 3. 实现需要有无参构造方法，由配置项session.replication.transport指定类名。
+ */
+public interface ReplicationTransport
+{
+
+    /**
+     * 接收其他节点的消息
+     */
+    interface Receiver
+    {
+        /**
+         * 收到其他节点广播的消息
+         */
+        void receive(byte[] message);
+
+        /**
+         * 本节点持有的Session快照，不存在时返回null
+         */
+        byte[] snapshot(String sid);
+    }
+
+    /**
+     * 加入集群
+     *
+     * @param nodeId 本节点的id，集群内唯一
+     */
+    void start(String nodeId, Receiver receiver);
+
+    /**
+     * 异步发送给其他全部节点
+     */
+    void broadcast(byte[] message);
+
+    /**
+     * 同步向其他节点查询Session快照，均不存在时返回null
+     */
+    byte[] fetch(String sid);
+
+    /**
+     * 离开集群
+     */
+    void stop();
+
+}
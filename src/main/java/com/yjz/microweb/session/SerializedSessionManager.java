@@ -0,0 +1,359 @@
+package com.yjz.microweb.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yjz.microweb.context.MicrowebServletContext;
+import com.yjz.microweb.util.RandomUtil;
+
+/**
+ * <b>序列化存储的Session管理</b><br>
+ * Session不常驻堆内存，由子类以字节形式保存在堆外或磁盘中：<br>
+ * 1. 每次请求从存储中反序列化出独立的{@link HttpSessionImpl}，请求结束时由{@link #commit(HttpSession)}写回，
+ * 并发请求修改同一Session时以最后提交的为准；<br>
+ * 2. 记录以固定的头部开始：创建时间、最后访问时间、超时时间(秒)，之后为属性；只更新访问时间时原地修改头部，不重新序列化；<br>
+ * 3. 属性值以Java序列化保存，不可序列化的属性不保存并记录警告；<br>
+ * 4. 超时由{@link SessionExpiryWheel}处理，到期时只读取头部判断，不反序列化属性。
+ */
+public abstract class SerializedSessionManager implements SessionManager
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(SerializedSessionManager.class);
+
+    /** 记录头部：创建时间、最后访问时间、超时时间 */
+    protected static final int HEADER_SIZE = 20;
+
+    protected static final int LAST_ACCESSED_OFFSET = 8;
+
+    protected static final int MAX_INACTIVE_OFFSET = 16;
+
+    private static final long EXPIRY_TICK = 1000;
+
+    private static final int EXPIRY_WHEEL_SIZE = 512;
+
+    private ServletContext servletContext;
+
+    private volatile int maxInactiveInterval = 1800;
+
+    private volatile HttpSessionListener[] listeners = new HttpSessionListener[0];
+
+    private final SessionExpiryWheel expiryWheel =
+        new SessionExpiryWheel(EXPIRY_TICK, EXPIRY_WHEEL_SIZE, new SessionExpiryWheel.Expiry()
+        {
+            @Override
+            public long deadline(String sid)
+            {
+                return SerializedSessionManager.this.deadline(sid);
+            }
+
+            @Override
+            public void expire(String sid)
+            {
+                expireSession(sid);
+            }
+        });
+
+    /**
+     * 读取记录，不存在时返回null
+     */
+    protected abstract byte[] load(String sid);
+
+    /**
+     * 写入记录
+     *
+     * @param create 为false时只替换已有的记录，Session已被删除时不写入
+     * @return 是否写入
+     */
+    protected abstract boolean store(String sid, byte[] record, boolean create);
+
+    /**
+     * 原地更新最后访问时间，记录不存在时返回false
+     */
+    protected abstract boolean touch(String sid, long lastAccessedTime);
+
+    /**
+     * 超时时刻(毫秒)，记录不存在时返回-1，由{@link #deadline(ByteBuffer, int)}按头部计算
+     */
+    protected abstract long deadline(String sid);
+
+    /**
+     * 删除记录，返回记录是否存在
+     */
+    protected abstract boolean delete(String sid);
+
+    protected abstract boolean contains(String sid);
+
+    @Override
+    public void setServletContext(ServletContext servletContext)
+    {
+        this.servletContext = servletContext;
+        this.listeners = sessionListeners(servletContext);
+        expiryWheel.start();
+    }
+
+    @Override
+    public void setMaxInactiveInterval(int maxInactiveInterval)
+    {
+        this.maxInactiveInterval = maxInactiveInterval;
+    }
+
+    @Override
+    public HttpSession get(String sid)
+    {
+        byte[] record = load(sid);
+        if (record == null)
+        {
+            return null;
+        }
+        HttpSessionImpl session = decode(sid, record);
+        if (session == null)
+        {
+            delete(sid);
+            return null;
+        }
+        if (session.getExpiryTime() <= System.currentTimeMillis())
+        {
+            // 已超时但时间轮尚未处理
+            expireSession(sid);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void put(HttpSession session)
+    {
+        if (!(session instanceof HttpSessionImpl))
+        {
+            throw new IllegalArgumentException("Unsupported session type " + session.getClass().getName());
+        }
+        HttpSessionImpl impl = (HttpSessionImpl)session;
+        boolean created = !contains(impl.getId());
+        impl.clearDirty();
+        store(impl.getId(), encode(impl), true);
+        if (created)
+        {
+            expiryWheel.schedule(impl.getId(), impl.getExpiryTime());
+        }
+    }
+
+    @Override
+    public void remove(String sid)
+    {
+        HttpSession session = listeners.length > 0 ? get(sid) : null;
+        if (delete(sid) && session != null)
+        {
+            fireDestroyed(session);
+        }
+    }
+
+    @Override
+    public HttpSession build(boolean isNew)
+    {
+        String sid = RandomUtil.getRandomString();
+        while (contains(sid))
+        {
+            sid = RandomUtil.getRandomString();
+        }
+        HttpSessionImpl session = new HttpSessionImpl(servletContext, sid);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        session.clearDirty();
+        store(sid, encode(session), true);
+        expiryWheel.schedule(sid, session.getExpiryTime());
+
+        HttpSessionEvent event = new HttpSessionEvent(session);
+        for (HttpSessionListener listener : listeners)
+        {
+            listener.sessionCreated(event);
+        }
+        return session;
+    }
+
+    /**
+     * 已失效的Session删除，修改过的重新写入，否则只更新最后访问时间
+     */
+    @Override
+    public void commit(HttpSession session)
+    {
+        if (!(session instanceof HttpSessionImpl))
+        {
+            return;
+        }
+        HttpSessionImpl impl = (HttpSessionImpl)session;
+        if (!impl.isValid())
+        {
+            if (delete(impl.getId()))
+            {
+                fireDestroyed(impl);
+            }
+        }
+        else if (impl.clearDirty())
+        {
+            store(impl.getId(), encode(impl), false);
+        }
+        else
+        {
+            touch(impl.getId(), impl.getLastAccessedTime());
+        }
+    }
+
+    /**
+     * 从存储中恢复的Session加入时间轮
+     */
+    protected void scheduleExpiry(String sid, long deadline)
+    {
+        expiryWheel.schedule(sid, deadline);
+    }
+
+    /**
+     * 删除超时的Session，删除成功时先通知listener再使其失效
+     */
+    private void expireSession(String sid)
+    {
+        HttpSession session = null;
+        if (listeners.length > 0)
+        {
+            byte[] record = load(sid);
+            session = record == null ? null : decode(sid, record);
+        }
+        if (delete(sid) && session != null)
+        {
+            fireDestroyed(session);
+            session.invalidate();
+        }
+    }
+
+    private void fireDestroyed(HttpSession session)
+    {
+        HttpSessionEvent event = new HttpSessionEvent(session);
+        for (HttpSessionListener listener : listeners)
+        {
+            try
+            {
+                listener.sessionDestroyed(event);
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("HttpSessionListener failed on session " + session.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * ServletContext中注册的HttpSessionListener
+     */
+    static HttpSessionListener[] sessionListeners(ServletContext servletContext)
+    {
+        List<HttpSessionListener> sessionListeners = new ArrayList<HttpSessionListener>();
+        if (servletContext instanceof MicrowebServletContext)
+        {
+            for (EventListener listener : ((MicrowebServletContext)servletContext).getRegisteredListeners())
+            {
+                if (listener instanceof HttpSessionListener)
+                {
+                    sessionListeners.add((HttpSessionListener)listener);
+                }
+            }
+        }
+        return sessionListeners.toArray(new HttpSessionListener[sessionListeners.size()]);
+    }
+
+    /**
+     * 按记录头部计算超时时刻
+     */
+    protected static long deadline(ByteBuffer record, int offset)
+    {
+        int interval = record.getInt(offset + MAX_INACTIVE_OFFSET);
+        return interval <= 0 ? Long.MAX_VALUE : record.getLong(offset + LAST_ACCESSED_OFFSET) + interval * 1000L;
+    }
+
+    /**
+     * 头部之后依次为属性个数，以及每个属性的名称、值的长度与序列化后的值
+     */
+    protected byte[] encode(HttpSessionImpl session)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeLong(session.getCreationTime());
+            out.writeLong(session.getLastAccessedTime());
+            out.writeInt(session.getMaxInactiveInterval());
+
+            Map<String, byte[]> values = new HashMap<String, byte[]>();
+            for (Map.Entry<String, Object> attribute : session.getAttributeMap().entrySet())
+            {
+                byte[] value = SessionCodec.serialize(session.getId(), attribute.getKey(), attribute.getValue());
+                if (value != null)
+                {
+                    values.put(attribute.getKey(), value);
+                }
+            }
+            out.writeInt(values.size());
+            for (Map.Entry<String, byte[]> value : values.entrySet())
+            {
+                out.writeUTF(value.getKey());
+                out.writeInt(value.getValue().length);
+                out.write(value.getValue());
+            }
+        }
+        catch (IOException e)
+        {
+            // ByteArrayOutputStream不会抛出IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 反序列化记录，记录损坏时返回null；无法反序列化的属性被丢弃
+     */
+    protected HttpSessionImpl decode(String sid, byte[] record)
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        try
+        {
+            long creationTime = in.readLong();
+            long lastAccessedTime = in.readLong();
+            int maxInactiveInterval = in.readInt();
+            int count = in.readInt();
+            Map<String, Object> attributes = new HashMap<String, Object>();
+            for (int i = 0; i < count; i++)
+            {
+                String name = in.readUTF();
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                Object attribute = SessionCodec.deserialize(sid, name, value);
+                if (attribute != null)
+                {
+                    attributes.put(name, attribute);
+                }
+            }
+            return new HttpSessionImpl(servletContext, sid, creationTime, lastAccessedTime, maxInactiveInterval,
+                attributes);
+        }
+        catch (IOException e)
+        {
+            logger.error("Session " + sid + " record is corrupted.", e);
+            return null;
+        }
+    }
+
+}
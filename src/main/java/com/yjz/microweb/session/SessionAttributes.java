@@ -0,0 +1,180 @@
+package com.yjz.microweb.session;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * <b>Session属性的并发存储</b><br>
+ * 1. 属性不多于{@link #SMALL_SIZE}个时保存在名称、值交替排列的不可变数组中，修改时复制数组并CAS替换，读取无锁且不分配对象；<br>
+ * 2. 超出后一次性转为ConcurrentHashMap，之后不再转回；<br>
+ * 3. 值不能为null，put(name, null)等同于remove(name)。
+ */
+final class SessionAttributes
+{
+
+    /** 数组形式最多保存的属性个数 */
+    static final int SMALL_SIZE = 4;
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private static final AtomicReferenceFieldUpdater<SessionAttributes, Object> STATE =
+        AtomicReferenceFieldUpdater.newUpdater(SessionAttributes.class, Object.class, "state");
+
+    /** Object[]或ConcurrentHashMap */
+    private volatile Object state = EMPTY;
+
+    Object get(String name)
+    {
+        Object current = state;
+        if (current instanceof Object[])
+        {
+            Object[] entries = (Object[])current;
+            int index = indexOf(entries, name);
+            return index < 0 ? null : entries[index + 1];
+        }
+        return map(current).get(name);
+    }
+
+    /**
+     * @return 原来的值
+     */
+    Object put(String name, Object value)
+    {
+        if (value == null)
+        {
+            return remove(name);
+        }
+        while (true)
+        {
+            Object current = state;
+            if (!(current instanceof Object[]))
+            {
+                return map(current).put(name, value);
+            }
+            Object[] entries = (Object[])current;
+            int index = indexOf(entries, name);
+            Object replacement;
+            if (index >= 0)
+            {
+                Object[] updated = entries.clone();
+                updated[index + 1] = value;
+                replacement = updated;
+            }
+            else if (entries.length < SMALL_SIZE * 2)
+            {
+                Object[] updated = new Object[entries.length + 2];
+                System.arraycopy(entries, 0, updated, 0, entries.length);
+                updated[entries.length] = name;
+                updated[entries.length + 1] = value;
+                replacement = updated;
+            }
+            else
+            {
+                ConcurrentHashMap<String, Object> map = new ConcurrentHashMap<String, Object>(SMALL_SIZE * 4);
+                for (int i = 0; i < entries.length; i += 2)
+                {
+                    map.put((String)entries[i], entries[i + 1]);
+                }
+                map.put(name, value);
+                replacement = map;
+            }
+            if (STATE.compareAndSet(this, current, replacement))
+            {
+                return index >= 0 ? entries[index + 1] : null;
+            }
+        }
+    }
+
+    /**
+     * @return 原来的值，不存在时返回null
+     */
+    Object remove(String name)
+    {
+        while (true)
+        {
+            Object current = state;
+            if (!(current instanceof Object[]))
+            {
+                return map(current).remove(name);
+            }
+            Object[] entries = (Object[])current;
+            int index = indexOf(entries, name);
+            if (index < 0)
+            {
+                return null;
+            }
+            Object[] updated = EMPTY;
+            if (entries.length > 2)
+            {
+                updated = new Object[entries.length - 2];
+                System.arraycopy(entries, 0, updated, 0, index);
+                System.arraycopy(entries, index + 2, updated, index, entries.length - index - 2);
+            }
+            if (STATE.compareAndSet(this, current, updated))
+            {
+                return entries[index + 1];
+            }
+        }
+    }
+
+    /**
+     * 属性名的快照
+     */
+    Set<String> names()
+    {
+        Object current = state;
+        if (current instanceof Object[])
+        {
+            Object[] entries = (Object[])current;
+            Set<String> names = new LinkedHashSet<String>(entries.length);
+            for (int i = 0; i < entries.length; i += 2)
+            {
+                names.add((String)entries[i]);
+            }
+            return names;
+        }
+        return new LinkedHashSet<String>(map(current).keySet());
+    }
+
+    /**
+     * 属性的快照
+     */
+    Map<String, Object> snapshot()
+    {
+        Object current = state;
+        if (current instanceof Object[])
+        {
+            Object[] entries = (Object[])current;
+            Map<String, Object> copy = new HashMap<String, Object>(entries.length);
+            for (int i = 0; i < entries.length; i += 2)
+            {
+                copy.put((String)entries[i], entries[i + 1]);
+            }
+            return copy;
+        }
+        return new HashMap<String, Object>(map(current));
+    }
+
+    private static int indexOf(Object[] entries, String name)
+    {
+        for (int i = 0; i < entries.length; i += 2)
+        {
+            if (entries[i].equals(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentHashMap<String, Object> map(Object state)
+    {
+        return (ConcurrentHashMap<String, Object>)state;
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.yjz.microweb.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Session属性值的Java序列化，供序列化存储与集群复制使用；失败的属性记录警告后跳过
+ */
+final class SessionCodec
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionCodec.class);
+
+    private SessionCodec()
+    {
+    }
+
+    /**
+     * 不可序列化时返回null
+     */
+    static byte[] serialize(String sid, String name, Object value)
+    {
+        if (!(value instanceof Serializable))
+        {
+            logger.warn("Session " + sid + " attribute '" + name + "' is not serializable and will not be stored.");
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(value);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Session " + sid + " attribute '" + name + "' failed to serialize and will not be stored.", e);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 无法反序列化时返回null
+     */
+    static Object deserialize(String sid, String name, byte[] value)
+    {
+        try (ObjectInputStream in = new ContextObjectInputStream(new ByteArrayInputStream(value)))
+        {
+            return in.readObject();
+        }
+        catch (IOException | ClassNotFoundException e)
+        {
+            logger.warn("Session " + sid + " attribute '" + name + "' failed to deserialize and is dropped.", e);
+            return null;
+        }
+    }
+
+    /**
+     * 优先以线程上下文ClassLoader加载属性的类，属性类通常位于应用中
+     */
+    private static final class ContextObjectInputStream extends ObjectInputStream
+    {
+        ContextObjectInputStream(InputStream in)
+            throws IOException
+        {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+            throws IOException, ClassNotFoundException
+        {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader != null)
+            {
+                try
+                {
+                    return Class.forName(desc.getName(), false, loader);
+                }
+                catch (ClassNotFoundException e)
+                {
+                    // 回退到默认的查找方式
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+
+}
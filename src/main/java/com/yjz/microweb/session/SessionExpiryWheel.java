@@ -0,0 +1,198 @@
+package com.yjz.microweb.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * <b>Session超时的哈希时间轮</b><br>
+ * 1. 按超时时刻所在的tick放入对应的槽，槽数为2的幂，超出一圈的元素在槽中等待多圈；<br>
+ * 2. 访问Session时只更新最后访问时间，不移动元素：槽到期时重新读取超时时刻，未到期的放入新的槽，
+ * 因此访问为O(1)且无锁，每个Session在一个超时周期内最多被重新放置一次；<br>
+ * 3. 后台线程每个tick只处理到期的槽，不遍历全部Session；<br>
+ * 4. 超时时刻与是否超时由{@link Expiry}提供，时间轮只记录Session的id，可用于任意存储。
+ */
+public class SessionExpiryWheel
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionExpiryWheel.class);
+
+    /**
+     * 超时时刻的来源与超时处理
+     */
+    public interface Expiry
+    {
+        /**
+         * Session当前的超时时刻(毫秒)，Session已不存在时返回-1，不超时返回Long.MAX_VALUE
+         */
+        long deadline(String id);
+
+        /**
+         * Session已超时
+         */
+        void expire(String id);
+    }
+
+    private final long tickMillis;
+
+    private final int mask;
+
+    private final ConcurrentLinkedQueue<Entry>[] buckets;
+
+    private final Expiry expiry;
+
+    /** 已处理到的tick，只由后台线程推进 */
+    private volatile long currentTick;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param tickMillis 每个槽的时间跨度(毫秒)，即超时处理的精度
+     * @param wheelSize 槽数，向上取为2的幂
+     * @param expiry 超时时刻的来源与超时处理
+     */
+    @SuppressWarnings("unchecked")
+    public SessionExpiryWheel(long tickMillis, int wheelSize, Expiry expiry)
+    {
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.buckets = new ConcurrentLinkedQueue[size];
+        for (int i = 0; i < size; i++)
+        {
+            buckets[i] = new ConcurrentLinkedQueue<Entry>();
+        }
+        this.expiry = expiry;
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * 加入时间轮，同一Session只需加入一次
+     *
+     * @param deadline 超时时刻(毫秒)，Long.MAX_VALUE表示不超时，不加入时间轮
+     */
+    public void schedule(String id, long deadline)
+    {
+        if (deadline == Long.MAX_VALUE)
+        {
+            return;
+        }
+        while (true)
+        {
+            // 已处理过的tick放入下一个tick
+            long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+            ConcurrentLinkedQueue<Entry> bucket = buckets[(int)(tick & mask)];
+            Entry entry = new Entry(id, tick);
+            bucket.offer(entry);
+            // advance先发布currentTick再取出槽中元素：此时仍未到达该tick，说明元素一定会被取出；
+            // 否则该槽可能已被取完，元素没被取走时移除后重新放入，避免等待一整圈
+            if (currentTick < tick || !bucket.remove(entry))
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 处理截至now到期的槽，由后台线程调用
+     */
+    public synchronized void advance(long now)
+    {
+        long target = now / tickMillis;
+        List<Entry> due = new ArrayList<Entry>();
+        while (currentTick < target)
+        {
+            long tick = currentTick + 1;
+            ConcurrentLinkedQueue<Entry> bucket = buckets[(int)(tick & mask)];
+            // 先发布再取出，与schedule配合保证并发放入的元素不会留在已取完的槽中
+            currentTick = tick;
+            Entry entry;
+            while ((entry = bucket.poll()) != null)
+            {
+                due.add(entry);
+            }
+
+            for (Entry e : due)
+            {
+                if (e.tick > tick)
+                {
+                    // 还需等待若干圈
+                    bucket.offer(e);
+                    continue;
+                }
+                try
+                {
+                    long deadline = expiry.deadline(e.id);
+                    if (deadline < 0)
+                    {
+                        continue;
+                    }
+                    if (deadline <= now)
+                    {
+                        expiry.expire(e.id);
+                    }
+                    else
+                    {
+                        schedule(e.id, deadline);
+                    }
+                }
+                catch (RuntimeException ex)
+                {
+                    logger.error("Failed to expire session " + e.id, ex);
+                }
+            }
+            due.clear();
+        }
+    }
+
+    /**
+     * 启动后台线程，重复调用无效
+     */
+    public synchronized void start()
+    {
+        if (executor != null)
+        {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("microweb-session-expiry", true));
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                advance(System.currentTimeMillis());
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final String id;
+
+        private final long tick;
+
+        Entry(String id, long tick)
+        {
+            this.id = id;
+            this.tick = tick;
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.yjz.microweb.session;
 
+import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
 
 public interface SessionManager {
@@ -12,4 +13,20 @@ public interface SessionManager {
 
 	public HttpSession build(boolean isNew);
 
+	/**
+	 * 请求结束时保存Session的修改；内存中的实现直接修改Session对象，无需处理
+	 */
+	public default void commit(HttpSession session) {
+	}
+
+	/**
+	 * 启动时设置ServletContext，Session事件通知其中注册的HttpSessionListener
+	 */
+	public void setServletContext(ServletContext servletContext);
+
+	/**
+	 * @param maxInactiveInterval 新建Session的超时时间(秒)，小于等于0表示不超时
+	 */
+	public void setMaxInactiveInterval(int maxInactiveInterval);
+
 }
@@ -0,0 +1,94 @@
+package com.yjz.microweb.transport;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * <b>按策略压缩响应</b><br>
+ * 替代固定级别的HttpContentCompressor：<br>
+ * 1. 已带Content-Encoding(如预压缩的静态资源)的响应直接放行；<br>
+ * 2. 由{@link CompressionPolicy}按长度与类型判断是否压缩；<br>
+ * 3. 每个响应开始编码时按当前IO线程积压的任务数选择压缩级别；<br>
+ * 4. 206区间响应不压缩，压缩的响应去掉Accept-Ranges。
+ */
+public class AdaptiveContentCompressor extends HttpContentCompressor
+{
+
+    private static final int WINDOW_BITS = 15;
+
+    private static final int MEM_LEVEL = 8;
+
+    private final CompressionPolicy policy;
+
+    private ChannelHandlerContext ctx;
+
+    public AdaptiveContentCompressor(CompressionPolicy policy)
+    {
+        this.policy = policy;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx)
+        throws Exception
+    {
+        this.ctx = ctx;
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    protected Result beginEncode(HttpResponse response, String acceptEncoding)
+        throws Exception
+    {
+        String contentEncoding = response.headers().get(HttpHeaderNames.CONTENT_ENCODING);
+        if (contentEncoding != null && !HttpHeaderValues.IDENTITY.contentEqualsIgnoreCase(contentEncoding))
+        {
+            return null;
+        }
+        // 区间响应的Content-Range针对未压缩的内容
+        if (HttpResponseStatus.PARTIAL_CONTENT.equals(response.status()) || !policy.shouldCompress(response))
+        {
+            return null;
+        }
+
+        ZlibWrapper wrapper = determineWrapper(acceptEncoding);
+        if (wrapper == null)
+        {
+            return null;
+        }
+
+        String targetContentEncoding;
+        switch (wrapper)
+        {
+            case GZIP:
+                targetContentEncoding = "gzip";
+                break;
+            case ZLIB:
+                targetContentEncoding = "deflate";
+                break;
+            default:
+                throw new Error();
+        }
+
+        // 压缩后的长度与原内容不同，客户端不能据此发起区间请求
+        response.headers().remove(HttpHeaderNames.ACCEPT_RANGES);
+        int level = policy.level(pendingTasks(ctx.executor()));
+        return new Result(targetContentEncoding, new EmbeddedChannel(ctx.channel().id(),
+            ctx.channel().metadata().hasDisconnect(), ctx.channel().config(),
+            ZlibCodecFactory.newZlibEncoder(wrapper, level, WINDOW_BITS, MEM_LEVEL)));
+    }
+
+    private static int pendingTasks(EventExecutor executor)
+    {
+        return executor instanceof SingleThreadEventExecutor ? ((SingleThreadEventExecutor)executor).pendingTasks() : 0;
+    }
+
+}
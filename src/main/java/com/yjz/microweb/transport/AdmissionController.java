@@ -0,0 +1,163 @@
+package com.yjz.microweb.transport;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>请求准入控制</b><br>
+ * 位于分发执行器之前，由IO线程在提交前判断是否接纳请求，被拒绝的请求由IO线程直接返回503：<br>
+ * 1. 队列深度：已接纳但尚未开始执行的请求数达到上限时拒绝；<br>
+ * 2. 排队时延(CoDel)：任务开始执行时记录排队时长，连续一个观察窗口(interval)都高于目标时延(target)即判定为过载，
+ * 过载期间只在队列为空时放行请求，直到排队时长回落到目标以下；<br>
+ * 3. 执行器自身拒绝(RejectedExecutionException)同样计为拒绝；<br>
+ * 4. 对外提供已接纳、已拒绝、当前排队的计数。
+ */
+public class AdmissionController
+{
+
+    private final ExecutorService executorService;
+
+    private final int maxQueueDepth;
+
+    private final long targetNanos;
+
+    private final long intervalNanos;
+
+    private final int retryAfterSeconds;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong admittedCount = new AtomicLong();
+
+    private final AtomicLong shedCount = new AtomicLong();
+
+    /** 排队时长首次超过目标后，判定过载的时间点，0表示当前未超过目标 */
+    private final AtomicLong firstAboveTime = new AtomicLong();
+
+    private volatile boolean overloaded = false;
+
+    /**
+     * @param maxQueueDepth 最大排队请求数，小于等于0表示不限制
+     * @param targetDelayMillis 目标排队时延，小于等于0表示关闭时延检测
+     */
+    public AdmissionController(ExecutorService executorService, int maxQueueDepth, long targetDelayMillis,
+        long intervalMillis, int retryAfterSeconds)
+    {
+        this.executorService = executorService;
+        this.maxQueueDepth = maxQueueDepth > 0 ? maxQueueDepth : Integer.MAX_VALUE;
+        this.targetNanos = targetDelayMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(targetDelayMillis) : Long.MAX_VALUE;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * 只做执行器拒绝时的503转换，不做主动限流
+     */
+    public AdmissionController(ExecutorService executorService, int retryAfterSeconds)
+    {
+        this(executorService, 0, 0, 1, retryAfterSeconds);
+    }
+
+    /**
+     * 尝试接纳并提交任务，返回false表示请求被拒绝，调用方负责响应503并释放请求
+     */
+    public boolean execute(Runnable task)
+    {
+        int depth = queued.get();
+        if (depth >= maxQueueDepth || (overloaded && depth > 0))
+        {
+            shedCount.incrementAndGet();
+            return false;
+        }
+
+        queued.incrementAndGet();
+        try
+        {
+            executorService.execute(new AdmittedTask(task, System.nanoTime()));
+        }
+        catch (RejectedExecutionException e)
+        {
+            queued.decrementAndGet();
+            shedCount.incrementAndGet();
+            return false;
+        }
+        admittedCount.incrementAndGet();
+        return true;
+    }
+
+    public long getAdmittedCount()
+    {
+        return admittedCount.get();
+    }
+
+    public long getShedCount()
+    {
+        return shedCount.get();
+    }
+
+    public int getQueuedCount()
+    {
+        return queued.get();
+    }
+
+    public boolean isOverloaded()
+    {
+        return overloaded;
+    }
+
+    public int getRetryAfterSeconds()
+    {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * CoDel状态更新，由开始执行任务的线程调用
+     */
+    private void onDequeue(long sojournNanos, long now)
+    {
+        if (sojournNanos < targetNanos)
+        {
+            firstAboveTime.set(0);
+            overloaded = false;
+            return;
+        }
+
+        long first = firstAboveTime.get();
+        if (first == 0)
+        {
+            firstAboveTime.compareAndSet(0, now + intervalNanos);
+        }
+        else if (now - first >= 0)
+        {
+            overloaded = true;
+        }
+    }
+
+    private class AdmittedTask implements Runnable
+    {
+
+        private final Runnable task;
+
+        private final long enqueueTime;
+
+        AdmittedTask(Runnable task, long enqueueTime)
+        {
+            this.task = task;
+            this.enqueueTime = enqueueTime;
+        }
+
+        @Override
+        public void run()
+        {
+            queued.decrementAndGet();
+            long now = System.nanoTime();
+            onDequeue(now - enqueueTime, now);
+            task.run();
+        }
+
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.yjz.microweb.transport;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.yjz.microweb.http.PrecompressedResources;
+import com.yjz.microweb.util.MimeType;
+
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+
+/**
+ * <b>响应压缩策略</b><br>
+ * 所有连接共享，创建后只读：<br>
+ * 1. 响应体小于最小长度时不压缩，长度未知(chunked)时按需压缩；<br>
+ * 2. 类型名单的每一项可以是MIME类型(text/html、text/*)，也可以是扩展名(js、css)，扩展名通过{@link MimeType}转换；<br>
+ * 3. 黑名单优先；白名单为空时压缩文本类响应，图片、音视频、压缩包等不再压缩；<br>
+ * 4. 压缩级别随IO线程积压的任务数在最高与最低级别之间线性下降，负载高时以CPU换带宽的比例降低。
+ */
+public final class CompressionPolicy
+{
+
+    private final int minSize;
+
+    private final Set<String> allowTypes;
+
+    private final Set<String> denyTypes;
+
+    private final int maxLevel;
+
+    private final int minLevel;
+
+    private final int busyTasks;
+
+    public CompressionPolicy(HttpServerConf conf)
+    {
+        this.minSize = conf.getCompressionMinSize();
+        this.allowTypes = toMimeTypes(conf.getCompressionAllowTypes());
+        this.denyTypes = toMimeTypes(conf.getCompressionDenyTypes());
+        this.maxLevel = Math.max(1, Math.min(9, conf.getCompressionLevel()));
+        this.minLevel = Math.max(1, Math.min(maxLevel, conf.getCompressionMinLevel()));
+        this.busyTasks = Math.max(1, conf.getCompressionBusyTasks());
+    }
+
+    /**
+     * 响应是否应该压缩，已带Content-Encoding的响应由HttpContentCompressor直接放行，这里不再判断
+     */
+    public boolean shouldCompress(HttpResponse response)
+    {
+        long length;
+        if (response instanceof FullHttpResponse)
+        {
+            length = ((FullHttpResponse)response).content().readableBytes();
+        }
+        else
+        {
+            length = response.headers().getInt(HttpHeaderNames.CONTENT_LENGTH, -1);
+        }
+        if (length >= 0 && length < minSize)
+        {
+            return false;
+        }
+
+        String contentType = response.headers().get(HttpHeaderNames.CONTENT_TYPE);
+        if (contentType == null)
+        {
+            return false;
+        }
+        int idx = contentType.indexOf(';');
+        String mimeType = (idx >= 0 ? contentType.substring(0, idx) : contentType).trim().toLowerCase();
+        if (matches(denyTypes, mimeType))
+        {
+            return false;
+        }
+        return allowTypes.isEmpty() ? PrecompressedResources.isCompressible(mimeType) : matches(allowTypes, mimeType);
+    }
+
+    /**
+     * 按IO线程积压的任务数选择压缩级别
+     */
+    public int level(int pendingTasks)
+    {
+        if (pendingTasks <= 0)
+        {
+            return maxLevel;
+        }
+        if (pendingTasks >= busyTasks)
+        {
+            return minLevel;
+        }
+        return maxLevel - (maxLevel - minLevel) * pendingTasks / busyTasks;
+    }
+
+    private static boolean matches(Set<String> types, String mimeType)
+    {
+        if (types.isEmpty())
+        {
+            return false;
+        }
+        if (types.contains(mimeType))
+        {
+            return true;
+        }
+        int idx = mimeType.indexOf('/');
+        return idx > 0 && types.contains(mimeType.substring(0, idx) + "/*");
+    }
+
+    private static Set<String> toMimeTypes(String[] items)
+    {
+        Set<String> types = new HashSet<String>();
+        if (items == null)
+        {
+            return types;
+        }
+        for (String item : items)
+        {
+            item = item.trim().toLowerCase();
+            if (item.isEmpty())
+            {
+                continue;
+            }
+            if (item.indexOf('/') > 0)
+            {
+                types.add(item);
+            }
+            else if (MimeType.contains(item))
+            {
+                types.add(MimeType.get(item));
+            }
+        }
+        return types;
+    }
+
+}
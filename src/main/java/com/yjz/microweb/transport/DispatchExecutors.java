@@ -0,0 +1,82 @@
+package com.yjz.microweb.transport;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+/**
+ * <b>分发执行器工厂</b><br>
+ * 根据{@link DispatchMode}创建HttpServerInboundHandler使用的执行器：<br>
+ * 1. INLINE返回ImmediateEventExecutor，任务在调用线程(即IO线程)上直接执行；<br>
+ * 2. POOL返回有界队列线程池，队列满时抛出RejectedExecutionException，由AdmissionController计为拒绝并返回503；<br>
+ * 3. VIRTUAL通过反射调用Executors.newVirtualThreadPerTaskExecutor()，项目按JDK 8编译，运行时低于21则回退到POOL。
+ */
+public final class DispatchExecutors
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(DispatchExecutors.class);
+
+    private DispatchExecutors()
+    {
+    }
+
+    public static ExecutorService create(HttpServerConf conf)
+    {
+        switch (conf.dispatchMode)
+        {
+            case INLINE:
+                return ImmediateEventExecutor.INSTANCE;
+            case VIRTUAL:
+                ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+                if (virtual != null)
+                {
+                    return virtual;
+                }
+                logger.warn("Virtual threads are unavailable on this JVM, falling back to the bounded pool.");
+                return newBoundedPool(conf);
+            default:
+                return newBoundedPool(conf);
+        }
+    }
+
+    /**
+     * INLINE执行器由IO线程共享，不需要也不能关闭
+     */
+    public static void shutdown(ExecutorService executorService)
+    {
+        if (executorService != ImmediateEventExecutor.INSTANCE)
+        {
+            executorService.shutdown();
+        }
+    }
+
+    private static ExecutorService newBoundedPool(HttpServerConf conf)
+    {
+        return new ThreadPoolExecutor(conf.corePoolSize, conf.maximumPoolSize, 5, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(Math.max(1, conf.poolQueueSize)),
+            new DefaultThreadFactory("microweb-dispatch"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor()
+    {
+        try
+        {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)method.invoke(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.yjz.microweb.transport;
+
+/**
+ * <b>请求分发方式</b><br>
+ * INLINE：直接在IO线程(event loop)上执行，仅适用于业务处理不阻塞的应用；<br>
+ * POOL：有界线程池，队列满时直接返回503；<br>
+ * VIRTUAL：每个请求一个虚拟线程，需JDK 21+，不可用时回退到POOL。
+ */
+public enum DispatchMode
+{
+
+    INLINE, POOL, VIRTUAL;
+
+    /**
+     * 解析配置值，无法识别时返回POOL
+     */
+    public static DispatchMode parse(String value)
+    {
+        if (value == null)
+        {
+            return POOL;
+        }
+
+        for (DispatchMode mode : values())
+        {
+            if (mode.name().equalsIgnoreCase(value.trim()))
+            {
+                return mode;
+            }
+        }
+        return POOL;
+    }
+
+}
@@ -1,28 +1,45 @@
 package com.yjz.microweb.transport;
 
-import java.util.concurrent.ExecutorService;
+import java.io.File;
+
+import com.yjz.microweb.cache.NegativeCache;
+import com.yjz.microweb.cache.StaticResourceIndex;
+import com.yjz.microweb.http.HttpCoreServer;
 
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.http.HttpContentCompressor;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 
 public class HttpPipelineInitializer extends ChannelInitializer<SocketChannel> {
 	
 	private final SslContext sslCtx;
 	private final int timeOut;
-	private final ExecutorService executorService;
+	private final AdmissionController admissionController;
+	private final HttpServerConf conf;
+	private final File[] staticRoots;
+	private final CompressionPolicy compressionPolicy;
+	private final StaticResourceIndex staticIndex;
+	private final NegativeCache missingStatics;
 	
 	//private static final String WEBSOCKET_PATH = "/websocket";
 	
-	public HttpPipelineInitializer(ExecutorService executorService, SslContext sslCtx, int timeOut){
-		this.executorService = executorService;
+	public HttpPipelineInitializer(AdmissionController admissionController, SslContext sslCtx, int timeOut, HttpServerConf conf){
+		this.admissionController = admissionController;
 		this.sslCtx = sslCtx;
 		this.timeOut = timeOut;
+		this.conf = conf;
+		this.staticRoots = new File[conf.staticDirs.length];
+		for (int i = 0; i < staticRoots.length; i++) {
+			this.staticRoots[i] = new File(conf.staticDirs[i]);
+		}
+		this.staticIndex = staticRoots.length > 0 ? StaticResourceIndex.scan(staticRoots) : null;
+		this.missingStatics = staticRoots.length > 0 ? new NegativeCache(conf.negativeCacheCapacity, conf.negativeCacheTtl) : null;
+		this.compressionPolicy = conf.compressionEnabled ? new CompressionPolicy(conf) : null;
 	}
 
 	@Override
@@ -33,8 +50,24 @@ public class HttpPipelineInitializer extends ChannelInitializer<SocketChannel> {
         }
 		pipeline.addLast("timeout", new ReadTimeoutHandler(timeOut));
 		pipeline.addLast("codec", new HttpServerCodec());
-		pipeline.addLast(new HttpContentCompressor(9));
-		pipeline.addLast("aggegator", new HttpObjectAggregator(1024 * 1024 * 1024));
+		if (staticRoots.length > 0) {
+			// SSL下无法sendfile，文件以ChunkedNioFile分块写出
+			if (sslCtx != null) {
+				pipeline.addLast("chunked", new ChunkedWriteHandler());
+			}
+			// 位于压缩之前：静态文件的请求与响应都不经过HttpContentCompressor
+			pipeline.addLast("static", new StaticResourceHandler(staticRoots, HttpCoreServer.instance().getContextPath(), conf, staticIndex, missingStatics));
+		}
+		if (compressionPolicy != null) {
+			pipeline.addLast("compressor", new AdaptiveContentCompressor(compressionPolicy));
+		}
+		if (conf.requestStreaming) {
+			// 大请求体分流为流式请求，小请求体仍由聚合器组装
+			pipeline.addLast("streaming", new HttpRequestStreamingHandler(conf.aggregateLimit, conf.streamingUris, conf.streamingQueueSize));
+			pipeline.addLast("aggegator", new HttpObjectAggregator(conf.aggregateLimit));
+		} else {
+			pipeline.addLast("aggegator", new HttpObjectAggregator(1024 * 1024 * 1024));
+		}
 		
 		/** websocket */
 		/*pipeline.addLast(new WebSocketServerCompressionHandler());
@@ -43,7 +76,7 @@ public class HttpPipelineInitializer extends ChannelInitializer<SocketChannel> {
         pipeline.addLast(new WebSocketFrameHandler());*/
         /** websocket */
         
-		pipeline.addLast("ServerInbound", new HttpServerInboundHandler(executorService));
+		pipeline.addLast("ServerInbound", new HttpServerInboundHandler(admissionController));
         
 	}
 
@@ -0,0 +1,120 @@
+package com.yjz.microweb.transport;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import com.yjz.microweb.http.HttpContentInputStream;
+import com.yjz.microweb.http.StreamingFullHttpRequest;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * <b>请求体分流</b><br>
+ * 位于HttpObjectAggregator之前：<br>
+ * 1. 请求体不超过聚合上限的请求原样放行，由聚合器组装为FullHttpRequest(快速路径)；<br>
+ * 2. 超过上限、长度未知(chunked)或匹配流式路径前缀的请求，收到请求头即转发{@link StreamingFullHttpRequest}，
+ * 后续分片投递到其{@link HttpContentInputStream}，业务线程边接收边处理。
+ */
+public class HttpRequestStreamingHandler extends ChannelInboundHandlerAdapter
+{
+
+    private final int aggregateLimit;
+
+    private final String[] streamingUris;
+
+    private final int queueSize;
+
+    /** 当前正在接收请求体的流式请求 */
+    private HttpContentInputStream current;
+
+    public HttpRequestStreamingHandler(int aggregateLimit, String[] streamingUris, int queueSize)
+    {
+        this.aggregateLimit = aggregateLimit;
+        this.streamingUris = streamingUris != null ? streamingUris : new String[0];
+        this.queueSize = queueSize;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg)
+        throws Exception
+    {
+        if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest))
+        {
+            HttpRequest req = (HttpRequest)msg;
+            if (!shouldStream(req))
+            {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+
+            if (HttpUtil.is100ContinueExpected(req))
+            {
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1, CONTINUE));
+                req.headers().remove(HttpHeaderNames.EXPECT);
+            }
+
+            current = new HttpContentInputStream(ctx.channel(), queueSize);
+            ctx.fireChannelRead(new StreamingFullHttpRequest(req, current));
+            return;
+        }
+
+        if (msg instanceof HttpContent && current != null)
+        {
+            HttpContentInputStream body = current;
+            body.offer(((HttpContent)msg).content());
+            if (msg instanceof LastHttpContent)
+            {
+                body.finish();
+                current = null;
+            }
+            return;
+        }
+
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx)
+        throws Exception
+    {
+        if (current != null)
+        {
+            current.abort();
+            current = null;
+        }
+        super.channelInactive(ctx);
+    }
+
+    private boolean shouldStream(HttpRequest req)
+    {
+        if (!req.decoderResult().isSuccess())
+        {
+            return false;
+        }
+
+        String uri = req.uri();
+        for (String prefix : streamingUris)
+        {
+            if (uri.startsWith(prefix))
+            {
+                return true;
+            }
+        }
+
+        if (HttpUtil.isTransferEncodingChunked(req))
+        {
+            return true;
+        }
+
+        return HttpUtil.getContentLength(req, -1L) > aggregateLimit;
+    }
+
+}
@@ -2,9 +2,6 @@ package com.yjz.microweb.transport;
 
 import java.security.cert.CertificateException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLException;
 
@@ -15,8 +12,8 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
@@ -42,6 +39,8 @@ public class HttpServer
     
     public boolean running = false;
     
+    private AdmissionController admissionController;
+    
     public HttpServer()
     {
         this.conf = new HttpServerConf();
@@ -66,27 +65,57 @@ public class HttpServer
             sslCtx = null;
         }
         
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
-        final ExecutorService executorService = new ThreadPoolExecutor(conf.corePoolSize, conf.maximumPoolSize, 5,
-            TimeUnit.SECONDS, new LinkedBlockingDeque<>(conf.poolQueueSize));
+        TransportMode transport = conf.transport.resolve();
+        if (transport != conf.transport && conf.transport == TransportMode.EPOLL)
+        {
+            logger.warn("Native epoll transport is unavailable, falling back to NIO.", Epoll.unavailabilityCause());
+        }
+        // SO_REUSEPORT仅epoll支持，NIO下只能绑定一个acceptor
+        boolean reusePort = transport == TransportMode.EPOLL;
+        int acceptors = reusePort ? Math.max(1, conf.acceptors) : 1;
+        
+        final EventLoopGroup bossGroup = transport.newEventLoopGroup(acceptors);
+        final EventLoopGroup workerGroup = transport.newEventLoopGroup(0);
+        if (conf.dispatchMode == DispatchMode.INLINE && conf.requestStreaming)
+        {
+            // 流式请求体在业务线程阻塞读取，IO线程上执行会等待自身投递的分片
+            logger.warn("Request streaming is not supported with inline dispatch, request bodies will be aggregated.");
+            conf.requestStreaming = false;
+        }
+        final ExecutorService executorService = DispatchExecutors.create(conf);
+        admissionController = conf.admissionEnabled
+            ? new AdmissionController(executorService, conf.admissionQueueDepth, conf.admissionTargetDelay,
+                conf.admissionInterval, conf.retryAfter)
+            : new AdmissionController(executorService, conf.retryAfter);
         
         try
         {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannelClass())
                 .option(ChannelOption.SO_BACKLOG, BACKLOG) // 设定最大连接队列
                 .option(ChannelOption.SO_RCVBUF, 1024 * 256) // 设定数据接收缓冲区大小
                 .option(ChannelOption.SO_SNDBUF, 1024 * 256) // 设定数据发送缓冲区大小
                 .childOption(ChannelOption.SO_KEEPALIVE, true) // 是否保持连接
-                .childHandler(new HttpPipelineInitializer(executorService, sslCtx, TIMEOUT)); // 传入附带异步线程池的channelHandler
+                .childHandler(new HttpPipelineInitializer(admissionController, sslCtx, TIMEOUT, conf)); // 传入附带异步线程池的channelHandler
+            if (reusePort)
+            {
+                b.option(EpollChannelOption.SO_REUSEPORT, true); // 多个acceptor共享同一端口，由内核分发新连接
+            }
             
-            logger.info("Start binding http server port on " + conf.port);
-            Channel channel = b.bind(conf.port).sync().channel(); // 绑定端口直到绑定完成
+            logger.info("Start binding http server port on " + conf.port + " with " + transport + " transport, "
+                + acceptors + " acceptor(s) and " + conf.dispatchMode + " dispatch.");
+            Channel[] channels = new Channel[acceptors];
+            for (int i = 0; i < acceptors; i++)
+            {
+                channels[i] = b.bind(conf.port).sync().channel(); // 绑定端口直到绑定完成
+            }
             logger.info("Http server port is bound.");
             
-            channel.closeFuture().sync(); // 阻塞关闭操作
+            for (Channel channel : channels)
+            {
+                channel.closeFuture().sync(); // 阻塞关闭操作
+            }
         }
         catch (InterruptedException e)
         {
@@ -96,7 +125,16 @@ public class HttpServer
         {
             workerGroup.shutdownGracefully();
             bossGroup.shutdownGracefully();
+            DispatchExecutors.shutdown(executorService);
         }
     }
     
+    /**
+     * 准入控制器，提供已接纳、已拒绝、排队中的请求计数；服务启动前为null
+     */
+    public AdmissionController getAdmissionController()
+    {
+        return admissionController;
+    }
+    
 }
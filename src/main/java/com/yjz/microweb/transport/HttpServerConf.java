@@ -1,5 +1,8 @@
 package com.yjz.microweb.transport;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class HttpServerConf
 {
     
@@ -13,6 +16,127 @@ public class HttpServerConf
     
     protected int poolQueueSize = 100;
     
+    /** 传输实现：nio | epoll | auto */
+    protected TransportMode transport = TransportMode.AUTO;
+    
+    /** 绑定同一端口的acceptor数量，仅epoll(SO_REUSEPORT)下大于1有效 */
+    protected int acceptors = 1;
+    
+    /** 是否开启流式请求体，关闭时所有请求体均完整聚合 */
+    protected boolean requestStreaming = false;
+    
+    /** 流式模式下的聚合上限(字节)，请求体不超过此值时仍走聚合路径 */
+    protected int aggregateLimit = 64 * 1024;
+    
+    /** 始终以流式接收请求体的路径前缀 */
+    protected String[] streamingUris = new String[0];
+    
+    /** 流式请求体积压分片上限，超过后暂停读取 */
+    protected int streamingQueueSize = 16;
+    
+    /** 是否开启流式响应：超过bufferSize或调用flushBuffer()后以chunked分片直接写出 */
+    protected boolean responseStreaming = false;
+    
+    /** 请求分发方式：inline | pool | virtual */
+    protected DispatchMode dispatchMode = DispatchMode.POOL;
+    
+    /** 是否开启准入控制，关闭时仅在执行器拒绝时返回503 */
+    protected boolean admissionEnabled = true;
+    
+    /**
+     * 已接纳但尚未开始执行的最大请求数(admission.queue.depth)，小于等于0(默认)时不限制，只由CoDel排队时延判断过载。
+     * pool分发时执行器在队列(poolQueueSize)排满后才会创建核心线程以外的线程，
+     * 设置此值时应不小于poolQueueSize + maximumPoolSize - corePoolSize，否则线程数不会超过corePoolSize
+     */
+    protected int admissionQueueDepth = 0;
+    
+    /** CoDel目标排队时延(毫秒) */
+    protected long admissionTargetDelay = 50;
+    
+    /** CoDel观察窗口(毫秒)，排队时延持续超过目标一个窗口即判定过载 */
+    protected long admissionInterval = 500;
+    
+    /** 503响应的Retry-After(秒) */
+    protected int retryAfter = 1;
+    
+    /** 静态资源缓存实现：tinylfu(堆内) | offheap(堆外内存) | mmap(内存映射文件) */
+    protected String cacheType = "tinylfu";
+    
+    /** 静态资源缓存容量(字节) */
+    protected long cacheCapacity = 256 * 1024 * 1024l;
+    
+    /** mmap缓存的文件目录，为空时使用系统临时目录 */
+    protected String cacheDir;
+    
+    /** 不存在资源缓存每一代的容量(元素数) */
+    protected int negativeCacheCapacity = 100000;
+
+    /** 不存在资源缓存每一代的最长存在时间(毫秒)，新增的资源最迟在两倍时间后可见 */
+    protected long negativeCacheTtl = 60000;
+
+    /** 以JSON返回缓存统计的管理地址，如/admin/cache-stats，为空表示不开放 */
+    protected String cacheStatsUri;
+
+    /** 启动时预加载classpath静态资源的总量上限(字节)，0表示不预加载 */
+    protected long staticPreloadBudget = 0;
+
+    /** 预加载的资源：精确路径、后缀(*.css)或前缀(/js/*)，按顺序优先 */
+    protected String[] staticPreloadPatterns = {"/index.html", "*.css", "*.js", "*.html"};
+
+    /** 由IO线程直接响应的静态文件目录，为空时不开启 */
+    protected String[] staticDirs = new String[0];
+
+    /** 静态资源Cache-Control的默认max-age(秒)，0为no-cache，小于0时不设置 */
+    protected int staticMaxAge = -1;
+
+    /** 按扩展名(小写)配置的max-age(秒)，覆盖默认值 */
+    protected Map<String, Integer> staticMaxAges = new HashMap<String, Integer>();
+
+    /** 是否压缩响应 */
+    protected boolean compressionEnabled = true;
+
+    /** 响应体不小于此长度(字节)才压缩 */
+    protected int compressionMinSize = 1024;
+
+    /** 压缩的类型(MIME类型或扩展名)，为空时压缩文本类响应 */
+    protected String[] compressionAllowTypes = new String[0];
+
+    /** 不压缩的类型(MIME类型或扩展名)，优先于compressionAllowTypes */
+    protected String[] compressionDenyTypes = new String[0];
+
+    /** IO线程空闲时的压缩级别(1-9) */
+    protected int compressionLevel = 6;
+
+    /** IO线程繁忙时的压缩级别(1-9) */
+    protected int compressionMinLevel = 1;
+
+    /** IO线程积压的任务数达到此值时使用最低压缩级别 */
+    protected int compressionBusyTasks = 64;
+
+    /** Session超时时间(秒)，小于等于0表示不超时 */
+    protected int sessionTimeout = 1800;
+
+    /** Session存储：local(堆内)、offheap(堆外)、disk(内存映射文件，重启后保留)或replicated(集群复制) */
+    protected String sessionStore = "local";
+
+    /** disk存储的文件目录，为空时使用系统临时目录 */
+    protected String sessionStoreDir;
+
+    /** disk存储的初始映射大小(字节)，写满时扩大 */
+    protected int sessionStoreSize = 64 * 1024 * 1024;
+
+    /** replicated存储的节点间传输类名，为空时使用进程内的LoopbackReplicationTransport */
+    protected String sessionReplicationTransport;
+
+    /** 本节点在集群中的id，为空时使用进程名(pid@host) */
+    protected String sessionReplicationNode;
+
+    /** Session修改批量发送的间隔(毫秒) */
+    protected long sessionReplicationInterval = 100;
+
+    /** 待发送的Session数达到此值时立即发送 */
+    protected int sessionReplicationBatch = 256;
+    
     public boolean isSslEnabled()
     {
         return sslEnabled;
@@ -63,6 +187,400 @@ public class HttpServerConf
         this.poolQueueSize = poolQueueSize;
     }
 
+    public TransportMode getTransport()
+    {
+        return transport;
+    }
+
+    public void setTransport(TransportMode transport)
+    {
+        this.transport = transport;
+    }
+
+    public int getAcceptors()
+    {
+        return acceptors;
+    }
+
+    public void setAcceptors(int acceptors)
+    {
+        this.acceptors = acceptors;
+    }
+
+    public boolean isRequestStreaming()
+    {
+        return requestStreaming;
+    }
+
+    public void setRequestStreaming(boolean requestStreaming)
+    {
+        this.requestStreaming = requestStreaming;
+    }
+
+    public int getAggregateLimit()
+    {
+        return aggregateLimit;
+    }
+
+    public void setAggregateLimit(int aggregateLimit)
+    {
+        this.aggregateLimit = aggregateLimit;
+    }
+
+    public String[] getStreamingUris()
+    {
+        return streamingUris;
+    }
+
+    public void setStreamingUris(String[] streamingUris)
+    {
+        this.streamingUris = streamingUris;
+    }
+
+    public int getStreamingQueueSize()
+    {
+        return streamingQueueSize;
+    }
+
+    public void setStreamingQueueSize(int streamingQueueSize)
+    {
+        this.streamingQueueSize = streamingQueueSize;
+    }
+
+    public boolean isResponseStreaming()
+    {
+        return responseStreaming;
+    }
+
+    public void setResponseStreaming(boolean responseStreaming)
+    {
+        this.responseStreaming = responseStreaming;
+    }
+
+
+    public DispatchMode getDispatchMode()
+    {
+        return dispatchMode;
+    }
+
+    public void setDispatchMode(DispatchMode dispatchMode)
+    {
+        this.dispatchMode = dispatchMode;
+    }
+
+    public boolean isAdmissionEnabled()
+    {
+        return admissionEnabled;
+    }
+
+    public void setAdmissionEnabled(boolean admissionEnabled)
+    {
+        this.admissionEnabled = admissionEnabled;
+    }
+
+    public int getAdmissionQueueDepth()
+    {
+        return admissionQueueDepth;
+    }
+
+    public void setAdmissionQueueDepth(int admissionQueueDepth)
+    {
+        this.admissionQueueDepth = admissionQueueDepth;
+    }
+
+    public long getAdmissionTargetDelay()
+    {
+        return admissionTargetDelay;
+    }
+
+    public void setAdmissionTargetDelay(long admissionTargetDelay)
+    {
+        this.admissionTargetDelay = admissionTargetDelay;
+    }
+
+    public long getAdmissionInterval()
+    {
+        return admissionInterval;
+    }
+
+    public void setAdmissionInterval(long admissionInterval)
+    {
+        this.admissionInterval = admissionInterval;
+    }
+
+    public int getRetryAfter()
+    {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(int retryAfter)
+    {
+        this.retryAfter = retryAfter;
+    }
+
+    public String getCacheType()
+    {
+        return cacheType;
+    }
+
+    public void setCacheType(String cacheType)
+    {
+        this.cacheType = cacheType;
+    }
+
+    public long getCacheCapacity()
+    {
+        return cacheCapacity;
+    }
+
+    public void setCacheCapacity(long cacheCapacity)
+    {
+        this.cacheCapacity = cacheCapacity;
+    }
+
+    public String getCacheDir()
+    {
+        return cacheDir;
+    }
+
+    public void setCacheDir(String cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    public String[] getStaticDirs()
+    {
+        return staticDirs;
+    }
+
+    public void setStaticDirs(String[] staticDirs)
+    {
+        this.staticDirs = staticDirs;
+    }
+
+    public int getStaticMaxAge()
+    {
+        return staticMaxAge;
+    }
+
+    public void setStaticMaxAge(int staticMaxAge)
+    {
+        this.staticMaxAge = staticMaxAge;
+    }
+
+    public Map<String, Integer> getStaticMaxAges()
+    {
+        return staticMaxAges;
+    }
+
+    public void setStaticMaxAges(Map<String, Integer> staticMaxAges)
+    {
+        this.staticMaxAges = staticMaxAges;
+    }
+
+    public boolean isCompressionEnabled()
+    {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled)
+    {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public int getCompressionMinSize()
+    {
+        return compressionMinSize;
+    }
+
+    public void setCompressionMinSize(int compressionMinSize)
+    {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    public String[] getCompressionAllowTypes()
+    {
+        return compressionAllowTypes;
+    }
+
+    public void setCompressionAllowTypes(String[] compressionAllowTypes)
+    {
+        this.compressionAllowTypes = compressionAllowTypes;
+    }
+
+    public String[] getCompressionDenyTypes()
+    {
+        return compressionDenyTypes;
+    }
+
+    public void setCompressionDenyTypes(String[] compressionDenyTypes)
+    {
+        this.compressionDenyTypes = compressionDenyTypes;
+    }
+
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel)
+    {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionMinLevel()
+    {
+        return compressionMinLevel;
+    }
+
+    public void setCompressionMinLevel(int compressionMinLevel)
+    {
+        this.compressionMinLevel = compressionMinLevel;
+    }
+
+    public int getCompressionBusyTasks()
+    {
+        return compressionBusyTasks;
+    }
+
+    public void setCompressionBusyTasks(int compressionBusyTasks)
+    {
+        this.compressionBusyTasks = compressionBusyTasks;
+    }
+
+    public int getNegativeCacheCapacity()
+    {
+        return negativeCacheCapacity;
+    }
+
+    public void setNegativeCacheCapacity(int negativeCacheCapacity)
+    {
+        this.negativeCacheCapacity = negativeCacheCapacity;
+    }
+
+    public long getNegativeCacheTtl()
+    {
+        return negativeCacheTtl;
+    }
+
+    public void setNegativeCacheTtl(long negativeCacheTtl)
+    {
+        this.negativeCacheTtl = negativeCacheTtl;
+    }
+
+    public long getStaticPreloadBudget()
+    {
+        return staticPreloadBudget;
+    }
+
+    public void setStaticPreloadBudget(long staticPreloadBudget)
+    {
+        this.staticPreloadBudget = staticPreloadBudget;
+    }
+
+    public String[] getStaticPreloadPatterns()
+    {
+        return staticPreloadPatterns;
+    }
+
+    public void setStaticPreloadPatterns(String[] staticPreloadPatterns)
+    {
+        this.staticPreloadPatterns = staticPreloadPatterns;
+    }
+
+
+    public String getCacheStatsUri()
+    {
+        return cacheStatsUri;
+    }
+
+    public void setCacheStatsUri(String cacheStatsUri)
+    {
+        this.cacheStatsUri = cacheStatsUri;
+    }
+
+
+    public int getSessionTimeout()
+    {
+        return sessionTimeout;
+    }
+
+    public void setSessionTimeout(int sessionTimeout)
+    {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+
+    public String getSessionStore()
+    {
+        return sessionStore;
+    }
+
+    public void setSessionStore(String sessionStore)
+    {
+        this.sessionStore = sessionStore;
+    }
+
+    public String getSessionStoreDir()
+    {
+        return sessionStoreDir;
+    }
+
+    public void setSessionStoreDir(String sessionStoreDir)
+    {
+        this.sessionStoreDir = sessionStoreDir;
+    }
+
+    public int getSessionStoreSize()
+    {
+        return sessionStoreSize;
+    }
+
+    public void setSessionStoreSize(int sessionStoreSize)
+    {
+        this.sessionStoreSize = sessionStoreSize;
+    }
+
+    public String getSessionReplicationTransport()
+    {
+        return sessionReplicationTransport;
+    }
+
+    public void setSessionReplicationTransport(String sessionReplicationTransport)
+    {
+        this.sessionReplicationTransport = sessionReplicationTransport;
+    }
+
+    public String getSessionReplicationNode()
+    {
+        return sessionReplicationNode;
+    }
+
+    public void setSessionReplicationNode(String sessionReplicationNode)
+    {
+        this.sessionReplicationNode = sessionReplicationNode;
+    }
+
+    public long getSessionReplicationInterval()
+    {
+        return sessionReplicationInterval;
+    }
+
+    public void setSessionReplicationInterval(long sessionReplicationInterval)
+    {
+        this.sessionReplicationInterval = sessionReplicationInterval;
+    }
+
+    public int getSessionReplicationBatch()
+    {
+        return sessionReplicationBatch;
+    }
+
+    public void setSessionReplicationBatch(int sessionReplicationBatch)
+    {
+        this.sessionReplicationBatch = sessionReplicationBatch;
+    }
+
     
   
 }
@@ -2,14 +2,17 @@ package com.yjz.microweb.transport;
 
 import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.EXPECTATION_FAILED;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
-import java.util.concurrent.ExecutorService;
+import java.io.IOException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.yjz.microweb.http.HttpContentInputStream;
 import com.yjz.microweb.http.HttpCoreServer;
+import com.yjz.microweb.http.StreamingFullHttpRequest;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -20,6 +23,7 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.util.CharsetUtil;
@@ -28,16 +32,16 @@ public class HttpServerInboundHandler extends ChannelInboundHandlerAdapter {
 
 	private static final Logger logger = LoggerFactory.getLogger(HttpServerInboundHandler.class);
 	
-	private ExecutorService executorService;
+	private AdmissionController admissionController;
 
 	
-	public HttpServerInboundHandler(ExecutorService executorService){
-		this.executorService = executorService;
+	public HttpServerInboundHandler(AdmissionController admissionController){
+		this.admissionController = admissionController;
 	}
 
 	/**
 	 * <b>方法名：</b>预处理并转发请求<br>
-	 * <b>待完善：</b>根据服务器上下文环境，可选择是否交由线程池异步处理业务逻辑
+	 * <b>分发方式：</b>由{@link DispatchMode}决定在IO线程、有界线程池或虚拟线程上执行业务逻辑，{@link AdmissionController}拒绝时返回503
 	 */
 	@Override
 	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
@@ -48,15 +52,47 @@ public class HttpServerInboundHandler extends ChannelInboundHandlerAdapter {
 			return;
 		}
 		
-		executorService.execute(new Runnable(){
+		boolean admitted = admissionController.execute(new Runnable(){
 			@Override
 			public void run() {
-				HttpResponse response = HttpCoreServer.instance().dispach(ctx, msg);
-				doWriteAndFlush(ctx, isKeepAlive, (FullHttpResponse) response);
-				req.content().release();
+				try {
+					HttpResponse response = HttpCoreServer.instance().dispach(ctx, msg);
+					if (response == null || response instanceof FullHttpResponse) {
+						doWriteAndFlush(ctx, isKeepAlive, (FullHttpResponse) response);
+					} else if (!isKeepAlive) {
+						// 流式响应已写出，写入顺序保证在结束分片之后关闭连接
+						ctx.channel().writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+					}
+				} finally {
+					releaseRequest(req);
+				}
 			}
 		});
 		
+		if (!admitted) {
+			// 过载：在IO线程上直接返回503，而不是让异常关闭连接
+			releaseRequest(req);
+			FullHttpResponse res = new DefaultFullHttpResponse(HTTP_1_1, SERVICE_UNAVAILABLE);
+			res.headers().set(HttpHeaderNames.RETRY_AFTER, admissionController.getRetryAfterSeconds());
+			sendBadHttpResponse(ctx, isKeepAlive, res);
+		}
+		
+	}
+	
+	private void releaseRequest(FullHttpRequest req) {
+		req.content().release();
+		if (req instanceof StreamingFullHttpRequest) {
+			// 释放业务未读取的请求体分片，之后到达的分片直接丢弃
+			closeQuietly(((StreamingFullHttpRequest) req).bodyStream());
+		}
+	}
+	
+	private void closeQuietly(HttpContentInputStream bodyStream) {
+		try {
+			bodyStream.close();
+		} catch (IOException e) {
+			logger.warn("Failed to close request body stream", e);
+		}
 	}
 	
 	private boolean prepare(ChannelHandlerContext ctx, FullHttpRequest req, boolean isKeepAlive){
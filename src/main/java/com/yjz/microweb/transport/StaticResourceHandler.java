@@ -0,0 +1,362 @@
+package com.yjz.microweb.transport;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.PARTIAL_CONTENT;
+import static io.netty.handler.codec.http.HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yjz.microweb.cache.NegativeCache;
+import com.yjz.microweb.cache.StaticResourceIndex;
+import com.yjz.microweb.http.ByteRanges;
+import com.yjz.microweb.http.ConditionalRequests;
+import com.yjz.microweb.http.PrecompressedResources;
+import com.yjz.microweb.util.MimeType;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+
+/**
+ * <b>静态文件处理</b><br>
+ * 位于HttpServerCodec之后、压缩与聚合之前，直接在IO线程上响应文件系统中的静态资源，不经过业务线程池：<br>
+ * 1. 只处理GET/HEAD请求，请求路径(去掉上下文路径后)在任一静态目录下对应可读的普通文件时响应，否则原样转发；<br>
+ * 2. 未开启SSL时以DefaultFileRegion写出，由内核sendfile直接从页缓存发送，文件内容不经过JVM堆；<br>
+ * 3. 开启SSL时需要加密，以ChunkedNioFile分块读取，由ChunkedWriteHandler按可写状态写出；<br>
+ * 4. 响应不经过HttpContentCompressor，文件按原样发送；<br>
+ * 5. ETag由文件长度和修改时间生成，不读取文件内容，校验通过时直接响应304；<br>
+ * 6. 文本类文件存在同名的.br/.zst/.gz文件时按Accept-Encoding发送预压缩版本；<br>
+ * 7. 启动时存在的文件记入{@link StaticResourceIndex}，始终访问文件系统确认；不在索引中的请求同样访问文件系统，
+ * 只有带扩展名且确认不存在的路径记入各连接共享的{@link NegativeCache}，再次请求时不访问文件系统，
+ * 因此误判只可能使启动后新增的文件在NegativeCache轮换前暂时不可见，动态请求的路径不会写入NegativeCache；<br>
+ * 8. GET请求携带Range时按{@link ByteRanges}响应206，区间同样以DefaultFileRegion或ChunkedNioFile直接从文件写出。
+ */
+public class StaticResourceHandler extends ChannelInboundHandlerAdapter
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(StaticResourceHandler.class);
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final File[] roots;
+
+    private final String contextPath;
+
+    private final HttpServerConf conf;
+
+    private final StaticResourceIndex index;
+
+    private final NegativeCache missing;
+
+    /** 已由本handler响应的请求，丢弃其后续的请求体分片 */
+    private boolean discarding = false;
+
+    /**
+     * @param roots 静态资源目录，按顺序查找
+     * @param contextPath 上下文路径，匹配前按字面前缀去掉
+     * @param conf 服务器配置，用于Cache-Control
+     * @param index 启动时静态目录中的文件，各连接共享
+     * @param missing 不存在的路径，各连接共享
+     */
+    public StaticResourceHandler(File[] roots, String contextPath, HttpServerConf conf, StaticResourceIndex index,
+        NegativeCache missing)
+    {
+        this.roots = roots;
+        this.contextPath = contextPath != null ? contextPath : "";
+        this.conf = conf;
+        this.index = index;
+        this.missing = missing;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg)
+        throws Exception
+    {
+        if (msg instanceof HttpRequest)
+        {
+            discarding = false;
+            HttpRequest request = (HttpRequest)msg;
+            File file = resolve(request);
+            if (file != null && serve(ctx, request, file))
+            {
+                discarding = !(msg instanceof LastHttpContent);
+                if (msg instanceof HttpContent)
+                {
+                    ((HttpContent)msg).release();
+                }
+                return;
+            }
+        }
+        else if (discarding && msg instanceof HttpContent)
+        {
+            if (msg instanceof LastHttpContent)
+            {
+                discarding = false;
+            }
+            ((HttpContent)msg).release();
+            return;
+        }
+
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * 返回请求对应的文件，不是静态文件请求时返回null
+     */
+    private File resolve(HttpRequest request)
+    {
+        if (!request.decoderResult().isSuccess()
+            || !(HttpMethod.GET.equals(request.method()) || HttpMethod.HEAD.equals(request.method())))
+        {
+            return null;
+        }
+
+        String path;
+        try
+        {
+            path = new QueryStringDecoder(request.uri()).path();
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+
+        int length = contextPath.length();
+        if (length > 0)
+        {
+            if (!path.startsWith(contextPath) || (path.length() > length && path.charAt(length) != '/'))
+            {
+                return null;
+            }
+            path = path.substring(length);
+        }
+        if (path.isEmpty() || path.endsWith("/") || path.indexOf('\0') >= 0)
+        {
+            return null;
+        }
+        // 索引中的文件不经过NegativeCache，误判不会隐藏已有文件
+        boolean cacheable = !index.contains(path) && hasExtension(path);
+        if (cacheable && missing.mightContain(path))
+        {
+            return null;
+        }
+
+        for (File root : roots)
+        {
+            File file = new File(root, path);
+            if (!file.isFile() || file.isHidden())
+            {
+                continue;
+            }
+            try
+            {
+                // 防止"../"等路径越出静态目录
+                if (file.getCanonicalPath().startsWith(root.getCanonicalPath() + File.separator))
+                {
+                    return file;
+                }
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to resolve static file " + file, e);
+            }
+        }
+        if (cacheable)
+        {
+            missing.put(path);
+        }
+        return null;
+    }
+
+    /**
+     * 最后一级带扩展名的路径才按静态文件记入NegativeCache，动态请求的路径不占用其容量
+     */
+    private static boolean hasExtension(String path)
+    {
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') + 1 && dot < path.length() - 1;
+    }
+
+    private boolean serve(ChannelHandlerContext ctx, HttpRequest request, File file)
+        throws IOException
+    {
+        // 构建时生成的同名.br/.zst/.gz文件，不早于原文件时按协商结果发送
+        String contentType = MimeType.getByFilename(file.getName());
+        boolean compressible = PrecompressedResources.isCompressible(contentType);
+        File body = file;
+        String encoding = null;
+        if (compressible)
+        {
+            for (String accepted : PrecompressedResources.accepted(request.headers().get(HttpHeaderNames.ACCEPT_ENCODING)))
+            {
+                File variant = new File(file.getPath() + PrecompressedResources.extension(accepted));
+                if (variant.isFile() && variant.lastModified() >= file.lastModified())
+                {
+                    body = variant;
+                    encoding = accepted;
+                    break;
+                }
+            }
+        }
+
+        RandomAccessFile raf;
+        try
+        {
+            raf = new RandomAccessFile(body, "r");
+        }
+        catch (IOException e)
+        {
+            // 文件在判断之后被删除或无权限，交由后续处理
+            return false;
+        }
+
+        boolean keepAlive = HttpUtil.isKeepAlive(request);
+        long fileLength = raf.length();
+        long lastModified = body.lastModified();
+        String etag = "\"" + Long.toHexString(fileLength) + "-" + Long.toHexString(lastModified / 1000) + "\"";
+
+        boolean notModified = ConditionalRequests.isNotModified(request.headers(), etag, lastModified);
+        long[][] ranges = notModified || !HttpMethod.GET.equals(request.method()) ? null
+            : ByteRanges.select(request.headers(), etag, lastModified, fileLength);
+        boolean unsatisfiable = ranges == ByteRanges.UNSATISFIABLE;
+        String boundary = null;
+        byte[][] partHeaders = null;
+
+        HttpResponse response;
+        if (notModified)
+        {
+            response = new DefaultHttpResponse(HTTP_1_1, NOT_MODIFIED);
+        }
+        else if (ranges == null)
+        {
+            response = new DefaultHttpResponse(HTTP_1_1, OK);
+            HttpUtil.setContentLength(response, fileLength);
+        }
+        else if (unsatisfiable)
+        {
+            response = new DefaultHttpResponse(HTTP_1_1, REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.headers().set(HttpHeaderNames.CONTENT_RANGE, ByteRanges.unsatisfiedRange(fileLength));
+            HttpUtil.setContentLength(response, 0);
+        }
+        else if (ranges.length == 1)
+        {
+            response = new DefaultHttpResponse(HTTP_1_1, PARTIAL_CONTENT);
+            response.headers().set(HttpHeaderNames.CONTENT_RANGE, ByteRanges.contentRange(ranges[0], fileLength));
+            HttpUtil.setContentLength(response, ByteRanges.length(ranges[0]));
+        }
+        else
+        {
+            response = new DefaultHttpResponse(HTTP_1_1, PARTIAL_CONTENT);
+            boundary = ByteRanges.boundary();
+            partHeaders = ByteRanges.partHeaders(boundary, contentType, ranges, fileLength);
+            HttpUtil.setContentLength(response, ByteRanges.multipartLength(partHeaders, ranges));
+        }
+        if (!notModified)
+        {
+            response.headers().set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+        }
+        ConditionalRequests.setValidators(response.headers(), etag, lastModified);
+        ConditionalRequests.setCacheControl(response.headers(), conf, file.getName());
+        if (boundary != null)
+        {
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, ByteRanges.multipartType(boundary));
+        }
+        else if (contentType != null && !unsatisfiable)
+        {
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        }
+        if (encoding != null)
+        {
+            response.headers().set(HttpHeaderNames.CONTENT_ENCODING, encoding);
+        }
+        if (compressible)
+        {
+            response.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+        }
+        HttpUtil.setKeepAlive(response, keepAlive);
+        ctx.write(response);
+
+        ChannelFuture lastFuture;
+        boolean ssl = ctx.pipeline().get(SslHandler.class) != null;
+        if (notModified || unsatisfiable || HttpMethod.HEAD.equals(request.method()))
+        {
+            raf.close();
+            lastFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        else if (partHeaders != null)
+        {
+            // DefaultFileRegion释放时会关闭文件，多个区间各自按需打开文件
+            raf.close();
+            for (int i = 0; i < ranges.length; i++)
+            {
+                ctx.write(Unpooled.wrappedBuffer(partHeaders[i]));
+                writeRegion(ctx, ssl, body, ranges[i]);
+            }
+            ctx.write(Unpooled.wrappedBuffer(partHeaders[ranges.length]));
+            lastFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        else
+        {
+            long start = ranges == null ? 0 : ranges[0][0];
+            long count = ranges == null ? fileLength : ByteRanges.length(ranges[0]);
+            if (!ssl)
+            {
+                ctx.write(new DefaultFileRegion(raf.getChannel(), start, count));
+                lastFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+            }
+            else
+            {
+                // HttpChunkedInput在文件结束时产生LastHttpContent
+                lastFuture = ctx.writeAndFlush(
+                    new HttpChunkedInput(new ChunkedNioFile(raf.getChannel(), start, count, CHUNK_SIZE)));
+            }
+        }
+
+        if (!keepAlive)
+        {
+            lastFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+        return true;
+    }
+
+    /**
+     * 写出文件的一个区间，作为multipart/byteranges的一部分
+     */
+    private static void writeRegion(ChannelHandlerContext ctx, boolean ssl, File file, long[] range)
+        throws IOException
+    {
+        if (!ssl)
+        {
+            ctx.write(new DefaultFileRegion(file, range[0], ByteRanges.length(range)));
+        }
+        else
+        {
+            ctx.write(new ChunkedNioFile(new RandomAccessFile(file, "r").getChannel(), range[0], ByteRanges.length(range),
+                CHUNK_SIZE));
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.yjz.microweb.transport;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * <b>网络传输实现</b><br>
+ * NIO：JDK Selector，全平台可用；<br>
+ * EPOLL：Netty原生epoll，仅Linux可用，支持SO_REUSEPORT多acceptor绑定同一端口；<br>
+ * AUTO：原生库可用时使用EPOLL，否则回退到NIO。
+ */
+public enum TransportMode
+{
+
+    NIO, EPOLL, AUTO;
+
+    /**
+     * 解析配置值，无法识别时返回AUTO
+     */
+    public static TransportMode parse(String value)
+    {
+        if (value == null)
+        {
+            return AUTO;
+        }
+
+        for (TransportMode mode : values())
+        {
+            if (mode.name().equalsIgnoreCase(value.trim()))
+            {
+                return mode;
+            }
+        }
+        return AUTO;
+    }
+
+    /**
+     * 返回实际可用的传输实现：EPOLL或AUTO在原生库缺失时回退到NIO
+     */
+    public TransportMode resolve()
+    {
+        if (this == NIO)
+        {
+            return NIO;
+        }
+        return Epoll.isAvailable() ? EPOLL : NIO;
+    }
+
+    /**
+     * 创建实际可用的传输实现的EventLoopGroup
+     *
+     * @param threads 线程数，0表示Netty的默认值
+     */
+    public EventLoopGroup newEventLoopGroup(int threads)
+    {
+        return resolve() == EPOLL ? new EpollEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+    }
+
+    /**
+     * 实际可用的传输实现的服务端Channel类型
+     */
+    public Class<? extends ServerChannel> serverChannelClass()
+    {
+        return resolve() == EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+}
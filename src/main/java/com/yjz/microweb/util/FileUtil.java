@@ -218,9 +218,10 @@ public class FileUtil {
 	public static byte[] inputStreamToBytes(InputStream is) {
 		ByteArrayOutputStream baos = null;
 		try {
-			if(null != is && is.available()>0){
+			// available()为0不代表没有数据(如jar内资源)，读到流结束为止
+			if(null != is){
 				baos = new ByteArrayOutputStream();
-				byte[] buffer = new byte[1024];
+				byte[] buffer = new byte[8192];
 				int num = 0;
 				while ((num = is.read(buffer)) != -1) {
 					baos.write(buffer, 0, num);
@@ -0,0 +1,84 @@
+package com.yjz.microweb.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+public class ResourceCacheOffHeapTest
+{
+
+    /** 最小的slab大小 */
+    private static final int SLAB_SIZE = 2097152;
+
+    @Test
+    public void replacesExistingEntry()
+    {
+        ResourceCacheOffHeap cache = new ResourceCacheOffHeap(2L * SLAB_SIZE, SLAB_SIZE, null);
+        cache.putCache("/a", bytes(100, 1), 1000);
+        ResourceMeta meta = cache.getMeta("/a");
+
+        cache.putCache("/a", bytes(200, 2), 2000);
+
+        assertArrayEquals(bytes(200, 2), cache.getCache("/a"));
+        assertEquals(2000, cache.getMeta("/a").getLastModified());
+        assertFalse(meta.getEtag().equals(cache.getMeta("/a").getEtag()));
+        assertEquals(1, cache.size());
+
+        ByteBuf buffer = cache.getCacheBuffer("/a");
+        assertArrayEquals(bytes(200, 2), ByteBufUtil.getBytes(buffer));
+        buffer.release();
+    }
+
+    @Test
+    public void replacedEntrySurvivesReuseOfOldSlab()
+    {
+        ResourceCacheOffHeap cache = new ResourceCacheOffHeap(2L * SLAB_SIZE, SLAB_SIZE, null);
+        // 第一个slab：/a的旧数据与/b正好写满
+        cache.putCache("/a", bytes(100, 1), 1000);
+        cache.putCache("/b", bytes(SLAB_SIZE - 100, 0), 1000);
+        // 第二个slab：/a的新数据与/c正好写满
+        cache.putCache("/a", bytes(100, 2), 2000);
+        cache.putCache("/c", bytes(SLAB_SIZE - 100, 0), 1000);
+        // 复用第一个slab
+        cache.putCache("/d", bytes(10, 3), 1000);
+
+        assertFalse(cache.containsKey("/b"));
+        assertTrue(cache.containsKey("/c"));
+        assertArrayEquals(bytes(100, 2), cache.getCache("/a"));
+        assertArrayEquals(bytes(10, 3), cache.getCache("/d"));
+        assertEquals(Long.valueOf(1), cache.stats().getEvictionCounts().get("slab"));
+    }
+
+    @Test
+    public void unchangedContentIsNotRewritten()
+    {
+        ResourceCacheOffHeap cache = new ResourceCacheOffHeap(2L * SLAB_SIZE, SLAB_SIZE, null);
+        cache.putCache("/a", bytes(SLAB_SIZE / 2, 1), 1000);
+        // 重复写入相同内容不占用空间，否则第二次写入会切换到下一个slab
+        cache.putCache("/a", bytes(SLAB_SIZE / 2, 1), 1000);
+        cache.putCache("/b", bytes(SLAB_SIZE / 2, 2), 1000);
+        cache.putCache("/c", bytes(SLAB_SIZE, 3), 1000);
+        cache.putCache("/d", bytes(1, 4), 1000);
+
+        // /d使第一个slab被复用，/a与/b一起被淘汰；若/a被重复写入，/b会落在第二个slab
+        assertFalse(cache.containsKey("/a"));
+        assertFalse(cache.containsKey("/b"));
+        assertTrue(cache.containsKey("/c"));
+    }
+
+    private static byte[] bytes(int length, int value)
+    {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte)value);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.yjz.microweb.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ResourceCacheTinyLfuTest
+{
+
+    /** 窗口为2M，主区约6M */
+    private static final long MAX_WEIGHT = 8 * 1024 * 1024;
+
+    private static final int ENTRY_SIZE = 64 * 1024;
+
+    @Test
+    public void staysWithinWeightBound()
+    {
+        ResourceCacheTinyLfu cache = new ResourceCacheTinyLfu(MAX_WEIGHT);
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.putCache("/file" + i, new byte[ENTRY_SIZE]);
+            assertTrue(cache.weightedSize() <= MAX_WEIGHT);
+        }
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.weightedSize() > MAX_WEIGHT - 2 * (ENTRY_SIZE + 64));
+        assertEquals(cache.size(), cache.stats().getEntryCount());
+    }
+
+    @Test
+    public void frequentEntriesSurviveScan()
+    {
+        ResourceCacheTinyLfu cache = new ResourceCacheTinyLfu(MAX_WEIGHT);
+        for (int i = 0; i < 60; i++)
+        {
+            cache.putCache("/hot" + i, new byte[ENTRY_SIZE]);
+        }
+        for (int round = 0; round < 10; round++)
+        {
+            for (int i = 0; i < 60; i++)
+            {
+                assertNotNull(cache.getCache("/hot" + i));
+            }
+        }
+
+        // 只访问一次的元素不应挤掉常用元素
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.putCache("/cold" + i, new byte[ENTRY_SIZE]);
+        }
+
+        for (int i = 0; i < 60; i++)
+        {
+            assertTrue("/hot" + i, cache.containsKey("/hot" + i));
+        }
+        Map<String, Long> evictions = cache.stats().getEvictionCounts();
+        assertTrue(evictions.toString(), evictions.get("admission") > 0);
+    }
+
+    @Test
+    public void newlyPopularEntryReplacesColdEntry()
+    {
+        ResourceCacheTinyLfu cache = new ResourceCacheTinyLfu(MAX_WEIGHT);
+        for (int i = 0; i < 200; i++)
+        {
+            cache.putCache("/cold" + i, new byte[ENTRY_SIZE]);
+        }
+
+        cache.putCache("/popular", new byte[ENTRY_SIZE]);
+        for (int i = 0; i < 200; i++)
+        {
+            cache.getCache("/popular");
+        }
+        // 把/popular挤出窗口，与主区淘汰对象比较频率
+        for (int i = 200; i < 240; i++)
+        {
+            cache.putCache("/cold" + i, new byte[ENTRY_SIZE]);
+        }
+
+        assertTrue(cache.containsKey("/popular"));
+        Map<String, Long> evictions = cache.stats().getEvictionCounts();
+        assertTrue(evictions.toString(), evictions.get("frequency") > 0);
+    }
+
+    @Test
+    public void updatesExistingEntry()
+    {
+        ResourceCacheTinyLfu cache = new ResourceCacheTinyLfu(MAX_WEIGHT);
+        cache.putCache("/a", new byte[100], 1000);
+        long weight = cache.weightedSize();
+        ResourceMeta meta = cache.getMeta("/a");
+
+        byte[] updated = new byte[300];
+        updated[0] = 1;
+        cache.putCache("/a", updated, 2000);
+
+        assertArrayEquals(updated, cache.getCache("/a"));
+        assertEquals(weight + 200, cache.weightedSize());
+        assertEquals(1, cache.size());
+        assertEquals(2000, cache.getMeta("/a").getLastModified());
+        assertFalse(meta.getEtag().equals(cache.getMeta("/a").getEtag()));
+    }
+
+    @Test
+    public void cachesEmptyAndSkipsOversized()
+    {
+        ResourceCacheTinyLfu cache = new ResourceCacheTinyLfu(MAX_WEIGHT);
+        cache.putCache("/empty", null);
+        cache.putCache("/huge", new byte[2097152 + 1]);
+
+        assertArrayEquals(new byte[0], cache.getCache("/empty"));
+        assertNull(cache.getMeta("/empty"));
+        assertFalse(cache.containsKey("/huge"));
+        assertNull(cache.getCache("/huge"));
+        assertEquals(1, cache.stats().getMissCount());
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.yjz.microweb.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import javax.servlet.DispatcherType;
+
+import org.junit.Test;
+
+/**
+ * 以原FilterChainFactory逐个匹配的结果为准，校验{@link FilterMapMatcher}
+ */
+public class FilterMapMatcherTest
+{
+
+    private static final String[] PATHS = {"", "/", "/index.html", "/api", "/api/", "/api/users", "/api/users/1",
+        "/apix", "/apix/users", "/api/v1", "/api/v1/", "/api/v1/orders.json", "/static/css/site.css", "/site.css",
+        "/site.css.", "/site.", "site.css", "/a.do/b", "/a.do", "/a/b/c", "/a/b", "/a/b/c/d", "/archive.tar.gz",
+        "/static", "/staticx/a.css"};
+
+    private static final String[] SERVLETS = {null, "dispatcher", "other"};
+
+    @Test
+    public void matchesLikeLinearScan()
+    {
+        List<FilterMap> filterMaps = new ArrayList<FilterMap>();
+        filterMaps.add(url("ext-css", "*.css"));
+        filterMaps.add(url("all", "/*"));
+        filterMaps.add(url("api-exact", "/api"));
+        filterMaps.add(url("api-prefix", "/api/*"));
+        filterMaps.add(url("do", "*.do", DispatcherType.REQUEST, DispatcherType.FORWARD));
+        filterMaps.add(url("v1", "/api/v1/*", DispatcherType.FORWARD));
+        filterMaps.add(servlet("dispatcher-only", "dispatcher"));
+        filterMaps.add(url("abc", "/a/b/c"));
+        filterMaps.add(url("ab-prefix", "/a/b/*"));
+        filterMaps.add(servlet("any-servlet", "*"));
+        filterMaps.add(url("static", "/static/*"));
+        filterMaps.add(url("gz", "*.gz"));
+        filterMaps.add(url("json", "*.json", DispatcherType.REQUEST, DispatcherType.INCLUDE));
+        filterMaps.add(url("api-prefix-again", "/api/*"));
+        filterMaps.add(servlet("dispatcher-forward", "dispatcher", DispatcherType.FORWARD));
+
+        FilterMapMatcher matcher = new FilterMapMatcher(filterMaps);
+        for (DispatcherType dispatcherType : DispatcherType.values())
+        {
+            for (String servletName : SERVLETS)
+            {
+                for (String path : PATHS)
+                {
+                    assertEquals(path + " " + servletName + " " + dispatcherType,
+                        linearScan(filterMaps, path, servletName, dispatcherType),
+                        matcher.match(path, servletName, dispatcherType));
+                }
+                assertEquals(linearScan(filterMaps, null, servletName, dispatcherType),
+                    matcher.match(null, servletName, dispatcherType));
+            }
+        }
+    }
+
+    @Test
+    public void keepsRegistrationOrderAcrossPatternKinds()
+    {
+        FilterMapMatcher matcher = new FilterMapMatcher(Arrays.asList(url("ext", "*.json"), url("prefix", "/api/*"),
+            servlet("servlet", "dispatcher"), url("exact", "/api/users.json"), url("root", "/*")));
+
+        assertEquals(Arrays.asList("ext", "prefix", "exact", "root", "servlet"),
+            matcher.match("/api/users.json", "dispatcher", DispatcherType.REQUEST));
+        assertEquals(Arrays.asList("prefix", "root"), matcher.match("/api/users", null, DispatcherType.REQUEST));
+        assertEquals(Collections.emptyList(), matcher.match("/api/users", null, DispatcherType.ERROR));
+    }
+
+    @Test
+    public void emptyMatcherMatchesNothing()
+    {
+        FilterMapMatcher matcher = new FilterMapMatcher(Collections.<FilterMap> emptyList());
+
+        assertEquals(Collections.emptyList(), matcher.match("/api", "dispatcher", DispatcherType.REQUEST));
+    }
+
+    private static FilterMap url(String filterName, String pattern, DispatcherType... dispatcherTypes)
+    {
+        FilterMap filterMap = filterMap(filterName, dispatcherTypes);
+        filterMap.setURLPattern(pattern);
+        return filterMap;
+    }
+
+    private static FilterMap servlet(String filterName, String servletName, DispatcherType... dispatcherTypes)
+    {
+        FilterMap filterMap = filterMap(filterName, dispatcherTypes);
+        filterMap.setServletName(servletName);
+        return filterMap;
+    }
+
+    private static FilterMap filterMap(String filterName, DispatcherType... dispatcherTypes)
+    {
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(filterName);
+        if (dispatcherTypes.length > 0)
+        {
+            filterMap.setDispatcherTypes(EnumSet.copyOf(Arrays.asList(dispatcherTypes)));
+        }
+        return filterMap;
+    }
+
+    /**
+     * 原FilterChainFactory.createFilterChain的匹配方式：先URL映射、后servlet名称映射，各自逐个检查
+     */
+    private static List<String> linearScan(List<FilterMap> filterMaps, String requestPath, String servletName,
+        DispatcherType dispatcherType)
+    {
+        List<String> names = new ArrayList<String>();
+        for (FilterMap filterMap : filterMaps)
+        {
+            if (filterMap.getDispatcherTypes().contains(dispatcherType) && matchFiltersURL(filterMap, requestPath))
+            {
+                names.add(filterMap.getFilterName());
+            }
+        }
+        for (FilterMap filterMap : filterMaps)
+        {
+            if (filterMap.getDispatcherTypes().contains(dispatcherType) && matchFiltersServlet(filterMap, servletName))
+            {
+                names.add(filterMap.getFilterName());
+            }
+        }
+        return names;
+    }
+
+    private static boolean matchFiltersURL(FilterMap filterMap, String requestPath)
+    {
+        if (requestPath == null)
+        {
+            return false;
+        }
+        String testPath = filterMap.getURLPattern();
+        if (testPath == null)
+        {
+            return false;
+        }
+        if (testPath.equals(requestPath))
+        {
+            return true;
+        }
+        if (testPath.equals("/*"))
+        {
+            return true;
+        }
+        if (testPath.endsWith("/*"))
+        {
+            if (testPath.regionMatches(0, requestPath, 0, testPath.length() - 2))
+            {
+                if (requestPath.length() == (testPath.length() - 2))
+                {
+                    return true;
+                }
+                else if ('/' == requestPath.charAt(testPath.length() - 2))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (testPath.startsWith("*."))
+        {
+            int slash = requestPath.lastIndexOf('/');
+            int period = requestPath.lastIndexOf('.');
+            if ((slash >= 0) && (period > slash) && (period != requestPath.length() - 1)
+                && ((requestPath.length() - period) == (testPath.length() - 1)))
+            {
+                return (testPath.regionMatches(2, requestPath, period + 1, testPath.length() - 2));
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchFiltersServlet(FilterMap filterMap, String servletName)
+    {
+        return servletName != null && (servletName.equals(filterMap.getServletName())
+            || "*".equals(filterMap.getServletName()));
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.yjz.microweb.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+
+import org.junit.Test;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.CharsetUtil;
+
+public class ByteRangesTest
+{
+
+    private static final long LENGTH = 1000;
+
+    @Test
+    public void parsesSingleRanges()
+    {
+        assertRanges(ByteRanges.parse("bytes=0-499", LENGTH), 0, 499);
+        assertRanges(ByteRanges.parse("bytes=500-", LENGTH), 500, 999);
+        assertRanges(ByteRanges.parse("bytes=900-2000", LENGTH), 900, 999);
+        assertRanges(ByteRanges.parse("bytes=999-999", LENGTH), 999, 999);
+        assertRanges(ByteRanges.parse("Bytes= 0-0 ", LENGTH), 0, 0);
+    }
+
+    @Test
+    public void parsesSuffixRanges()
+    {
+        assertRanges(ByteRanges.parse("bytes=-200", LENGTH), 800, 999);
+        assertRanges(ByteRanges.parse("bytes=-5000", LENGTH), 0, 999);
+        assertSame(ByteRanges.UNSATISFIABLE, ByteRanges.parse("bytes=-0", LENGTH));
+    }
+
+    @Test
+    public void coalescesOverlappingAndAdjacentRanges()
+    {
+        assertRanges(ByteRanges.parse("bytes=500-599, 0-99, 90-199, 200-299", LENGTH), 0, 299, 500, 599);
+        assertRanges(ByteRanges.parse("bytes=0-10, 5-", LENGTH), 0, 999);
+        assertRanges(ByteRanges.parse("bytes=-100, 800-899", LENGTH), 800, 999);
+    }
+
+    @Test
+    public void dropsRangesPastEndOfResource()
+    {
+        assertSame(ByteRanges.UNSATISFIABLE, ByteRanges.parse("bytes=1000-1100", LENGTH));
+        assertSame(ByteRanges.UNSATISFIABLE, ByteRanges.parse("bytes=1000-", LENGTH));
+        assertSame(ByteRanges.UNSATISFIABLE, ByteRanges.parse("bytes=0-", 0));
+        assertRanges(ByteRanges.parse("bytes=1000-, 0-0", LENGTH), 0, 0);
+    }
+
+    @Test
+    public void ignoresMalformedHeaders()
+    {
+        assertNull(ByteRanges.parse("items=0-1", LENGTH));
+        assertNull(ByteRanges.parse("bytes=", LENGTH));
+        assertNull(ByteRanges.parse("bytes=,", LENGTH));
+        assertNull(ByteRanges.parse("bytes=1", LENGTH));
+        assertNull(ByteRanges.parse("bytes=abc-", LENGTH));
+        assertNull(ByteRanges.parse("bytes=5-1", LENGTH));
+        assertNull(ByteRanges.parse("bytes=--1", LENGTH));
+        assertNull(ByteRanges.parse("bytes=0-1, x", LENGTH));
+    }
+
+    @Test
+    public void limitsNumberOfRanges()
+    {
+        StringBuilder range = new StringBuilder("bytes=");
+        for (int i = 0; i < ByteRanges.MAX_RANGES; i++)
+        {
+            range.append(i * 10).append('-').append(i * 10).append(',');
+        }
+        assertEquals(ByteRanges.MAX_RANGES, ByteRanges.parse(range.toString(), LENGTH).length);
+
+        range.append("500-500");
+        assertNull(ByteRanges.parse(range.toString(), LENGTH));
+    }
+
+    @Test
+    public void selectHonoursIfRange()
+    {
+        String etag = "\"abc\"";
+        long lastModified = 1500000000123L;
+
+        assertNull(ByteRanges.select(new DefaultHttpHeaders(), etag, lastModified, LENGTH));
+        assertRanges(ByteRanges.select(headers("bytes=0-9", null), etag, lastModified, LENGTH), 0, 9);
+
+        assertRanges(ByteRanges.select(headers("bytes=0-9", etag), etag, lastModified, LENGTH), 0, 9);
+        assertNull(ByteRanges.select(headers("bytes=0-9", "\"other\""), etag, lastModified, LENGTH));
+        assertNull(ByteRanges.select(headers("bytes=0-9", "W/\"abc\""), "W/\"abc\"", lastModified, LENGTH));
+        assertNull(ByteRanges.select(headers("bytes=0-9", etag), null, lastModified, LENGTH));
+
+        HttpHeaders sameSecond = headers("bytes=0-9", null).set(HttpHeaderNames.IF_RANGE, new Date(lastModified));
+        assertRanges(ByteRanges.select(sameSecond, etag, lastModified, LENGTH), 0, 9);
+        HttpHeaders modified = headers("bytes=0-9", null).set(HttpHeaderNames.IF_RANGE, new Date(lastModified - 1000));
+        assertNull(ByteRanges.select(modified, etag, lastModified, LENGTH));
+        assertNull(ByteRanges.select(sameSecond, etag, 0, LENGTH));
+        assertNull(ByteRanges.select(headers("bytes=0-9", "not a date"), etag, lastModified, LENGTH));
+    }
+
+    @Test
+    public void formatsContentRange()
+    {
+        assertEquals("bytes 0-499/1000", ByteRanges.contentRange(new long[] {0, 499}, LENGTH));
+        assertEquals("bytes */1000", ByteRanges.unsatisfiedRange(LENGTH));
+        assertEquals(500, ByteRanges.length(new long[] {0, 499}));
+    }
+
+    @Test
+    public void multipartLengthMatchesBody()
+    {
+        byte[] content = "0123456789abcdefghij".getBytes(CharsetUtil.US_ASCII);
+        long[][] ranges = ByteRanges.parse("bytes=0-1, 5-7, -3", content.length);
+        String boundary = ByteRanges.boundary();
+        assertEquals(32, boundary.length());
+
+        byte[][] partHeaders = ByteRanges.partHeaders(boundary, "text/plain", ranges, content.length);
+        assertEquals(ranges.length + 1, partHeaders.length);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int i = 0; i < ranges.length; i++)
+        {
+            body.write(partHeaders[i], 0, partHeaders[i].length);
+            body.write(content, (int)ranges[i][0], (int)ByteRanges.length(ranges[i]));
+        }
+        body.write(partHeaders[ranges.length], 0, partHeaders[ranges.length].length);
+
+        assertEquals(body.size(), ByteRanges.multipartLength(partHeaders, ranges));
+        String text = new String(body.toByteArray(), CharsetUtil.US_ASCII);
+        assertTrue(text, text.startsWith("--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/20\r\n\r\n01\r\n--"));
+        assertTrue(text, text.endsWith("\r\nContent-Range: bytes 17-19/20\r\n\r\nhij\r\n--" + boundary + "--\r\n"));
+    }
+
+    private static HttpHeaders headers(String range, String ifRange)
+    {
+        HttpHeaders headers = new DefaultHttpHeaders().set(HttpHeaderNames.RANGE, range);
+        if (ifRange != null)
+        {
+            headers.set(HttpHeaderNames.IF_RANGE, ifRange);
+        }
+        return headers;
+    }
+
+    private static void assertRanges(long[][] actual, long... bounds)
+    {
+        long[][] expected = new long[bounds.length / 2][];
+        for (int i = 0; i < expected.length; i++)
+        {
+            expected[i] = new long[] {bounds[i * 2], bounds[i * 2 + 1]};
+        }
+        assertArrayEquals(expected, actual);
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.yjz.microweb.http;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.yjz.microweb.context.MicrowebServletContext;
+
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * <b>HttpCoreServer.dispach的基准测试</b><br>
+ * 1. precompiled为当前的分发：单遍拆分uri与查询串、按字面前缀去掉上下文路径、按请求方法查表；<br>
+ * 2. legacy为原来的分发：split("\\?")、replaceAll(contextPath)与HttpMethod的equals链，代码原样保留；<br>
+ * 3. HttpActionAdapter为空实现，只测量分发本身。<br>
+ * 运行：mvn test-compile后以测试classpath执行本类的main方法。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark
+{
+
+    private static final String CONTEXT_PATH = "/app";
+
+    @Param({"GET", "PUT"})
+    private String method;
+
+    @Param({"/app/api/users/42", "/app/api/users?id=42&fields=name,email&page=3"})
+    private String uri;
+
+    private HttpCoreServer server;
+
+    private MicrowebServletContext previousContext;
+
+    private HttpActionAdapter action;
+
+    private FullHttpRequest request;
+
+    @Setup
+    public void setUp()
+    {
+        server = HttpCoreServer.instance();
+        previousContext = server.servletContext;
+        server.servletContext = new MicrowebServletContext("benchmark", CONTEXT_PATH);
+        action = (HttpActionAdapter)Proxy.newProxyInstance(HttpActionAdapter.class.getClassLoader(),
+            new Class<?>[] {HttpActionAdapter.class}, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method m, Object[] args)
+                {
+                    return null;
+                }
+            });
+        request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.valueOf(method), uri);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        request.release();
+        server.servletContext = previousContext;
+    }
+
+    @Benchmark
+    public HttpResponse precompiled()
+    {
+        return server.dispach(action, null, request);
+    }
+
+    @Benchmark
+    public HttpResponse legacy()
+    {
+        return legacyDispach(request);
+    }
+
+    private HttpResponse legacyDispach(FullHttpRequest request)
+    {
+        HttpMethod method = request.method();
+        String uri = request.uri();
+        String[] temp = uri.split("\\?");
+        String shortUri = temp[0].replaceAll(server.servletContext.getContextPath(), "");
+
+        Map<String, String[]> parameters = null;
+        if (method.equals(HttpMethod.GET))
+        {
+            parameters = temp.length > 1 ? legacyParameters(temp[1]) : new HashMap<String, String[]>();
+        }
+
+        if (method.equals(HttpMethod.GET))
+        {
+            return action.doGet(null, request, shortUri, parameters);
+        }
+        else if (method.equals(HttpMethod.POST))
+        {
+            return action.doPost(null, request, shortUri, parameters);
+        }
+        else if (method.equals(HttpMethod.OPTIONS))
+        {
+            return action.doOptions(null, request, shortUri, parameters);
+        }
+        else if (method.equals(HttpMethod.HEAD))
+        {
+            return action.doHead(null, request, shortUri, parameters);
+        }
+        else if (method.equals(HttpMethod.PUT))
+        {
+            return action.doPut(null, request, shortUri, parameters);
+        }
+        else if (method.equals(HttpMethod.PATCH))
+        {
+            return action.doPatch(null, request, shortUri, parameters);
+        }
+        else if (method.equals(HttpMethod.DELETE))
+        {
+            return action.doDelete(null, request, shortUri, parameters);
+        }
+        else if (method.equals(HttpMethod.TRACE))
+        {
+            return action.doTrace(null, request, shortUri, parameters);
+        }
+        else if (method.equals(HttpMethod.CONNECT))
+        {
+            return action.doConnect(null, request, shortUri, parameters);
+        }
+        return action.doUnContainMethod(null, request, shortUri, parameters);
+    }
+
+    private static Map<String, String[]> legacyParameters(String paramNameValueStr)
+    {
+        Map<String, String[]> map = new HashMap<String, String[]>();
+        for (String s : paramNameValueStr.split("&"))
+        {
+            String[] keyValues = s.split("=");
+            if (keyValues.length > 1)
+            {
+                map.put(keyValues[0], keyValues[1].split(","));
+            }
+        }
+        return map;
+    }
+
+    public static void main(String[] args)
+        throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(DispatchBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
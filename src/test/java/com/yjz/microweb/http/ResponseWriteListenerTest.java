@@ -0,0 +1,139 @@
+package com.yjz.microweb.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+/**
+ * 通过FullHttpResponseWrapper.getOutputStream()验证WriteListener的回调
+ */
+public class ResponseWriteListenerTest
+{
+
+    private FullHttpResponseWrapper response;
+
+    private ServletOutputStream out;
+
+    @Before
+    public void setUp()
+    {
+        response = new FullHttpResponseWrapper(null,
+            new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        out = response.getOutputStream();
+    }
+
+    @After
+    public void tearDown()
+    {
+        response.releaseContent();
+    }
+
+    @Test
+    public void invokesOnWritePossible()
+        throws IOException
+    {
+        final List<String> events = new ArrayList<String>();
+        out.setWriteListener(new WriteListener()
+        {
+            @Override
+            public void onWritePossible()
+                throws IOException
+            {
+                assertTrue(out.isReady());
+                out.write("hello".getBytes(CharsetUtil.UTF_8));
+                events.add("writePossible");
+            }
+
+            @Override
+            public void onError(Throwable t)
+            {
+                events.add("error");
+            }
+        });
+
+        assertEquals(1, events.size());
+        assertEquals("writePossible", events.get(0));
+        assertTrue(out.isReady());
+        assertEquals("hello", response.getContentAsString());
+    }
+
+    @Test
+    public void passesCallbackFailureToOnError()
+    {
+        final IOException failure = new IOException("boom");
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        out.setWriteListener(new WriteListener()
+        {
+            @Override
+            public void onWritePossible()
+                throws IOException
+            {
+                throw failure;
+            }
+
+            @Override
+            public void onError(Throwable t)
+            {
+                errors.add(t);
+            }
+        });
+
+        assertEquals(1, errors.size());
+        assertSame(failure, errors.get(0));
+    }
+
+    @Test
+    public void rejectsNullAndSecondListener()
+    {
+        try
+        {
+            out.setWriteListener(null);
+            fail();
+        }
+        catch (NullPointerException e)
+        {
+            // expected
+        }
+
+        WriteListener listener = new WriteListener()
+        {
+            @Override
+            public void onWritePossible()
+            {
+            }
+
+            @Override
+            public void onError(Throwable t)
+            {
+            }
+        };
+        out.setWriteListener(listener);
+        try
+        {
+            out.setWriteListener(listener);
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+}
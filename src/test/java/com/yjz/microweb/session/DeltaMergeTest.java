@@ -0,0 +1,146 @@
+package com.yjz.microweb.session;
+
+import static com.yjz.microweb.session.ReplicatedSessionManager.REMOVE;
+import static com.yjz.microweb.session.ReplicatedSessionManager.TOUCH;
+import static com.yjz.microweb.session.ReplicatedSessionManager.UPDATE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.yjz.microweb.session.ReplicatedSessionManager.Delta;
+
+public class DeltaMergeTest
+{
+
+    private static final String SID = "sid";
+
+    @Test
+    public void newerRemoveWins()
+    {
+        Delta remove = remove(5);
+
+        assertSame(remove, Delta.merge(update(3, 4, false, 100, "a", "1"), remove));
+        assertSame(remove, Delta.merge(touch(4, 100), remove));
+        assertSame(remove, Delta.merge(remove(4), remove));
+    }
+
+    @Test
+    public void pendingRemoveIsOnlyReplacedByNewerFullUpdate()
+    {
+        Delta remove = remove(5);
+
+        assertSame(remove, Delta.merge(remove, touch(5, 200)));
+        assertSame(remove, Delta.merge(remove, update(5, 6, false, 200, "a", "1")));
+        assertSame(remove, Delta.merge(remove, update(4, 5, true, 200, "a", "1")));
+
+        Delta revived = update(0, 6, true, 200, "a", "1");
+        assertSame(revived, Delta.merge(remove, revived));
+    }
+
+    @Test
+    public void touchFoldsIntoPendingUpdate()
+    {
+        Delta update = update(3, 4, false, 100, "a", "1");
+
+        Delta merged = Delta.merge(update, touch(4, 200));
+        assertEquals(UPDATE, merged.type);
+        assertEquals(3, merged.base);
+        assertEquals(4, merged.version);
+        assertEquals(200, merged.lastAccessedTime);
+        assertFalse(merged.full);
+        assertSame(update.values, merged.values);
+
+        // 访问时间只前进
+        assertEquals(200, Delta.merge(merged, touch(4, 150)).lastAccessedTime);
+    }
+
+    @Test
+    public void touchesKeepLatestAccessTime()
+    {
+        Delta merged = Delta.merge(touch(4, 200), touch(4, 150));
+
+        assertEquals(TOUCH, merged.type);
+        assertEquals(200, merged.lastAccessedTime);
+    }
+
+    @Test
+    public void updateReplacesPendingTouchOrIsReplacedByFullUpdate()
+    {
+        Delta update = update(4, 5, false, 200, "a", "1");
+        assertSame(update, Delta.merge(touch(4, 100), update));
+
+        Delta full = update(5, 6, true, 300, "b", "2");
+        assertSame(full, Delta.merge(update, full));
+    }
+
+    @Test
+    public void mergesPartialUpdates()
+    {
+        Delta merged = Delta.merge(update(3, 4, false, 100, "a", "1", "b", "1", "c", "1"),
+            update(4, 5, false, 200, "b", "2", "c", null, "d", "2"));
+
+        assertEquals(UPDATE, merged.type);
+        assertEquals(3, merged.base);
+        assertEquals(5, merged.version);
+        assertEquals(200, merged.lastAccessedTime);
+        assertFalse(merged.full);
+        assertEquals(4, merged.values.size());
+        assertValue("1", merged, "a");
+        assertValue("2", merged, "b");
+        // 非完整快照中的null表示删除，需要保留
+        assertTrue(merged.values.containsKey("c"));
+        assertNull(merged.values.get("c"));
+        assertValue("2", merged, "d");
+    }
+
+    @Test
+    public void partialUpdateOntoFullSnapshotStaysFull()
+    {
+        Delta merged = Delta.merge(update(0, 4, true, 100, "a", "1", "b", "1"),
+            update(4, 5, false, 200, "b", null, "c", "2"));
+
+        assertTrue(merged.full);
+        assertEquals(0, merged.base);
+        assertEquals(5, merged.version);
+        assertEquals(2, merged.values.size());
+        assertValue("1", merged, "a");
+        assertValue("2", merged, "c");
+    }
+
+    private static Delta remove(long version)
+    {
+        return new Delta(SID, REMOVE, "node", version, version, 0, 0, 0, false, null);
+    }
+
+    private static Delta touch(long version, long lastAccessedTime)
+    {
+        return new Delta(SID, TOUCH, "node", version, version, 0, lastAccessedTime, 1800, false, null);
+    }
+
+    /**
+     * @param attributes 属性名与值交替排列，值为null表示删除
+     */
+    private static Delta update(long base, long version, boolean full, long lastAccessedTime, String... attributes)
+    {
+        Map<String, byte[]> values = new HashMap<String, byte[]>();
+        for (int i = 0; i < attributes.length; i += 2)
+        {
+            values.put(attributes[i], attributes[i + 1] == null ? null : attributes[i + 1].getBytes());
+        }
+        return new Delta(SID, UPDATE, "node", base, version, 1, lastAccessedTime, 1800, full, values);
+    }
+
+    private static void assertValue(String expected, Delta delta, String name)
+    {
+        assertArrayEquals(expected.getBytes(), delta.values.get(name));
+    }
+
+}
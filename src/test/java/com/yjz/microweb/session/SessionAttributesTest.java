@@ -0,0 +1,126 @@
+package com.yjz.microweb.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class SessionAttributesTest
+{
+
+    @Test
+    public void putGetRemoveInArrayForm()
+    {
+        SessionAttributes attributes = new SessionAttributes();
+
+        assertNull(attributes.put("a", 1));
+        assertNull(attributes.put("b", 2));
+        assertEquals(1, attributes.put("a", 3));
+        assertEquals(3, attributes.get("a"));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("a", "b")), attributes.names());
+
+        assertEquals(3, attributes.remove("a"));
+        assertNull(attributes.remove("a"));
+        assertNull(attributes.get("a"));
+        assertEquals(2, attributes.put("b", null));
+        assertEquals(0, attributes.names().size());
+    }
+
+    @Test
+    public void promotesToMapBeyondSmallSize()
+    {
+        SessionAttributes attributes = new SessionAttributes();
+        for (int i = 0; i <= SessionAttributes.SMALL_SIZE; i++)
+        {
+            attributes.put("k" + i, i);
+        }
+
+        for (int i = 0; i <= SessionAttributes.SMALL_SIZE; i++)
+        {
+            assertEquals(i, attributes.get("k" + i));
+        }
+        assertEquals(SessionAttributes.SMALL_SIZE + 1, attributes.names().size());
+
+        // 转为map后不再转回，仍可正常删除与覆盖
+        assertEquals(0, attributes.remove("k0"));
+        assertEquals(1, attributes.put("k1", 10));
+        assertEquals(2, attributes.put("k2", null));
+        assertNull(attributes.get("k2"));
+        assertEquals(SessionAttributes.SMALL_SIZE - 1, attributes.names().size());
+    }
+
+    @Test
+    public void snapshotIsDetached()
+    {
+        SessionAttributes attributes = new SessionAttributes();
+        attributes.put("a", 1);
+
+        Map<String, Object> snapshot = attributes.snapshot();
+        Set<String> names = attributes.names();
+        attributes.put("b", 2);
+
+        assertEquals(1, snapshot.size());
+        assertEquals(1, names.size());
+    }
+
+    @Test
+    public void concurrentPutsAcrossPromotionAreNotLost() throws InterruptedException
+    {
+        final int threads = 4;
+        final int perThread = 50;
+        for (int round = 0; round < 200; round++)
+        {
+            final SessionAttributes attributes = new SessionAttributes();
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++)
+            {
+                final int thread = t;
+                workers[t] = new Thread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            start.await();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                        for (int i = 0; i < perThread; i++)
+                        {
+                            attributes.put(thread + "-" + i, i);
+                        }
+                    }
+                });
+                workers[t].start();
+            }
+            start.countDown();
+            for (Thread worker : workers)
+            {
+                worker.join();
+            }
+
+            Set<String> expected = new HashSet<String>();
+            for (int t = 0; t < threads; t++)
+            {
+                for (int i = 0; i < perThread; i++)
+                {
+                    expected.add(t + "-" + i);
+                    assertEquals(i, attributes.get(t + "-" + i));
+                }
+            }
+            assertEquals(expected, attributes.names());
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.yjz.microweb.session;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <b>同一Session并发访问的基准测试</b><br>
+ * 模拟同一Session的并发AJAX请求：3个线程读取属性，1个线程更新访问时间并写入属性。<br>
+ * 1. lockFree为当前的HttpSessionImpl；<br>
+ * 2. synchronized为原来的实现方式：每个方法synchronized，属性保存在HashMap中。<br>
+ * 运行：mvn test-compile后以测试classpath执行本类的main方法。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionContentionBenchmark
+{
+
+    private static final String[] NAMES = {"user", "csrfToken", "locale"};
+
+    @Param({"lockFree", "synchronized"})
+    private String impl;
+
+    private Session session;
+
+    private int counter;
+
+    @Setup
+    public void setUp()
+    {
+        session = "lockFree".equals(impl) ? new LockFreeSession() : new SynchronizedSession();
+        for (String name : NAMES)
+        {
+            session.setAttribute(name, name);
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Object read()
+    {
+        Object value = null;
+        for (String name : NAMES)
+        {
+            value = session.getAttribute(name);
+        }
+        return value;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean write()
+    {
+        session.setAttribute("csrfToken", Integer.valueOf(counter++));
+        return session.update();
+    }
+
+    public static void main(String[] args)
+        throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(SessionContentionBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private interface Session
+    {
+        Object getAttribute(String name);
+
+        void setAttribute(String name, Object value);
+
+        boolean update();
+    }
+
+    private static final class LockFreeSession implements Session
+    {
+        private final HttpSessionImpl session = new HttpSessionImpl(null, "benchmark");
+
+        LockFreeSession()
+        {
+            session.setMaxInactiveInterval(1800);
+        }
+
+        @Override
+        public Object getAttribute(String name)
+        {
+            return session.getAttribute(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value)
+        {
+            session.setAttribute(name, value);
+        }
+
+        @Override
+        public boolean update()
+        {
+            return session.update();
+        }
+    }
+
+    /**
+     * 原HttpSessionImpl的加锁方式
+     */
+    private static final class SynchronizedSession implements Session
+    {
+        private final HashMap<String, Object> attributes = new HashMap<String, Object>();
+
+        private final Set<String> changedAttributes = new HashSet<String>();
+
+        private boolean valid = true;
+
+        private boolean dirty;
+
+        private long lastAccessedTime = System.currentTimeMillis();
+
+        private int maxInactiveInterval = 1800;
+
+        @Override
+        public synchronized Object getAttribute(String name)
+        {
+            checkvalid();
+            return attributes.get(name);
+        }
+
+        @Override
+        public synchronized void setAttribute(String name, Object value)
+        {
+            checkvalid();
+            attributes.put(name, value);
+            changedAttributes.add(name);
+            dirty = true;
+        }
+
+        @Override
+        public synchronized boolean update()
+        {
+            if (valid)
+            {
+                long currTime = System.currentTimeMillis();
+                if (currTime > getExpiryTime())
+                {
+                    valid = false;
+                    return valid;
+                }
+                lastAccessedTime = currTime;
+                return true;
+            }
+            return valid;
+        }
+
+        private synchronized long getExpiryTime()
+        {
+            return maxInactiveInterval <= 0 ? Long.MAX_VALUE : lastAccessedTime + maxInactiveInterval * 1000L;
+        }
+
+        private synchronized void checkvalid()
+        {
+            if (!valid)
+            {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+}
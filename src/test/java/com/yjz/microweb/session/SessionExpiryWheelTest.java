@@ -0,0 +1,205 @@
+package com.yjz.microweb.session;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 时间轮由测试直接调用advance推进，不启动后台线程
+ */
+public class SessionExpiryWheelTest
+{
+
+    private static final long TICK = 100;
+
+    private static final int WHEEL_SIZE = 8;
+
+    private RecordingExpiry expiry;
+
+    private SessionExpiryWheel wheel;
+
+    /** 与tick对齐的起始时刻 */
+    private long base;
+
+    @Before
+    public void setUp()
+    {
+        expiry = new RecordingExpiry();
+        wheel = new SessionExpiryWheel(TICK, WHEEL_SIZE, expiry);
+        base = System.currentTimeMillis() / TICK * TICK + TICK;
+    }
+
+    @Test
+    public void expiresOnceWhenDue()
+    {
+        expiry.schedule("a", base + 250);
+
+        wheel.advance(base + 200);
+        assertEquals(Collections.emptyList(), expiry.expired);
+
+        wheel.advance(base + 300);
+        assertEquals(Arrays.asList("a"), expiry.expired);
+
+        wheel.advance(base + 5 * WHEEL_SIZE * TICK);
+        assertEquals(Arrays.asList("a"), expiry.expired);
+    }
+
+    @Test
+    public void reschedulesTouchedSessionLazily()
+    {
+        expiry.schedule("a", base + 250);
+        // 访问只更新超时时刻，不移动时间轮中的元素
+        expiry.deadlines.put("a", base + 650);
+
+        wheel.advance(base + 400);
+        assertEquals(Collections.emptyList(), expiry.expired);
+        assertEquals(1, expiry.lookups("a"));
+
+        wheel.advance(base + 600);
+        assertEquals(Collections.emptyList(), expiry.expired);
+        assertEquals(1, expiry.lookups("a"));
+
+        wheel.advance(base + 700);
+        assertEquals(Arrays.asList("a"), expiry.expired);
+        assertEquals(2, expiry.lookups("a"));
+    }
+
+    @Test
+    public void dropsRemovedSession()
+    {
+        expiry.schedule("a", base + 150);
+        expiry.deadlines.remove("a");
+
+        wheel.advance(base + 200);
+        assertEquals(Collections.emptyList(), expiry.expired);
+        assertEquals(1, expiry.lookups("a"));
+
+        wheel.advance(base + 5 * WHEEL_SIZE * TICK);
+        assertEquals(1, expiry.lookups("a"));
+    }
+
+    @Test
+    public void neverSchedulesUnboundedSession()
+    {
+        expiry.schedule("a", Long.MAX_VALUE);
+
+        wheel.advance(base + 5 * WHEEL_SIZE * TICK);
+        assertEquals(Collections.emptyList(), expiry.expired);
+        assertEquals(0, expiry.lookups("a"));
+    }
+
+    @Test
+    public void waitsForLaterRotations()
+    {
+        long deadline = base + 3 * WHEEL_SIZE * TICK + 250;
+        expiry.schedule("far", deadline);
+
+        for (long now = base; now < deadline - TICK; now += TICK)
+        {
+            wheel.advance(now);
+        }
+        assertEquals(Collections.emptyList(), expiry.expired);
+        // 未到所在的圈时不查询超时时刻
+        assertEquals(0, expiry.lookups("far"));
+
+        wheel.advance(deadline + TICK);
+        assertEquals(Arrays.asList("far"), expiry.expired);
+    }
+
+    @Test
+    public void expiresPastDeadlineOnNextTick()
+    {
+        wheel.advance(base);
+        expiry.schedule("late", base - 10 * TICK);
+
+        wheel.advance(base + TICK);
+        assertEquals(Arrays.asList("late"), expiry.expired);
+    }
+
+    @Test
+    public void concurrentScheduleIsNotMissedByAdvance() throws InterruptedException
+    {
+        // 一圈远长于测试推进的时间，放入已取完的槽的元素会等待一整圈而不被处理
+        final SessionExpiryWheel bigWheel = new SessionExpiryWheel(TICK, 1 << 16, expiry);
+        final AtomicLong clock = new AtomicLong(base);
+        final AtomicBoolean done = new AtomicBoolean();
+
+        Thread advancer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < 20000; i++)
+                {
+                    bigWheel.advance(clock.addAndGet(TICK));
+                }
+                done.set(true);
+            }
+        });
+        advancer.start();
+
+        Set<String> scheduled = new HashSet<String>();
+        for (int i = 0; !done.get() || i < 1000; i++)
+        {
+            String id = "s" + i;
+            long deadline = clock.get();
+            expiry.deadlines.put(id, deadline);
+            bigWheel.schedule(id, deadline);
+            scheduled.add(id);
+        }
+        advancer.join();
+
+        bigWheel.advance(clock.get() + 3 * TICK);
+        assertEquals(scheduled, new HashSet<String>(expiry.expired));
+        assertEquals(scheduled.size(), expiry.expired.size());
+    }
+
+    private final class RecordingExpiry implements SessionExpiryWheel.Expiry
+    {
+        private final Map<String, Long> deadlines = new ConcurrentHashMap<String, Long>();
+
+        private final Map<String, Integer> lookups = new ConcurrentHashMap<String, Integer>();
+
+        private final List<String> expired = Collections.synchronizedList(new ArrayList<String>());
+
+        void schedule(String id, long deadline)
+        {
+            deadlines.put(id, deadline);
+            wheel.schedule(id, deadline);
+        }
+
+        int lookups(String id)
+        {
+            Integer count = lookups.get(id);
+            return count == null ? 0 : count;
+        }
+
+        @Override
+        public long deadline(String id)
+        {
+            lookups.merge(id, 1, Integer::sum);
+            Long deadline = deadlines.get(id);
+            return deadline == null ? -1 : deadline;
+        }
+
+        @Override
+        public void expire(String id)
+        {
+            expired.add(id);
+            deadlines.remove(id);
+        }
+    }
+
+}
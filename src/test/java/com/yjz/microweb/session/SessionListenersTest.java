@@ -0,0 +1,57 @@
+package com.yjz.microweb.session;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.ServletRequestListener;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.junit.Test;
+
+import com.yjz.microweb.context.MicrowebServletContext;
+
+public class SessionListenersTest
+{
+
+    @Test
+    public void sessionListenersComeFromRegisteredListeners()
+    {
+        MicrowebServletContext servletContext = new MicrowebServletContext("test");
+        HttpSessionListener sessionListener = new HttpSessionListener()
+        {
+            @Override
+            public void sessionCreated(HttpSessionEvent se)
+            {
+            }
+
+            @Override
+            public void sessionDestroyed(HttpSessionEvent se)
+            {
+            }
+        };
+        servletContext.addListener(sessionListener);
+        servletContext.addListener(new ServletRequestListener()
+        {
+            @Override
+            public void requestInitialized(ServletRequestEvent sre)
+            {
+            }
+
+            @Override
+            public void requestDestroyed(ServletRequestEvent sre)
+            {
+            }
+        });
+
+        assertArrayEquals(new HttpSessionListener[] {sessionListener},
+            SerializedSessionManager.sessionListeners(servletContext));
+
+        // 请求路径上使用的listener数组不因注册而变化，也不在每次调用时分配
+        assertEquals(0, servletContext.getEventListeners().length);
+        assertSame(servletContext.getEventListeners(), servletContext.getEventListeners());
+    }
+
+}
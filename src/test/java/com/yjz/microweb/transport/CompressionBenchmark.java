@@ -0,0 +1,128 @@
+package com.yjz.microweb.transport;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * <b>响应压缩的基准测试</b><br>
+ * 每次操作为一个带Accept-Encoding: gzip的请求与一个完整响应经过压缩处理器，测量每个响应的CPU耗时：<br>
+ * 1. fixed为原来的HttpContentCompressor(9)；<br>
+ * 2. adaptive为默认配置的{@link AdaptiveContentCompressor}。<br>
+ * 运行：mvn test-compile后以测试classpath执行本类的main方法。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark
+{
+
+    @Param({"fixed", "adaptive"})
+    private String compressor;
+
+    /** 小的JSON接口响应、较大的JSON响应、已压缩的图片 */
+    @Param({"json-200", "json-16k", "png-16k"})
+    private String payload;
+
+    private EmbeddedChannel channel;
+
+    private byte[] content;
+
+    private String contentType;
+
+    @Setup
+    public void setUp()
+    {
+        channel = new EmbeddedChannel("fixed".equals(compressor) ? new HttpContentCompressor(9)
+            : new AdaptiveContentCompressor(new CompressionPolicy(new HttpServerConf())));
+
+        if (payload.startsWith("json"))
+        {
+            int size = "json-200".equals(payload) ? 200 : 16 * 1024;
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; json.length() < size - 1; i++)
+            {
+                json.append("{\"id\":").append(i).append(",\"name\":\"user").append(i).append("\"},");
+            }
+            json.setLength(size - 1);
+            content = json.append(']').toString().getBytes(CharsetUtil.UTF_8);
+            contentType = "application/json; charset=UTF-8";
+        }
+        else
+        {
+            content = new byte[16 * 1024];
+            new Random(42).nextBytes(content);
+            contentType = "image/png";
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int respond()
+    {
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/api");
+        request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP);
+        channel.writeInbound(request);
+        ReferenceCountUtil.release(channel.readInbound());
+
+        FullHttpResponse response =
+            new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(content));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, content.length);
+        channel.writeOutbound(response);
+
+        int messages = 0;
+        Object msg;
+        while ((msg = channel.readOutbound()) != null)
+        {
+            ReferenceCountUtil.release(msg);
+            messages++;
+        }
+        return messages;
+    }
+
+    public static void main(String[] args)
+        throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(CompressionBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.yjz.microweb.transport;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <b>各分发方式在饱和负载下的时延</b><br>
+ * 64个调用线程不停地经{@link AdmissionController}提交请求，线程池只有8个线程、16个队列位置，负载始终超出处理能力：<br>
+ * 1. 采样每个请求从提交到处理完成(或被拒绝)的时间，结果中的p0.99即饱和时的p99时延；<br>
+ * 2. 每轮结束时输出被接纳与返回503的请求数，被拒绝的请求时延很短，需结合计数比较；<br>
+ * 3. INLINE在调用线程上执行，实际服务中即阻塞IO线程；VIRTUAL需JDK 21+，否则与POOL相同。<br>
+ * 运行：mvn test-compile后以测试classpath执行本类的main方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class DispatchModeBenchmark
+{
+
+    @Param({"INLINE", "POOL", "VIRTUAL"})
+    private DispatchMode mode;
+
+    /** 业务处理中阻塞的时间(微秒)，0表示纯计算 */
+    @Param({"0", "200"})
+    private long blockMicros;
+
+    private ExecutorService executorService;
+
+    private AdmissionController admissionController;
+
+    private long lastAdmitted;
+
+    private long lastShed;
+
+    @Setup
+    public void setUp()
+    {
+        HttpServerConf conf = new HttpServerConf();
+        conf.setDispatchMode(mode);
+        conf.setCorePoolSize(8);
+        conf.setMaximumPoolSize(8);
+        conf.setPoolQueueSize(16);
+        executorService = DispatchExecutors.create(conf);
+        // 与HttpServer.doStart相同的方式创建
+        admissionController = conf.admissionEnabled
+            ? new AdmissionController(executorService, conf.admissionQueueDepth, conf.admissionTargetDelay,
+                conf.admissionInterval, conf.retryAfter)
+            : new AdmissionController(executorService, conf.retryAfter);
+    }
+
+    /**
+     * 输出本轮被接纳与被拒绝的请求数
+     */
+    @TearDown(Level.Iteration)
+    public void report()
+    {
+        long admitted = admissionController.getAdmittedCount();
+        long shed = admissionController.getShedCount();
+        System.out.println("admitted: " + (admitted - lastAdmitted) + ", shed: " + (shed - lastShed));
+        lastAdmitted = admitted;
+        lastShed = shed;
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        DispatchExecutors.shutdown(executorService);
+    }
+
+    @Benchmark
+    public void request()
+        throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean admitted = admissionController.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Blackhole.consumeCPU(1000);
+                if (blockMicros > 0)
+                {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(blockMicros));
+                }
+                done.countDown();
+            }
+        });
+        if (admitted)
+        {
+            done.await();
+        }
+    }
+
+    public static void main(String[] args)
+        throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(DispatchModeBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
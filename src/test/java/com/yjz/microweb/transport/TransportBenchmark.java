@@ -0,0 +1,223 @@
+package com.yjz.microweb.transport;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+/**
+ * <b>各传输实现的吞吐量</b><br>
+ * 按{@link TransportMode}以与HttpServer相同的方式启动只返回固定响应的HTTP服务，
+ * 每个测试线程持有一个长连接，逐个发送请求并读完响应。<br>
+ * 1. EPOLL开启SO_REUSEPORT并绑定多个acceptor，原生库不可用时回退为NIO；<br>
+ * 2. 客户端与服务端在同一主机，结果只用于比较传输实现，不代表完整应用的吞吐量。<br>
+ * 运行：mvn test-compile后以测试classpath执行本类的main方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class TransportBenchmark
+{
+
+    private static final byte[] REQUEST =
+        "GET /api/ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(CharsetUtil.US_ASCII);
+
+    private static final byte[] BODY = "{\"status\":\"ok\"}".getBytes(CharsetUtil.US_ASCII);
+
+    @Param({"NIO", "EPOLL"})
+    private TransportMode transport;
+
+    @Param({"2"})
+    private int acceptors;
+
+    private EventLoopGroup bossGroup;
+
+    private EventLoopGroup workerGroup;
+
+    private int port;
+
+    @Setup
+    public void startServer()
+        throws InterruptedException
+    {
+        TransportMode resolved = transport.resolve();
+        boolean reusePort = resolved == TransportMode.EPOLL;
+        int count = reusePort ? acceptors : 1;
+        bossGroup = resolved.newEventLoopGroup(count);
+        workerGroup = resolved.newEventLoopGroup(0);
+
+        ServerBootstrap b = new ServerBootstrap();
+        b.group(bossGroup, workerGroup).channel(resolved.serverChannelClass()).childHandler(
+            new ChannelInitializer<Channel>()
+            {
+                @Override
+                protected void initChannel(Channel ch)
+                {
+                    ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(65536), new PingHandler());
+                }
+            });
+        if (reusePort)
+        {
+            b.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        Channel channel = b.bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+        port = ((InetSocketAddress)channel.localAddress()).getPort();
+        for (int i = 1; i < count; i++)
+        {
+            b.bind(new InetSocketAddress("127.0.0.1", port)).sync();
+        }
+    }
+
+    @TearDown
+    public void stopServer()
+    {
+        workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Benchmark
+    public int request(Client client)
+        throws IOException
+    {
+        return client.exchange();
+    }
+
+    public static void main(String[] args)
+        throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(TransportBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * 每个线程一个长连接
+     */
+    @State(Scope.Thread)
+    public static class Client
+    {
+        private Socket socket;
+
+        private OutputStream out;
+
+        private InputStream in;
+
+        @Setup
+        public void connect(TransportBenchmark benchmark)
+            throws IOException
+        {
+            socket = new Socket("127.0.0.1", benchmark.port);
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            in = new BufferedInputStream(socket.getInputStream());
+        }
+
+        @TearDown
+        public void close()
+            throws IOException
+        {
+            socket.close();
+        }
+
+        /**
+         * 发送一个请求并读完响应，返回响应体长度
+         */
+        int exchange()
+            throws IOException
+        {
+            out.write(REQUEST);
+            out.flush();
+
+            int contentLength = -1;
+            StringBuilder line = new StringBuilder();
+            while (true)
+            {
+                int b = in.read();
+                if (b < 0)
+                {
+                    throw new IOException("Connection closed");
+                }
+                if (b != '\n')
+                {
+                    if (b != '\r')
+                    {
+                        line.append((char)b);
+                    }
+                    continue;
+                }
+                if (line.length() == 0)
+                {
+                    break;
+                }
+                String header = line.toString();
+                if (header.regionMatches(true, 0, "Content-Length:", 0, 15))
+                {
+                    contentLength = Integer.parseInt(header.substring(15).trim());
+                }
+                line.setLength(0);
+            }
+            for (int i = 0; i < contentLength; i++)
+            {
+                if (in.read() < 0)
+                {
+                    throw new IOException("Connection closed");
+                }
+            }
+            return contentLength;
+        }
+    }
+
+    private static final class PingHandler extends SimpleChannelInboundHandler<FullHttpRequest>
+    {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request)
+        {
+            FullHttpResponse response =
+                new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(BODY));
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json");
+            response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, BODY.length);
+            ctx.writeAndFlush(response);
+        }
+    }
+
+}